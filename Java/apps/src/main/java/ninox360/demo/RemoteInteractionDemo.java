@@ -1,9 +1,12 @@
 package ninox360.demo;
 
 import ninox360.util.RemoteAPI;
+import ninox360.util.RemoteResponse;
+import ninox360.util.SecretStore;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 
 /**
  * Java Demonstration Code for the Remote Control API.
@@ -16,20 +19,24 @@ public class RemoteInteractionDemo {
 
     /**
      * Optional Debug output to read the Response out.
+     *
+     * @param response response returned by a request command
      */
-    public static void printResponse() {
-        System.out.println("Server Response:" + "\n  RESPONSE: " + remote.getResponseStatus() + "\n  MESSAGE: " + remote.getResponseMsg() + "\n");
+    public static void printResponse(RemoteResponse response) {
+        System.out.println("Server Response:" + "\n  RESPONSE: " + response.getStatus() + "\n  MESSAGE: " + response.getMessage()
+                + "\n  LATENCY: " + String.format("%.1f ms", response.getLatencyMillis()) + "\n");
     }
 
     /**
      * Error handling block the demonstration code.
      *
+     * @param response response returned by a request command
      * @throws IOException if the response status is not "success" following a request command.
      */
-    public static void checkForFailure() throws IOException {
-        //printResponse();
-        if (!remote.getResponseStatus().equalsIgnoreCase("success")) {
-            throw new IOException("Remote interaction failed: " + remote.getResponseMsg());
+    public static void checkForFailure(RemoteResponse response) throws IOException {
+        //printResponse(response);
+        if (!response.isSuccess()) {
+            throw new IOException("Remote interaction failed: " + response.getMessage());
         }
     }
 
@@ -38,28 +45,28 @@ public class RemoteInteractionDemo {
             // set your server IP, a default of 'https://localhost:3003' is prepopulated.
             remote.setIP(outboundIP); // replace this with the IP displayed on your device.
 
-            // Registration is required prior to any server interaction
-            remote.sendRegister(serverSecret);
-            checkForFailure();
-
-            BufferedImage image = remote.sendCaptureImageFrame();
+            // Open the connection and load the codec classes in the background while the application starts
+            remote.prewarm();
 
-            // API utility function for saving a Buffered Image to Disk
-            if (!remote.saveImageToDisk(image, "saved_frame.jpg")) {
-                throw new IOException("Failed to save Image to disk");
-            }
+            // The client secret is kept between runs, connect() registers only when no valid secret is stored
+            remote.setSecretStore(new SecretStore(Paths.get("client-secrets.properties")));
+            checkForFailure(remote.connect(serverSecret));
 
-            remote.sendGetState();
-            checkForFailure();
+            // The frame is kept as the JPEG sent by the device, use RemoteAPI.decodeImage(frame) when pixels are needed
+            ByteBuffer frame = remote.sendCaptureImageFrameBytes();
 
-            remote.sendStillnessRequired(false);
-            remote.sendMarkerRequired(true);
+            // API utility function for saving the encoded frame to Disk without recompression
+            RemoteAPI.saveImageBytesToDisk(frame, "saved_frame.jpg");
 
-            remote.sendSetCameraExposure(10_000_000);
-            checkForFailure();
+            checkForFailure(remote.sendGetState());
 
-            remote.sendSetCameraSensitivity(400);
-            checkForFailure();
+            // Independent settings are sent together, costing about one round-trip; any failure throws
+            remote.batch()
+                    .stillnessRequired(false)
+                    .markerRequired(true)
+                    .setCameraExposure(10_000_000)
+                    .setCameraSensitivity(400)
+                    .execute();
 
         } catch (IOException e) {
             System.err.println("Error during remote interaction: " + e.getMessage());
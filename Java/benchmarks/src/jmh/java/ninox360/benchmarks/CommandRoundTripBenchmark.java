@@ -0,0 +1,92 @@
+package ninox360.benchmarks;
+
+import ninox360.mock.MockScanner;
+import ninox360.util.HttpClientConfig;
+import ninox360.util.HttpCommunicationUtil;
+import ninox360.util.RemoteAPI;
+import ninox360.util.RemoteResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command round-trips against the embedded {@link MockScanner}: packet construction, single GET_STATE latency,
+ * a burst of asynchronous commands, and throughput with several threads sharing one RemoteAPI.
+ * Each benchmark runs over HTTP/2 (one multiplexed connection) and HTTP/1.1 (a pool of keep-alive connections).
+ * <pre>
+ *     ./gradlew :benchmarks:jmh -Pjmh.includes=CommandRoundTripBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandRoundTripBenchmark {
+    private static final int ASYNC_BURST = 16;
+    private static final String CLIENT_SECRET = "BENCH";
+
+    @Param({"h2", "http/1.1"})
+    public String protocol;
+
+    private MockScanner scanner;
+    private RemoteAPI api;
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean http2 = "h2".equals(protocol);
+        scanner = new MockScanner().setFrames(320, 240, 1).setHttp2Enabled(http2);
+        scanner.start();
+        api = new RemoteAPI(new HttpClientConfig().setHttp2Enabled(http2));
+        api.setIP(scanner.baseUrl());
+        api.sendRegister(scanner.getServerSecret());
+        if (!protocol.equals(api.getProtocol())) {
+            throw new IllegalStateException("Negotiated " + api.getProtocol() + " instead of " + protocol);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        api.close();
+        scanner.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String constructPacket() throws IOException {
+        return HttpCommunicationUtil.constructPacket("", CLIENT_SECRET, 0, "GET_STATE", "");
+    }
+
+    @Benchmark
+    public RemoteResponse getState() throws IOException {
+        return api.sendGetState();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ASYNC_BURST)
+    public Object getStateAsyncBurst() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[ASYNC_BURST];
+        for (int i = 0; i < ASYNC_BURST; i++) {
+            futures[i] = api.sendGetStateAsync();
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public RemoteResponse getStateThroughput8Threads() {
+        return api.sendGetStateAsync().join();
+    }
+}
@@ -0,0 +1,61 @@
+package ninox360.benchmarks;
+
+import ninox360.mock.MockScanner;
+import ninox360.util.RemoteAPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CAPTURE_VIDEO_FRAME round-trips for several frame resolutions, with and without decoding the JPEG.
+ * <pre>
+ *     ./gradlew :benchmarks:jmh -Pjmh.includes=FrameCaptureBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameCaptureBenchmark {
+    @Param({"320x240", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private MockScanner scanner;
+    private RemoteAPI api;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] size = resolution.split("x");
+        scanner = new MockScanner().setFrames(Integer.parseInt(size[0]), Integer.parseInt(size[1]), 1);
+        scanner.start();
+        api = new RemoteAPI();
+        api.setIP(scanner.baseUrl());
+        api.sendRegister(scanner.getServerSecret());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        api.close();
+        scanner.close();
+    }
+
+    @Benchmark
+    public BufferedImage captureDecoded() throws IOException {
+        return api.sendCaptureImageFrame();
+    }
+
+    @Benchmark
+    public ByteBuffer captureBytes() throws IOException {
+        return api.sendCaptureImageFrameBytes();
+    }
+}
@@ -0,0 +1,63 @@
+package ninox360.benchmarks;
+
+import ninox360.util.PacketCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link PacketCodec} with the previous SnakeYAML path, which built a new DumperOptions/Yaml and two
+ * HashMaps for every outbound packet and a new Yaml for every response.
+ * <pre>
+ *     ./gradlew :benchmarks:jmh -Pjmh.includes=PacketCodecBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PacketCodecBenchmark {
+    private static final String RESPONSE = "PacketRemoteResponse:\n  response: SUCCESS\n  message: Scan started\n";
+
+    @Benchmark
+    public String encodeCommandSnakeYaml() {
+        Map<String, Object> packetName = new HashMap<>();
+        Map<String, Object> innerPacket = new HashMap<>();
+        innerPacket.put("secret", "BLZ1x");
+        innerPacket.put("value", "10000000");
+        innerPacket.put("command", "EXPOSURE");
+        packetName.put("PacketRemoteCommand", innerPacket);
+
+        DumperOptions options = new DumperOptions();
+        options.setIndent(2);
+        options.setPrettyFlow(true);
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        return new Yaml(options).dump(packetName);
+    }
+
+    @Benchmark
+    public String encodeCommandCodec() {
+        return PacketCodec.encodeCommand("BLZ1x", "EXPOSURE", "10000000");
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> decodeResponseSnakeYaml() {
+        Map<String, Object> yamlResult = new Yaml().load(RESPONSE);
+        return (Map<String, Object>) yamlResult.get("PacketRemoteResponse");
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeResponseCodec() throws IOException {
+        return PacketCodec.decodeResponse(RESPONSE);
+    }
+}
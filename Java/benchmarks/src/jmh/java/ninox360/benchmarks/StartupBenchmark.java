@@ -0,0 +1,86 @@
+package ninox360.benchmarks;
+
+import ninox360.mock.MockScanner;
+import ninox360.util.RemoteAPI;
+import ninox360.util.RemoteResponse;
+import ninox360.util.SecretStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a fresh JVM to the first answered command, i.e. until the client knows the scanner state:
+ * <ul>
+ *     <li>register: REGISTER followed by GET_STATE, the behaviour without a secret store</li>
+ *     <li>persisted: {@link RemoteAPI#connect(String)} with a stored secret, validated by a single GET_STATE</li>
+ *     <li>prewarmed: as persisted, after {@link RemoteAPI#prewarm()} completed outside the measurement</li>
+ * </ul>
+ * Every measurement runs in its own fork, so class loading and JIT state are those of a cold start.
+ * <pre>
+ *     ./gradlew :benchmarks:jmh -Pjmh.includes=StartupBenchmark
+ * </pre>
+ * The mock device runs in the same JVM and loads SnakeYAML, ImageIO and the OkHttp/TLS classes while starting,
+ * so absolute numbers are lower than against a real device; the difference between the modes is what matters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+    @Param({"register", "persisted", "prewarmed"})
+    public String mode;
+
+    private MockScanner scanner;
+    private RemoteAPI api;
+    private Path secrets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scanner = new MockScanner().setFrames(320, 240, 1);
+        scanner.start();
+        api = new RemoteAPI();
+        api.setIP(scanner.baseUrl());
+        if (!"register".equals(mode)) {
+            secrets = Files.createTempFile("client-secrets", ".properties");
+            SecretStore store = new SecretStore(secrets);
+            store.put(scanner.baseUrl(), scanner.issueClientSecret());
+            api.setSecretStore(store);
+        }
+        if ("prewarmed".equals(mode)) api.prewarm().join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        api.close();
+        scanner.close();
+        if (secrets != null) Files.deleteIfExists(secrets);
+    }
+
+    @Benchmark
+    public RemoteResponse firstState() throws IOException {
+        if ("register".equals(mode)) {
+            api.sendRegister(scanner.getServerSecret());
+            return api.sendGetState();
+        }
+        RemoteResponse state = api.connect(scanner.getServerSecret());
+        if (scanner.getRegisterCount() > 0) throw new IllegalStateException("Stored secret was not accepted");
+        return state;
+    }
+}
@@ -0,0 +1,89 @@
+package ninox360.util;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+
+/**
+ * Per-call OkHttp listener which feeds the connection counters and the call's {@link CallTimings}.
+ */
+final class CallEventListener extends EventListener {
+    private final ConnectionStats connectionStats;
+    private final CallTimings timings;
+
+    /**
+     * @param connectionStats counters shared by all calls of the client
+     * @param timings         timings of this call, may be null for untagged requests
+     */
+    CallEventListener(ConnectionStats connectionStats, CallTimings timings) {
+        this.connectionStats = connectionStats;
+        this.timings = timings;
+    }
+
+    /**
+     * @param connectionStats counters shared by all calls of the client
+     * @return factory creating one listener per call
+     */
+    static EventListener.Factory factory(ConnectionStats connectionStats) {
+        return call -> new CallEventListener(connectionStats, call.request().tag(CallTimings.class));
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        if (timings != null && timings.connectStart == 0) timings.connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        if (timings != null) timings.secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        connectionStats.tlsHandshakeCompleted();
+        if (timings != null) timings.secureConnectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        connectionStats.connectionOpened();
+        if (timings != null) timings.connectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        connectionStats.connectionAcquired(connection.protocol().toString());
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        if (timings != null) timings.requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        if (timings != null) {
+            timings.requestEnd = System.nanoTime();
+            timings.bytesSent = byteCount;
+        }
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        if (timings != null) timings.responseHeadersStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        if (timings != null) {
+            timings.responseBodyEnd = System.nanoTime();
+            timings.bytesReceived = byteCount;
+        }
+    }
+}
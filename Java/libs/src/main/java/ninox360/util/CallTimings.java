@@ -0,0 +1,50 @@
+package ninox360.util;
+
+/**
+ * Timestamps collected for one HTTP call, attached to the request as a tag and filled in by
+ * {@link CallEventListener} as the call progresses. All values are System.nanoTime() readings, 0 when the
+ * phase did not happen (e.g. no connect on a reused connection).
+ */
+final class CallTimings {
+    final String command;
+    final long startMillis = System.currentTimeMillis();
+    final long startNanos = System.nanoTime();
+
+    volatile long connectStart;
+    volatile long secureConnectStart;
+    volatile long secureConnectEnd;
+    volatile long connectEnd;
+    volatile long requestEnd;
+    volatile long responseHeadersStart;
+    volatile long responseBodyEnd;
+    volatile long bytesSent;
+    volatile long bytesReceived;
+
+    /**
+     * @param command action which the call issues
+     */
+    CallTimings(String command) {
+        this.command = command;
+    }
+
+    /**
+     * Converts the collected timestamps into an event once the response has been processed.
+     *
+     * @param error failure of the call, null on success
+     * @return the completed event
+     */
+    CommandEvent complete(Exception error) {
+        long end = System.nanoTime();
+        long connectNanos = 0;
+        if (connectStart > 0 && connectEnd > 0) {
+            connectNanos = (secureConnectStart > 0 ? secureConnectStart : connectEnd) - connectStart;
+        }
+        long tlsNanos = secureConnectStart > 0 && secureConnectEnd > 0 ? secureConnectEnd - secureConnectStart : 0;
+        long serverNanos = requestEnd > 0 && responseHeadersStart > 0 ? responseHeadersStart - requestEnd : 0;
+        long transferNanos = responseHeadersStart > 0 && responseBodyEnd > 0 ? responseBodyEnd - responseHeadersStart : 0;
+        long decodeNanos = responseBodyEnd > 0 ? Math.max(0, end - responseBodyEnd) : 0;
+
+        return new CommandEvent(command, startMillis, end - startNanos, connectNanos, tlsNanos, serverNanos,
+                transferNanos, decodeNanos, bytesSent, bytesReceived, connectStart == 0, error);
+    }
+}
@@ -0,0 +1,149 @@
+package ninox360.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fails commands fast while a device is unreachable, instead of letting every caller wait for its own timeout.
+ * After a number of consecutive failures without any response the breaker opens and rejects commands immediately.
+ * Once the open period has passed a single trial command is let through; its success closes the breaker again,
+ * its failure keeps it open for another period. Only {@link TransportException}s and HTTP statuses of 500 and above
+ * count as failures; other statuses, responses whose body cannot be decoded and local errors while a response is
+ * handled prove the device is reachable.
+ * <pre>
+ *     Usage Example:
+ *     api.getCircuitBreaker()
+ *             .setFailureThreshold(3)
+ *             .setOpenMillis(10_000);
+ *
+ *     if (api.getCircuitBreaker().getState() == CircuitBreaker.State.OPEN) showOffline();
+ * </pre>
+ */
+public class CircuitBreaker {
+    /**
+     * Breaker states.
+     */
+    public enum State {
+        /** Commands are sent normally. */
+        CLOSED,
+        /** Commands fail immediately. */
+        OPEN,
+        /** A trial command is in flight, others fail immediately. */
+        HALF_OPEN
+    }
+
+    private volatile int failureThreshold = 5;
+    private volatile long openMillis = 5_000L;
+    private final AtomicLong rejected = new AtomicLong();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long retryAtNanos;
+
+    /**
+     * @return number of consecutive failures which open the breaker
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @param failureThreshold number of consecutive failures which open the breaker, must be at least 1
+     * @return this breaker for chaining
+     */
+    public CircuitBreaker setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold < 1");
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    /**
+     * @return time in milliseconds the breaker stays open before a trial command is let through
+     */
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    /**
+     * @param openMillis time in milliseconds the breaker stays open before a trial command is let through
+     * @return this breaker for chaining
+     */
+    public CircuitBreaker setOpenMillis(long openMillis) {
+        if (openMillis <= 0) throw new IllegalArgumentException("openMillis <= 0");
+        this.openMillis = openMillis;
+        return this;
+    }
+
+    /**
+     * @return the current state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return number of commands rejected without being sent
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Closes the breaker, e.g. after the device was known to come back.
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * @return true when a command may be sent, false when it should fail immediately
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) return true;
+        long now = System.nanoTime();
+        if (now - retryAtNanos >= 0) {
+            // let one trial through; should it never report back, another one follows after the next period
+            state = State.HALF_OPEN;
+            retryAtNanos = now + TimeUnit.MILLISECONDS.toNanos(openMillis);
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records that the device answered.
+     */
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records that the device could not be reached.
+     */
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMillis);
+        }
+    }
+
+    /**
+     * @param statusCode HTTP status of the attempt, -1 if there was no response
+     */
+    void record(int statusCode) {
+        if (statusCode < 0 || statusCode >= 500) {
+            recordFailure();
+        } else {
+            recordSuccess();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{state=" + getState() + ", rejected=" + getRejectedCount() + "}";
+    }
+}
@@ -0,0 +1,191 @@
+package ninox360.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queues several independent commands and sends them all at once, so a setup sequence costs about one round-trip
+ * instead of one per command. Commands travel over the pooled keep-alive connections of the {@link RemoteAPI},
+ * or as multiplexed streams on a single connection when HTTP/2 is negotiated.
+ * The device may apply the commands in any order, so only batch commands which do not depend on each other.
+ * <pre>
+ *     Usage Example:
+ *     List&lt;RemoteResponse&gt; results = api.batch()
+ *             .stillnessRequired(false)
+ *             .markerRequired(true)
+ *             .setCameraExposure(10_000_000)
+ *             .setCameraSensitivity(400)
+ *             .setNickname("Line 3")
+ *             .execute();
+ * </pre>
+ */
+public final class CommandBatch {
+    private final RemoteAPI api;
+    private final List<String[]> commands = new ArrayList<>();
+
+    /**
+     * @param api device the commands are sent to
+     */
+    CommandBatch(RemoteAPI api) {
+        this.api = api;
+    }
+
+    /**
+     * Queues a stillness requirement command.
+     *
+     * @param state Boolean indicating if the stillness is required prior to scanning, true=on false=off
+     * @return this batch
+     */
+    public CommandBatch stillnessRequired(boolean state) {
+        return add("REQUIRE_STILL", Boolean.toString(state));
+    }
+
+    /**
+     * Queues a marker requirement command.
+     *
+     * @param state Boolean indicating if the Marker is required prior to scanning, true=on false=off
+     * @return this batch
+     */
+    public CommandBatch markerRequired(boolean state) {
+        return add("REQUIRE_MARKER", Boolean.toString(state));
+    }
+
+    /**
+     * Queues a camera exposure command.
+     *
+     * @param exposure_ns Exposure time in nanoseconds
+     * @return this batch
+     */
+    public CommandBatch setCameraExposure(long exposure_ns) {
+        return add("EXPOSURE", Long.toString(exposure_ns));
+    }
+
+    /**
+     * Queues a camera sensitivity command.
+     *
+     * @param sensitivity_iso Sensitivity of the camera in ISO
+     * @return this batch
+     */
+    public CommandBatch setCameraSensitivity(int sensitivity_iso) {
+        return add("SENSITIVITY", Integer.toString(sensitivity_iso));
+    }
+
+    /**
+     * Queues a nickname command.
+     *
+     * @param name Nickname for the device
+     * @return this batch
+     */
+    public CommandBatch setNickname(String name) {
+        return add("SET_NICKNAME", name);
+    }
+
+    /**
+     * Queues a state request.
+     *
+     * @return this batch
+     */
+    public CommandBatch getState() {
+        return add("GET_STATE", "");
+    }
+
+    /**
+     * @param command action which we are issuing
+     * @param value   additional parameters for a command
+     * @return this batch
+     */
+    private CommandBatch add(String command, String value) {
+        commands.add(new String[]{command, value});
+        return this;
+    }
+
+    /**
+     * @return number of queued commands
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Sends every queued command and waits for all responses.
+     *
+     * @return the responses, in the order the commands were queued
+     * @throws IOException if any command fails or is not answered with "success", the remaining commands are cancelled
+     */
+    public List<RemoteResponse> execute() throws IOException {
+        try {
+            return executeAsync().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the command batch", e);
+        }
+    }
+
+    /**
+     * Sends every queued command without blocking. The first failure completes the returned future and cancels
+     * the commands still in flight; cancelling the returned future cancels all of them.
+     *
+     * @return future completed with the responses in the order the commands were queued,
+     * or exceptionally with an IOException
+     */
+    public CompletableFuture<List<RemoteResponse>> executeAsync() {
+        int count = commands.size();
+        CompletableFuture<List<RemoteResponse>> result = new CompletableFuture<>();
+        if (count == 0) {
+            result.complete(Collections.emptyList());
+            return result;
+        }
+
+        List<CompletableFuture<RemoteResponse>> sent = new ArrayList<>(count);
+        RemoteResponse[] responses = new RemoteResponse[count];
+        AtomicInteger remaining = new AtomicInteger(count);
+        result.whenComplete((list, error) -> {
+            if (error != null) cancelAll(sent);
+        });
+
+        for (String[] command : commands) {
+            sent.add(api.sendCommandAsync(command[0], command[1]));
+        }
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            String name = commands.get(i)[0];
+            sent.get(i).whenComplete((response, error) -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (!(cause instanceof CancellationException)) {
+                        result.completeExceptionally(cause instanceof IOException ? cause : new IOException("Command " + name + " failed", cause));
+                    }
+                } else if (!response.isSuccess()) {
+                    result.completeExceptionally(new IOException("Command " + name + " failed: " + response.getMessage()));
+                } else {
+                    responses[index] = response;
+                    if (remaining.decrementAndGet() == 0) {
+                        List<RemoteResponse> ordered = new ArrayList<>(count);
+                        Collections.addAll(ordered, responses);
+                        result.complete(Collections.unmodifiableList(ordered));
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * @param futures commands to cancel, completed ones are not affected
+     */
+    private static void cancelAll(List<CompletableFuture<RemoteResponse>> futures) {
+        for (CompletableFuture<RemoteResponse> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ninox360.util;
+
+/**
+ * Immutable record of a single completed request: command name, outcome, bytes on the wire and the time spent
+ * in each phase. Phase times are 0 when the phase did not happen, e.g. connect and TLS on a reused connection.
+ */
+public final class CommandEvent {
+    private final String command;
+    private final long startTimeMillis;
+    private final long totalNanos;
+    private final long connectNanos;
+    private final long tlsNanos;
+    private final long serverNanos;
+    private final long transferNanos;
+    private final long decodeNanos;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final boolean connectionReused;
+    private final Exception error;
+
+    CommandEvent(String command, long startTimeMillis, long totalNanos, long connectNanos, long tlsNanos, long serverNanos,
+                 long transferNanos, long decodeNanos, long bytesSent, long bytesReceived, boolean connectionReused,
+                 Exception error) {
+        this.command = command;
+        this.startTimeMillis = startTimeMillis;
+        this.totalNanos = totalNanos;
+        this.connectNanos = connectNanos;
+        this.tlsNanos = tlsNanos;
+        this.serverNanos = serverNanos;
+        this.transferNanos = transferNanos;
+        this.decodeNanos = decodeNanos;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.connectionReused = connectionReused;
+        this.error = error;
+    }
+
+    /**
+     * @return command name, e.g. "GET_STATE", "REGISTER" for registration
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return wall clock time in milliseconds at which the request was issued
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * @return time from issuing the request to the response being processed, including any queueing
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return total time in milliseconds, see {@link #getTotalNanos()}
+     */
+    public double getTotalMillis() {
+        return totalNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return TCP connect time, 0 on a reused connection
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * @return TLS handshake time, 0 on a reused connection
+     */
+    public long getTlsNanos() {
+        return tlsNanos;
+    }
+
+    /**
+     * @return time from the request being sent to the first response byte, i.e. device processing plus one round-trip
+     */
+    public long getServerNanos() {
+        return serverNanos;
+    }
+
+    /**
+     * @return time spent receiving the response body
+     */
+    public long getTransferNanos() {
+        return transferNanos;
+    }
+
+    /**
+     * @return time spent decoding the received body (YAML or image)
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * @return request body size in bytes
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return response body size in bytes
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return true when the request was served over an already open connection
+     */
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    /**
+     * @return true when the request completed without an error
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the failure, null on success
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandEvent{command='" + command + "', success=" + isSuccess() + ", totalMillis=" + getTotalMillis()
+                + ", bytesSent=" + bytesSent + ", bytesReceived=" + bytesReceived + ", reused=" + connectionReused + "}";
+    }
+}
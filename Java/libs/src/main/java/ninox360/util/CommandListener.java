@@ -0,0 +1,19 @@
+package ninox360.util;
+
+/**
+ * Receives one {@link CommandEvent} per completed request, successful or not.
+ * Listeners are called on the thread which completed the request and should return quickly.
+ * <pre>
+ *     Usage Example:
+ *     api.addCommandListener(event -&gt; {
+ *         if (event.getTotalMillis() &gt; 200) System.out.println("slow " + event);
+ *     });
+ * </pre>
+ */
+@FunctionalInterface
+public interface CommandListener {
+    /**
+     * @param event timings, sizes and outcome of the request
+     */
+    void onCommandComplete(CommandEvent event);
+}
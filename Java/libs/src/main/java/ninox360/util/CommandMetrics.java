@@ -0,0 +1,95 @@
+package ninox360.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates {@link CommandEvent}s per command name: request and error counts, bytes in and out, a latency
+ * histogram (p50/p99/max) and the mean time spent connecting, in TLS, waiting on the device, transferring and
+ * decoding. Every {@link RemoteAPI} records into its own instance, recording is lock-free.
+ * <pre>
+ *     Usage Example:
+ *     for (CommandStats stats : api.getCommandMetrics().snapshot().values()) {
+ *         System.out.println(stats);
+ *     }
+ *     // GET_STATE: count=120 errors=0 in=6120B out=8400B p50=4.10ms p99=9.22ms max=31.05ms connect=0.08ms ...
+ * </pre>
+ */
+public class CommandMetrics implements CommandListener {
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+
+    @Override
+    public void onCommandComplete(CommandEvent event) {
+        recorders.computeIfAbsent(event.getCommand(), Recorder::new).record(event);
+    }
+
+    /**
+     * @param command command name, e.g. "GET_STATE"
+     * @return metrics of the command, null if it has not been sent
+     */
+    public CommandStats getStats(String command) {
+        Recorder recorder = recorders.get(command);
+        return recorder == null ? null : recorder.snapshot();
+    }
+
+    /**
+     * @return metrics of every command sent so far, ordered by command name
+     */
+    public Map<String, CommandStats> snapshot() {
+        Map<String, CommandStats> result = new TreeMap<>();
+        for (Recorder recorder : recorders.values()) {
+            result.put(recorder.command, recorder.snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * Discards all recorded metrics.
+     */
+    public void reset() {
+        recorders.clear();
+    }
+
+    /**
+     * Accumulates the events of one command.
+     */
+    private static final class Recorder {
+        private final String command;
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder connectNanos = new LongAdder();
+        private final LongAdder tlsNanos = new LongAdder();
+        private final LongAdder serverNanos = new LongAdder();
+        private final LongAdder transferNanos = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Recorder(String command) {
+            this.command = command;
+        }
+
+        void record(CommandEvent event) {
+            if (!event.isSuccess()) errors.increment();
+            bytesSent.add(event.getBytesSent());
+            bytesReceived.add(event.getBytesReceived());
+            connectNanos.add(event.getConnectNanos());
+            tlsNanos.add(event.getTlsNanos());
+            serverNanos.add(event.getServerNanos());
+            transferNanos.add(event.getTransferNanos());
+            decodeNanos.add(event.getDecodeNanos());
+            latency.record(event.getTotalNanos());
+        }
+
+        CommandStats snapshot() {
+            long count = latency.count();
+            double divisor = Math.max(1, count);
+            return new CommandStats(command, count, errors.sum(), bytesSent.sum(), bytesReceived.sum(),
+                    latency.percentileNanos(50), latency.percentileNanos(99), latency.maxNanos(),
+                    connectNanos.sum() / divisor, tlsNanos.sum() / divisor, serverNanos.sum() / divisor,
+                    transferNanos.sum() / divisor, decodeNanos.sum() / divisor);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ninox360.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry and deadline settings for one command type of a {@link RemoteAPI}.
+ * Failed attempts are retried with exponential backoff and full jitter when the failure is transient: no response
+ * at all ({@link TransportException}), a 5xx status, 408 or 429. A response whose body cannot be decoded or a local
+ * error while the response is handled, e.g. a full disk, is never retried.
+ * Only idempotent commands should be given more than one attempt.
+ * The deadline bounds the whole command, including every retry and backoff.
+ * Policies are immutable and safe to share between threads, every with-method returns a changed copy.
+ * <pre>
+ *     Usage Example:
+ *     api.setCommandPolicy("GET_STATE", new CommandPolicy()
+ *             .withMaxAttempts(5)
+ *             .withInitialBackoffMillis(50)
+ *             .withDeadlineMillis(2_000));
+ * </pre>
+ */
+public final class CommandPolicy {
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long deadlineMillis;
+
+    /**
+     * Creates the default policy: a single attempt, 100 ms initial backoff, 2 s maximum backoff, 30 s deadline.
+     */
+    public CommandPolicy() {
+        this(1, 100L, 2_000L, 30_000L);
+    }
+
+    private CommandPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, long deadlineMillis) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @return policy for idempotent commands: 4 attempts, 100 ms initial backoff, 2 s maximum backoff, 30 s deadline
+     */
+    public static CommandPolicy idempotent() {
+        return new CommandPolicy().withMaxAttempts(4);
+    }
+
+    /**
+     * @return number of times the command is sent at most
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets how many times the command is sent at most, 1 disables retries.
+     *
+     * @param maxAttempts attempt limit, must be at least 1
+     * @return a copy of this policy with the new limit
+     */
+    public CommandPolicy withMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts < 1");
+        return new CommandPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, deadlineMillis);
+    }
+
+    /**
+     * @return upper bound in milliseconds of the wait before the first retry
+     */
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    /**
+     * Sets the upper bound of the wait before the first retry, it doubles for each further retry.
+     *
+     * @param initialBackoffMillis backoff in milliseconds, must not be negative
+     * @return a copy of this policy with the new backoff
+     */
+    public CommandPolicy withInitialBackoffMillis(long initialBackoffMillis) {
+        if (initialBackoffMillis < 0) throw new IllegalArgumentException("initialBackoffMillis < 0");
+        return new CommandPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, deadlineMillis);
+    }
+
+    /**
+     * @return limit in milliseconds of the wait between two attempts
+     */
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Sets the limit of the wait between two attempts.
+     *
+     * @param maxBackoffMillis backoff limit in milliseconds, must not be negative
+     * @return a copy of this policy with the new limit
+     */
+    public CommandPolicy withMaxBackoffMillis(long maxBackoffMillis) {
+        if (maxBackoffMillis < 0) throw new IllegalArgumentException("maxBackoffMillis < 0");
+        return new CommandPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, deadlineMillis);
+    }
+
+    /**
+     * @return time in milliseconds the command may take in total, 0 if only the client timeouts apply
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Sets how long the command may take in total, from the first attempt to the last response byte.
+     *
+     * @param deadlineMillis deadline in milliseconds, 0 to rely on the client's connect/read/write timeouts only
+     * @return a copy of this policy with the new deadline
+     */
+    public CommandPolicy withDeadlineMillis(long deadlineMillis) {
+        if (deadlineMillis < 0) throw new IllegalArgumentException("deadlineMillis < 0");
+        return new CommandPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, deadlineMillis);
+    }
+
+    /**
+     * @param statusCode HTTP status of the failed attempt, -1 if there was no response
+     * @return true when the failure is worth another attempt
+     */
+    static boolean isTransient(int statusCode) {
+        return statusCode < 0 || statusCode >= 500 || statusCode == 408 || statusCode == 429;
+    }
+
+    /**
+     * @param retry number of the retry, starting at 1
+     * @return random wait in milliseconds before the retry, between 0 and the exponential bound
+     */
+    long backoffMillis(int retry) {
+        long bound = initialBackoffMillis << Math.min(retry - 1, 30);
+        if (bound < 0 || bound > maxBackoffMillis) bound = maxBackoffMillis;
+        return bound == 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "CommandPolicy{maxAttempts=" + maxAttempts + ", initialBackoffMillis=" + initialBackoffMillis
+                + ", maxBackoffMillis=" + maxBackoffMillis + ", deadlineMillis=" + deadlineMillis + "}";
+    }
+}
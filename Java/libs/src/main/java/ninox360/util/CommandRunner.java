@@ -0,0 +1,365 @@
+package ninox360.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies the {@link CommandPolicy} of each command, the device's {@link CircuitBreaker} and automatic
+ * re-registration to the commands of a {@link RemoteAPI}. Every attempt builds a fresh request, so a retry after
+ * re-registration carries the new client secret. A rejected registration itself is not answered by registering again.
+ */
+class CommandRunner {
+    /**
+     * Sends a single blocking attempt.
+     *
+     * @param <T> command result type
+     */
+    @FunctionalInterface
+    interface Attempt<T> {
+        /**
+         * @param timeoutMillis time left for this attempt, 0 if not limited
+         * @return the command result
+         * @throws IOException if the attempt failed
+         */
+        T send(long timeoutMillis) throws IOException;
+    }
+
+    /**
+     * Sends a single asynchronous attempt.
+     *
+     * @param <T> command result type
+     */
+    @FunctionalInterface
+    interface AsyncAttempt<T> {
+        /**
+         * @param timeoutMillis time left for this attempt, 0 if not limited
+         * @return future of the command result
+         */
+        CompletableFuture<T> send(long timeoutMillis);
+    }
+
+    private static volatile ScheduledExecutorService retryScheduler;
+
+    private final RemoteAPI api;
+    private final CircuitBreaker breaker = new CircuitBreaker();
+    private final Map<String, CommandPolicy> policies = new ConcurrentHashMap<>();
+    private volatile CommandPolicy defaultPolicy = new CommandPolicy();
+
+    /**
+     * @param api device the commands are sent to, used for re-registration
+     */
+    CommandRunner(RemoteAPI api) {
+        this.api = api;
+        policies.put("GET_STATE", CommandPolicy.idempotent());
+        policies.put("CAPTURE_VIDEO_FRAME", CommandPolicy.idempotent());
+        policies.put(HttpCommunicationUtil.REGISTER_COMMAND, CommandPolicy.idempotent());
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    CommandPolicy getPolicy(String command) {
+        CommandPolicy policy = policies.get(command);
+        return policy != null ? policy : defaultPolicy;
+    }
+
+    void setPolicy(String command, CommandPolicy policy) {
+        policies.put(command, policy);
+    }
+
+    void setDefaultPolicy(CommandPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Sends a command, blocking until it succeeds, runs out of attempts or reaches its deadline.
+     *
+     * @param command action which is being sent, selects the policy
+     * @param attempt sends one attempt
+     * @param <T>     command result type
+     * @return the command result
+     * @throws IOException the failure of the last attempt, or why no attempt could be made
+     */
+    <T> T run(String command, Attempt<T> attempt) throws IOException {
+        return run(command, getPolicy(command), attempt);
+    }
+
+    /**
+     * Sends a command with an explicit policy, e.g. a single attempt when a failed attempt cannot be undone.
+     *
+     * @param command action which is being sent
+     * @param policy  retry and deadline settings for this call
+     * @param attempt sends one attempt
+     * @param <T>     command result type
+     * @return the command result
+     * @throws IOException the failure of the last attempt, or why no attempt could be made
+     */
+    <T> T run(String command, CommandPolicy policy, Attempt<T> attempt) throws IOException {
+        long deadline = deadlineNanos(policy);
+        boolean reregistered = false;
+        IOException last = null;
+
+        for (int attempts = 1; ; attempts++) {
+            long timeout = remainingMillis(deadline);
+            if (timeout < 0) throw deadlineExceeded(command, policy, last);
+            if (!breaker.tryAcquire()) throw circuitOpen(command, last);
+
+            String secret = api.clientSecret;
+            try {
+                T result = attempt.send(timeout);
+                breaker.recordSuccess();
+                return result;
+            } catch (IOException e) {
+                last = e;
+                int status = RejectedRequestException.statusCodeOf(e);
+                boolean retryable = recordFailure(status, e);
+                if (e instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) throw e;
+
+                if (isSecretRejected(status) && !reregistered && !HttpCommunicationUtil.REGISTER_COMMAND.equals(command)) {
+                    reregistered = true;
+                    if (reregister(secret)) {
+                        attempts--;
+                        continue;
+                    }
+                }
+                if (!retryable || attempts >= policy.getMaxAttempts()) throw e;
+
+                long backoff = policy.backoffMillis(attempts);
+                if (deadline != Long.MAX_VALUE && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) - deadline >= 0) throw e;
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a command without blocking. Cancelling the returned future cancels the attempt in flight or the pending retry.
+     *
+     * @param command action which is being sent, selects the policy
+     * @param attempt sends one attempt
+     * @param <T>     command result type
+     * @return future completed with the command result, or exceptionally with the IOException of the last attempt
+     */
+    <T> CompletableFuture<T> runAsync(String command, AsyncAttempt<T> attempt) {
+        AsyncRun<T> run = new AsyncRun<>(command, attempt);
+        run.send();
+        return run.result;
+    }
+
+    /**
+     * @param secret client secret the rejected attempt was sent with
+     * @return true when a valid secret is now in place and the command may be sent again
+     */
+    private boolean reregister(String secret) {
+        try {
+            return api.reregisterAsync(secret).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Classifies a failed attempt and reports it to the circuit breaker. An HTTP status is judged by its code and a
+     * {@link TransportException} means no complete response was received, it is retried and counted by the breaker.
+     * Anything else happened after the device answered, e.g. a response which could not be decoded or a local disk
+     * error while it was written, and is neither worth another attempt nor counted against the device.
+     *
+     * @param status HTTP status of the failed attempt, -1 if there was none
+     * @param e      failure of the attempt
+     * @return true when the failure is transient and the command may be retried
+     */
+    private boolean recordFailure(int status, IOException e) {
+        if (status >= 0) {
+            breaker.record(status);
+            return CommandPolicy.isTransient(status);
+        }
+        if (TransportException.isCauseOf(e)) {
+            breaker.recordFailure();
+            return true;
+        }
+        breaker.recordSuccess();
+        return false;
+    }
+
+    /**
+     * @param status HTTP status of the failed attempt
+     * @return true when the device no longer accepts the client secret
+     */
+    static boolean isSecretRejected(int status) {
+        return status == 401 || status == 403;
+    }
+
+    /**
+     * @param policy command policy
+     * @return monotonic deadline of the command, Long.MAX_VALUE if there is none
+     */
+    private static long deadlineNanos(CommandPolicy policy) {
+        return policy.getDeadlineMillis() > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getDeadlineMillis()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param deadline monotonic deadline, Long.MAX_VALUE if there is none
+     * @return milliseconds left (at least 1), 0 if not limited, -1 once the deadline has passed
+     */
+    private static long remainingMillis(long deadline) {
+        if (deadline == Long.MAX_VALUE) return 0;
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) return -1;
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    private static IOException deadlineExceeded(String command, CommandPolicy policy, IOException last) {
+        return new IOException("Command " + command + " did not complete within its deadline of " + policy.getDeadlineMillis() + " ms", last);
+    }
+
+    private IOException circuitOpen(String command, IOException last) {
+        return new IOException("Command " + command + " rejected, device " + api.getIP() + " is unreachable (circuit open)", last);
+    }
+
+    /**
+     * @return shared daemon thread which runs delayed asynchronous retries
+     */
+    static ScheduledExecutorService retryScheduler() {
+        ScheduledExecutorService scheduler = retryScheduler;
+        if (scheduler == null) {
+            synchronized (CommandRunner.class) {
+                scheduler = retryScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "CommandRunner-retry");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    retryScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * State of one asynchronous command across its attempts.
+     *
+     * @param <T> command result type
+     */
+    private final class AsyncRun<T> {
+        private final String command;
+        private final AsyncAttempt<T> attempt;
+        private final CommandPolicy policy;
+        private final long deadline;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicReference<Future<?>> current = new AtomicReference<>();
+        private int attempts;
+        private boolean reregistered;
+        private IOException last;
+
+        AsyncRun(String command, AsyncAttempt<T> attempt) {
+            this.command = command;
+            this.attempt = attempt;
+            this.policy = getPolicy(command);
+            this.deadline = deadlineNanos(policy);
+            result.whenComplete((value, error) -> {
+                Future<?> pending = current.get();
+                if (result.isCancelled() && pending != null) pending.cancel(true);
+            });
+        }
+
+        /**
+         * Sends the next attempt, attempts never overlap so the fields need no further synchronization.
+         */
+        void send() {
+            if (result.isDone()) return;
+            long timeout = remainingMillis(deadline);
+            if (timeout < 0) {
+                result.completeExceptionally(deadlineExceeded(command, policy, last));
+                return;
+            }
+            if (!breaker.tryAcquire()) {
+                result.completeExceptionally(circuitOpen(command, last));
+                return;
+            }
+
+            attempts++;
+            String secret = api.clientSecret;
+            CompletableFuture<T> future;
+            try {
+                future = attempt.send(timeout);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            current.set(future);
+            if (result.isCancelled()) future.cancel(true);
+
+            CompletableFuture<T> sent = future;
+            sent.whenComplete((value, error) -> {
+                if (error == null) {
+                    breaker.recordSuccess();
+                    result.complete(value);
+                } else if (!sent.isCancelled() && !result.isDone()) {
+                    onFailure(secret, error);
+                }
+            });
+        }
+
+        /**
+         * @param secret client secret the failed attempt was sent with
+         * @param error  failure of the attempt
+         */
+        private void onFailure(String secret, Throwable error) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof CancellationException) {
+                result.cancel(true);
+                return;
+            }
+            IOException e = cause instanceof IOException ? (IOException) cause : new IOException("Command " + command + " failed", cause);
+            last = e;
+            int status = RejectedRequestException.statusCodeOf(e);
+            boolean retryable = recordFailure(status, e);
+
+            if (isSecretRejected(status) && !reregistered && !HttpCommunicationUtil.REGISTER_COMMAND.equals(command)) {
+                reregistered = true;
+                api.reregisterAsync(secret).whenComplete((registered, registerError) -> {
+                    if (registered != null && registered) {
+                        attempts--;
+                        send();
+                    } else {
+                        result.completeExceptionally(e);
+                    }
+                });
+                return;
+            }
+            if (!retryable || attempts >= policy.getMaxAttempts()) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            long backoff = policy.backoffMillis(attempts);
+            if (deadline != Long.MAX_VALUE && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) - deadline >= 0) {
+                result.completeExceptionally(e);
+                return;
+            }
+            current.set(retryScheduler().schedule(this::send, backoff, TimeUnit.MILLISECONDS));
+            if (result.isCancelled()) current.get().cancel(false);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ninox360.util;
+
+/**
+ * Immutable snapshot of the aggregated metrics of one command, see {@link CommandMetrics}.
+ */
+public final class CommandStats {
+    private final String command;
+    private final long count;
+    private final long errorCount;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+    private final double meanConnectNanos;
+    private final double meanTlsNanos;
+    private final double meanServerNanos;
+    private final double meanTransferNanos;
+    private final double meanDecodeNanos;
+
+    CommandStats(String command, long count, long errorCount, long bytesSent, long bytesReceived, long p50Nanos,
+                 long p99Nanos, long maxNanos, double meanConnectNanos, double meanTlsNanos, double meanServerNanos,
+                 double meanTransferNanos, double meanDecodeNanos) {
+        this.command = command;
+        this.count = count;
+        this.errorCount = errorCount;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+        this.meanConnectNanos = meanConnectNanos;
+        this.meanTlsNanos = meanTlsNanos;
+        this.meanServerNanos = meanServerNanos;
+        this.meanTransferNanos = meanTransferNanos;
+        this.meanDecodeNanos = meanDecodeNanos;
+    }
+
+    /**
+     * @return command name, e.g. "GET_STATE"
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return number of requests, including failed ones
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of failed requests
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return total request body bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return total response body bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return median total latency in milliseconds
+     */
+    public double getP50Millis() {
+        return p50Nanos / 1_000_000.0;
+    }
+
+    /**
+     * @return 99th percentile total latency in milliseconds
+     */
+    public double getP99Millis() {
+        return p99Nanos / 1_000_000.0;
+    }
+
+    /**
+     * @return largest total latency in milliseconds
+     */
+    public double getMaxMillis() {
+        return maxNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return mean TCP connect time in milliseconds, reused connections count as 0
+     */
+    public double getMeanConnectMillis() {
+        return meanConnectNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return mean TLS handshake time in milliseconds, reused connections count as 0
+     */
+    public double getMeanTlsMillis() {
+        return meanTlsNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return mean time from request sent to first response byte in milliseconds
+     */
+    public double getMeanServerMillis() {
+        return meanServerNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return mean time receiving the response body in milliseconds
+     */
+    public double getMeanTransferMillis() {
+        return meanTransferNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return mean time decoding the response in milliseconds
+     */
+    public double getMeanDecodeMillis() {
+        return meanDecodeNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d errors=%d in=%dB out=%dB p50=%.2fms p99=%.2fms max=%.2fms "
+                        + "connect=%.2fms tls=%.2fms server=%.2fms transfer=%.2fms decode=%.2fms",
+                command, count, errorCount, bytesReceived, bytesSent, getP50Millis(), getP99Millis(), getMaxMillis(),
+                getMeanConnectMillis(), getMeanTlsMillis(), getMeanServerMillis(), getMeanTransferMillis(), getMeanDecodeMillis());
+    }
+}
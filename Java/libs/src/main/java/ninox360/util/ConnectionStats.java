@@ -0,0 +1,65 @@
+package ninox360.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection usage counters for a single client, used to verify keep-alive and TLS session reuse.
+ * <pre>
+ *     Usage Example:
+ *     ConnectionStats stats = api.getConnectionStats();
+ *     System.out.println("opened: " + stats.getConnectionsOpened() + " reused: " + stats.getConnectionsReused());
+ * </pre>
+ */
+public class ConnectionStats {
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+    private volatile String protocol;
+
+    /**
+     * @return number of new TCP connections opened to the device
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @return number of requests which were served over an already open, pooled connection
+     */
+    public long getConnectionsReused() {
+        return Math.max(0, connectionsAcquired.get() - connectionsOpened.get());
+    }
+
+    /**
+     * @return number of TLS handshakes completed, full or resumed
+     */
+    public long getTlsHandshakes() {
+        return tlsHandshakes.get();
+    }
+
+    /**
+     * @return protocol of the most recently used connection, "h2" or "http/1.1", null before the first request
+     */
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStats{opened=" + getConnectionsOpened() + ", reused=" + getConnectionsReused()
+                + ", tlsHandshakes=" + getTlsHandshakes() + ", protocol=" + getProtocol() + "}";
+    }
+
+    void connectionOpened() {
+        connectionsOpened.incrementAndGet();
+    }
+
+    void connectionAcquired(String protocol) {
+        connectionsAcquired.incrementAndGet();
+        this.protocol = protocol;
+    }
+
+    void tlsHandshakeCompleted() {
+        tlsHandshakes.incrementAndGet();
+    }
+}
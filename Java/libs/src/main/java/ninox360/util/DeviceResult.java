@@ -0,0 +1,81 @@
+package ninox360.util;
+
+import java.io.IOException;
+
+/**
+ * Outcome of a command sent to one device of a {@link ScannerFleet}.
+ *
+ * @param <T> value returned by the command
+ */
+public final class DeviceResult<T> {
+    private final String device;
+    private final T value;
+    private final IOException error;
+    private final long elapsedNanos;
+    private final boolean timedOut;
+
+    /**
+     * @param device       base address of the device
+     * @param value        value returned by the command, null on failure
+     * @param error        failure of the command, null on success
+     * @param elapsedNanos time the command took on this device
+     * @param timedOut     true when the device did not answer within the fleet timeout
+     */
+    DeviceResult(String device, T value, IOException error, long elapsedNanos, boolean timedOut) {
+        this.device = device;
+        this.value = value;
+        this.error = error;
+        this.elapsedNanos = elapsedNanos;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return base address of the device
+     */
+    public String getDevice() {
+        return device;
+    }
+
+    /**
+     * @return value returned by the command, null if it failed
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return failure of the command, null if it succeeded
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * @return true when the command completed without an error and, for a {@link RemoteResponse}, the device
+     *         answered with {@link ResponseStatus#SUCCESS}
+     */
+    public boolean isSuccess() {
+        if (error != null) return false;
+        return !(value instanceof RemoteResponse) || ((RemoteResponse) value).isSuccess();
+    }
+
+    /**
+     * @return true when the device did not answer within the fleet timeout
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return time in milliseconds the command took on this device
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceResult{device=" + device + ", " + (error == null ? "value=" + value : "error=" + error.getMessage())
+                + ", elapsedMillis=" + String.format("%.1f", getElapsedMillis()) + "}";
+    }
+}
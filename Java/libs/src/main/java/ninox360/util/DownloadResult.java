@@ -0,0 +1,77 @@
+package ninox360.util;
+
+import java.nio.file.Path;
+
+/**
+ * Immutable summary of a completed file download.
+ */
+public final class DownloadResult {
+    private final Path path;
+    private final long fileSize;
+    private final long bytesTransferred;
+    private final boolean resumed;
+    private final long elapsedNanos;
+
+    /**
+     * @param path             location of the downloaded file
+     * @param fileSize         final size of the file
+     * @param bytesTransferred bytes received by this transfer, less than fileSize when resumed
+     * @param resumed          true when an earlier partial download was continued
+     * @param elapsedNanos     duration of this transfer
+     */
+    DownloadResult(Path path, long fileSize, long bytesTransferred, boolean resumed, long elapsedNanos) {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.bytesTransferred = bytesTransferred;
+        this.resumed = resumed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return location of the downloaded file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return final size of the file in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return bytes received by this transfer, less than the file size when an earlier download was resumed
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * @return true when an earlier partial download was continued with an HTTP Range request
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * @return duration of this transfer in milliseconds
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return average throughput of this transfer in bytes per second
+     */
+    public double getBytesPerSecond() {
+        return HttpCommunicationUtil.bytesPerSecond(bytesTransferred, elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadResult{path=" + path + ", fileSize=" + fileSize + ", bytesTransferred=" + bytesTransferred
+                + ", resumed=" + resumed + ", elapsedMillis=" + getElapsedMillis() + "}";
+    }
+}
@@ -0,0 +1,89 @@
+package ninox360.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A single captured video frame delivered by a {@link FrameStream}.
+ * The frame is kept in its encoded (JPEG) form and only decoded when {@link #getImage()} is called,
+ * so archiving or forwarding frames costs no decode.
+ */
+public final class Frame {
+    private final long sequence;
+    private final ByteBuffer bytes;
+    private final long timestampMillis;
+    private final long latencyNanos;
+    private volatile BufferedImage image;
+
+    /**
+     * @param sequence        order in which the capture was requested, starting at 0
+     * @param bytes           encoded frame as returned by the device
+     * @param timestampMillis wall clock time the frame was received
+     * @param latencyNanos    time from issuing the capture request to receiving the frame
+     */
+    Frame(long sequence, ByteBuffer bytes, long timestampMillis, long latencyNanos) {
+        this.sequence = sequence;
+        this.bytes = bytes;
+        this.timestampMillis = timestampMillis;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * @return order in which the capture was requested, starting at 0
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return read-only view of the encoded frame bytes
+     */
+    public ByteBuffer getBytes() {
+        return bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return view of the encoded frame bytes which keeps access to a backing array, for decoders which must not
+     *         modify it
+     */
+    ByteBuffer bytes() {
+        return bytes.duplicate();
+    }
+
+    /**
+     * Decodes the frame on first call, later calls return the same image.
+     *
+     * @return the decoded frame
+     * @throws IOException if the frame bytes are not a valid image
+     */
+    public BufferedImage getImage() throws IOException {
+        BufferedImage result = image;
+        if (result == null) {
+            result = HttpCommunicationUtil.decodeImage(bytes);
+            image = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return wall clock time in milliseconds at which the frame was received
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return time in milliseconds from issuing the capture request to receiving the frame
+     */
+    public double getLatencyMillis() {
+        return latencyNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return time in nanoseconds from issuing the capture request to receiving the frame
+     */
+    long getLatencyNanos() {
+        return latencyNanos;
+    }
+}
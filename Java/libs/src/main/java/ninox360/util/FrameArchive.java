@@ -0,0 +1,280 @@
+package ninox360.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read access to an archive written by {@link FrameRecorder}. The segment indexes are loaded into primitive arrays
+ * when the archive is opened, data files are memory-mapped on first use, and frames are returned as views of the
+ * mapping, so seeking and replaying copy no frame bytes.
+ * The archive shows the frames recorded up to the moment it was opened, ordered by timestamp.
+ * <pre>
+ *     Usage Example:
+ *     try (FrameArchive archive = FrameArchive.open(Paths.get("session-42"))) {
+ *         Frame frame = archive.get(archive.indexOf(defectTimeMillis));
+ *         ImageIO.write(frame.getImage(), "png", new File("defect.png"));
+ *
+ *         archive.replay(0, archive.size(), 4.0, frame -&gt; display(frame));
+ *     }
+ * </pre>
+ */
+public class FrameArchive implements Closeable {
+    private final Path directory;
+    private final int[] segmentNumbers;
+    private final MappedByteBuffer[] mapped;
+    private final FileChannel[] channels;
+    private final int[] frameSegment;
+    private final long[] timestamps;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int size;
+    private boolean closed;
+
+    /**
+     * Opens the archive in a folder.
+     *
+     * @param directory folder written by a {@link FrameRecorder}
+     * @return the opened archive
+     * @throws IOException if the folder or an index cannot be read
+     */
+    public static FrameArchive open(Path directory) throws IOException {
+        return new FrameArchive(directory);
+    }
+
+    private FrameArchive(Path directory) throws IOException {
+        this.directory = directory;
+        List<Integer> segments = FrameRecorder.listSegments(directory);
+        segmentNumbers = new int[segments.size()];
+        mapped = new MappedByteBuffer[segments.size()];
+        channels = new FileChannel[segments.size()];
+
+        int capacity = 0;
+        ByteBuffer[] indexes = new ByteBuffer[segments.size()];
+        for (int s = 0; s < segments.size(); s++) {
+            segmentNumbers[s] = segments.get(s);
+            indexes[s] = readIndex(directory.resolve(FrameRecorder.segmentName(segmentNumbers[s]) + FrameRecorder.INDEX_SUFFIX));
+            capacity += indexes[s].remaining() / FrameRecorder.INDEX_ENTRY_SIZE;
+        }
+
+        frameSegment = new int[capacity];
+        timestamps = new long[capacity];
+        offsets = new long[capacity];
+        lengths = new int[capacity];
+        int count = 0;
+        for (int s = 0; s < indexes.length; s++) {
+            ByteBuffer index = indexes[s];
+            while (index.remaining() >= FrameRecorder.INDEX_ENTRY_SIZE) {
+                frameSegment[count] = s;
+                timestamps[count] = index.getLong();
+                offsets[count] = index.getLong();
+                lengths[count] = index.getInt();
+                count++;
+            }
+        }
+        size = count;
+        sortByTimestamp();
+    }
+
+    /**
+     * Restores timestamp order for lookups when it was broken, e.g. by an archive continued after the clock was
+     * set back with a recorder which did not carry over the last timestamp. Frames with equal timestamps keep
+     * their recorded order.
+     */
+    private void sortByTimestamp() {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = timestamps[i - 1] <= timestamps[i];
+        }
+        if (sorted) return;
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+        int[] segmentCopy = frameSegment.clone();
+        long[] timestampCopy = timestamps.clone();
+        long[] offsetCopy = offsets.clone();
+        int[] lengthCopy = lengths.clone();
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            frameSegment[i] = segmentCopy[from];
+            timestamps[i] = timestampCopy[from];
+            offsets[i] = offsetCopy[from];
+            lengths[i] = lengthCopy[from];
+        }
+    }
+
+    /**
+     * @param indexFile segment index
+     * @return the index entries, a partially written last entry is left out by the caller
+     * @throws IOException if the file cannot be read or is not a frame index
+     */
+    private static ByteBuffer readIndex(Path indexFile) throws IOException {
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile)).order(ByteOrder.BIG_ENDIAN);
+        if (index.remaining() < FrameRecorder.INDEX_HEADER_SIZE || index.getInt() != FrameRecorder.INDEX_MAGIC) {
+            throw new IOException("Not a frame index: " + indexFile);
+        }
+        int version = index.getInt();
+        if (version != FrameRecorder.INDEX_VERSION) {
+            throw new IOException("Unsupported frame index version " + version + ": " + indexFile);
+        }
+        return index;
+    }
+
+    /**
+     * @return number of frames in the archive
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return timestamp in milliseconds of the first frame, or -1 if the archive is empty
+     */
+    public long getStartMillis() {
+        return size == 0 ? -1 : timestamps[0];
+    }
+
+    /**
+     * @return timestamp in milliseconds of the last frame, or -1 if the archive is empty
+     */
+    public long getEndMillis() {
+        return size == 0 ? -1 : timestamps[size - 1];
+    }
+
+    /**
+     * @param index position of the frame, from 0 to size() - 1
+     * @return timestamp in milliseconds of the frame
+     */
+    public long getTimestampMillis(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    /**
+     * Finds the frame shown at a point in time: the last frame recorded at or before the timestamp.
+     *
+     * @param timestampMillis wall clock time in milliseconds
+     * @return position of the frame, 0 for timestamps before the first frame, -1 if the archive is empty
+     */
+    public int indexOf(long timestampMillis) {
+        if (size == 0) return -1;
+        int found = Arrays.binarySearch(timestamps, 0, size, timestampMillis);
+        if (found < 0) return Math.max(0, -found - 2);
+        // several frames may share a timestamp, return the last of them
+        while (found + 1 < size && timestamps[found + 1] == timestampMillis) found++;
+        return found;
+    }
+
+    /**
+     * @param index position of the frame, from 0 to size() - 1
+     * @return read-only view of the encoded frame in the mapped segment
+     * @throws IOException if the archive is closed, the segment cannot be mapped or does not hold the frame,
+     *                     e.g. a data file cut short by a crash
+     */
+    public ByteBuffer read(int index) throws IOException {
+        checkIndex(index);
+        ByteBuffer segment = segment(frameSegment[index]).duplicate();
+        long offset = offsets[index];
+        int length = lengths[index];
+        if (offset < 0 || length < 0 || offset + length > segment.capacity()) {
+            throw new IOException("Frame " + index + " at " + offset + " (" + length + " bytes) lies outside "
+                    + dataFile(frameSegment[index]) + " of " + segment.capacity() + " bytes");
+        }
+        segment.limit((int) offset + length).position((int) offset);
+        return segment.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @param index position of the frame, from 0 to size() - 1
+     * @return the frame, decoded on demand with {@link Frame#getImage()}; its sequence is the position in the archive
+     * @throws IOException if the archive is closed or the frame cannot be read
+     */
+    public Frame get(int index) throws IOException {
+        return new Frame(index, read(index), timestamps[index], 0);
+    }
+
+    /**
+     * Replays a range of frames to a listener on the calling thread.
+     *
+     * @param from     position of the first frame
+     * @param to       position after the last frame
+     * @param speed    playback speed relative to the recording, e.g. 1.0 for real time; 0 replays as fast as possible
+     * @param listener receives each frame
+     * @throws IOException          if the archive is closed or a frame cannot be read
+     * @throws InterruptedException if interrupted while waiting for the next frame
+     */
+    public void replay(int from, int to, double speed, FrameStream.FrameListener listener) throws IOException, InterruptedException {
+        if (from < 0 || to > size || from > to) throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", size " + size);
+        if (speed < 0) throw new IllegalArgumentException("speed < 0");
+        long startNanos = System.nanoTime();
+        for (int i = from; i < to; i++) {
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) ((timestamps[i] - timestamps[from]) * 1_000_000.0 / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            }
+            listener.onFrame(get(i));
+        }
+    }
+
+    /**
+     * @param s position of the segment
+     * @return the data file of the segment, mapped read-only on first use
+     * @throws IOException if the archive is closed or the file cannot be mapped
+     */
+    private synchronized MappedByteBuffer segment(int s) throws IOException {
+        if (closed) throw new IOException("Archive is closed");
+        if (mapped[s] == null) {
+            FileChannel channel = FileChannel.open(dataFile(s), StandardOpenOption.READ);
+            try {
+                long fileSize = channel.size();
+                if (fileSize > Integer.MAX_VALUE) throw new IOException("Segment too large to map: " + dataFile(s));
+                mapped[s] = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            channels[s] = channel;
+        }
+        return mapped[s];
+    }
+
+    /**
+     * @param s position of the segment
+     * @return path of the segment's data file
+     */
+    private Path dataFile(int s) {
+        return directory.resolve(FrameRecorder.segmentName(segmentNumbers[s]) + FrameRecorder.DATA_SUFFIX);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+
+    /**
+     * Closes the segment files, further reads fail. Frames already returned stay readable while the mapping is
+     * reachable.
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (int s = 0; s < channels.length; s++) {
+            if (channels[s] != null) channels[s].close();
+            channels[s] = null;
+            mapped[s] = null;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package ninox360.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frame stream stage which drops frames that hardly differ from the last forwarded one, e.g. while a crawler is
+ * stationary, so they are not stored or sent on. Each frame is decoded with source subsampling, reduced to the
+ * mean luma of a 16 x 16 grid of blocks and compared with the grid of the last forwarded frame; a frame is
+ * forwarded when the fraction of blocks whose mean luma moved by more than the block threshold reaches the change
+ * threshold. Comparing with the last forwarded frame rather than the previous one lets slow drift add up.
+ * <pre>
+ *     Usage Example:
+ *     try (FrameRecorder recorder = new FrameRecorder(Paths.get("session-42"));
+ *          FrameChangeFilter filter = new FrameChangeFilter(recorder).setChangeThreshold(0.02);
+ *          FrameStream stream = api.openFrameStream(3, 2, filter)) {
+ *         Thread.sleep(60_000);
+ *         System.out.println(filter.getFramesSuppressed() + " of " + filter.getFramesReceived() + " frames suppressed");
+ *     }
+ * </pre>
+ * The filter is a {@link FrameStream.FrameListener}. Frames and capture errors are only queued on the stream's
+ * delivery thread, the comparison runs on a worker thread of the filter, which alone calls the downstream listener.
+ * When the worker falls behind the oldest queued frame is dropped. Frames which cannot be decoded are forwarded
+ * unfiltered.
+ */
+public class FrameChangeFilter implements FrameStream.FrameListener, Closeable {
+    static final int GRID_SIZE = 16;
+    private static final int BLOCKS = GRID_SIZE * GRID_SIZE;
+    private static final double SMOOTHING = 0.1;
+    private static final long POLL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000;
+
+    private final FrameStream.FrameListener downstream;
+    private final ArrayBlockingQueue<Frame> queue;
+    private final ConcurrentLinkedQueue<IOException> pendingErrors = new ConcurrentLinkedQueue<>();
+    private final FrameDecoder decoder;
+    private final Thread worker;
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesForwarded = new AtomicLong();
+    private final AtomicLong framesSuppressed = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile double changeThreshold = 0.01;
+    private volatile int blockThreshold = 8;
+    private volatile long maxIntervalMillis;
+    private volatile boolean running = true;
+    private volatile double lastScore = 1;
+    private volatile double averageFilterNanos;
+
+    // only used by the worker thread
+    private int[] luma = new int[0];
+    private int[] row = new int[0];
+    private int[] weights = new int[0];
+    private final int[] columnStart = new int[GRID_SIZE + 1];
+    private final long[] blockSums = new long[BLOCKS];
+    private final int[] blockCounts = new int[BLOCKS];
+    private final int[] blockMeans = new int[BLOCKS];
+    private final int[] reference = new int[BLOCKS];
+    private boolean hasReference;
+    private int gridWidth = -1;
+    private int gridHeight = -1;
+    private long lastForwardedMillis;
+
+    /**
+     * Creates a filter decoding frames at an eighth of their width and height, with a queue of 4 frames.
+     *
+     * @param downstream receives the frames which changed enough, on the filter's worker thread
+     */
+    public FrameChangeFilter(FrameStream.FrameListener downstream) {
+        this(downstream, 8, 4);
+    }
+
+    /**
+     * @param downstream    receives the frames which changed enough, on the filter's worker thread
+     * @param subsampling   keep every n-th pixel in both directions when decoding, higher is cheaper
+     * @param queueCapacity number of frames waiting for the worker before the oldest is dropped
+     */
+    public FrameChangeFilter(FrameStream.FrameListener downstream, int subsampling, int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity < 1");
+        this.downstream = Objects.requireNonNull(downstream);
+        this.decoder = new FrameDecoder(subsampling);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.worker = new Thread(this::work, "FrameChangeFilter");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @param changeThreshold fraction of blocks, between 0 and 1, which must change for a frame to be forwarded;
+     *                        0 forwards every frame. Default 0.01, i.e. 3 of the 256 blocks
+     * @return this filter for chaining
+     */
+    public FrameChangeFilter setChangeThreshold(double changeThreshold) {
+        if (changeThreshold < 0 || changeThreshold > 1) throw new IllegalArgumentException("changeThreshold must be between 0 and 1");
+        this.changeThreshold = changeThreshold;
+        return this;
+    }
+
+    /**
+     * @param blockThreshold difference in mean luma, between 0 and 255, above which a block counts as changed;
+     *                       raise it when sensor noise or flickering light trigger forwarding. Default 8
+     * @return this filter for chaining
+     */
+    public FrameChangeFilter setBlockThreshold(int blockThreshold) {
+        if (blockThreshold < 0 || blockThreshold > 255) throw new IllegalArgumentException("blockThreshold must be between 0 and 255");
+        this.blockThreshold = blockThreshold;
+        return this;
+    }
+
+    /**
+     * Forwards a frame after this time even if nothing changed, so consumers can tell a still scene from a dead
+     * stream.
+     *
+     * @param maxIntervalMillis longest time in milliseconds between forwarded frames, 0 for no limit (default)
+     * @return this filter for chaining
+     */
+    public FrameChangeFilter setMaxIntervalMillis(long maxIntervalMillis) {
+        if (maxIntervalMillis < 0) throw new IllegalArgumentException("maxIntervalMillis < 0");
+        this.maxIntervalMillis = maxIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Queues the frame for the worker, dropping the oldest queued frame if the worker fell behind.
+     *
+     * @param frame newly received frame
+     */
+    @Override
+    public void onFrame(Frame frame) {
+        if (!running) return;
+        framesReceived.incrementAndGet();
+        while (!queue.offer(frame)) {
+            if (queue.poll() != null) framesDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Queues the error for the worker, which passes it on to the downstream listener within the poll interval.
+     *
+     * @param e capture failure
+     */
+    @Override
+    public void onError(IOException e) {
+        if (running) pendingErrors.add(e);
+    }
+
+    /**
+     * Takes queued frames and forwards the ones which changed enough until the filter is closed.
+     */
+    private void work() {
+        try {
+            while (running) {
+                forwardErrors();
+                // polled rather than interrupted on close, an interrupt would close the file channels of a recorder
+                Frame frame = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == null || !running) continue;
+                long start = System.nanoTime();
+                boolean forward = isChanged(frame);
+                long elapsed = System.nanoTime() - start;
+                averageFilterNanos = averageFilterNanos == 0 ? elapsed : averageFilterNanos + SMOOTHING * (elapsed - averageFilterNanos);
+
+                if (forward) {
+                    framesForwarded.incrementAndGet();
+                    lastForwardedMillis = frame.getTimestampMillis();
+                    try {
+                        downstream.onFrame(frame);
+                    } catch (RuntimeException e) {
+                        System.err.println("Frame listener FAILED Hit Exception: '" + e + "'");
+                    }
+                } else {
+                    framesSuppressed.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            decoder.close();
+        }
+    }
+
+    /**
+     * Passes the queued capture errors on to the downstream listener.
+     */
+    private void forwardErrors() {
+        IOException e;
+        while (running && (e = pendingErrors.poll()) != null) {
+            try {
+                downstream.onError(e);
+            } catch (RuntimeException listenerError) {
+                System.err.println("Frame listener FAILED Hit Exception: '" + listenerError + "'");
+            }
+        }
+    }
+
+    /**
+     * Scores the frame against the last forwarded one and, when it is forwarded, makes it the new reference.
+     *
+     * @param frame frame taken from the queue
+     * @return true if the frame should be forwarded
+     */
+    private boolean isChanged(Frame frame) {
+        BufferedImage image;
+        try {
+            image = decoder.decode(frame);
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            return true;
+        }
+        computeBlockMeans(image);
+
+        double score = hasReference ? changedFraction() : 1;
+        lastScore = score;
+        long interval = maxIntervalMillis;
+        boolean forward = !hasReference
+                || score >= changeThreshold
+                || (interval > 0 && frame.getTimestampMillis() - lastForwardedMillis >= interval);
+        if (forward) {
+            System.arraycopy(blockMeans, 0, reference, 0, BLOCKS);
+            hasReference = true;
+        }
+        return forward;
+    }
+
+    /**
+     * Converts the image to luma and averages it over the block grid into {@link #blockMeans}. Every row is summed
+     * in runs of contiguous pixels, one run per block column, so the inner loops are plain reductions over an array
+     * range without indirect stores. Sums are kept in luma times 256, the fixed point scale of the BT.601 weights.
+     *
+     * @param image decoded, subsampled frame
+     */
+    private void computeBlockMeans(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width != gridWidth || height != gridHeight) resize(width, height);
+
+        long[] sums = blockSums;
+        Arrays.fill(sums, 0);
+        int[] columnStart = this.columnStart;
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        int type = image.getType();
+        boolean packed = (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_BYTE_GRAY)
+                && buffer instanceof DataBufferByte && image.getRaster().getParent() == null;
+        byte[] pixels = packed ? ((DataBufferByte) buffer).getData() : null;
+        int[] weights = this.weights;
+        int[] luma = this.luma;
+
+        for (int y = 0; y < height; y++) {
+            int blockRow = y * GRID_SIZE / height * GRID_SIZE;
+            if (pixels != null && type == BufferedImage.TYPE_3BYTE_BGR) {
+                // BT.601 weights in 8 bit fixed point, pixels are stored blue, green, red
+                int offset = y * width * 3;
+                for (int bx = 0; bx < GRID_SIZE; bx++) {
+                    int end = columnStart[bx + 1] * 3;
+                    int sum = 0;
+                    for (int p = columnStart[bx] * 3; p < end; p++) {
+                        sum += weights[p] * (pixels[offset + p] & 0xff);
+                    }
+                    sums[blockRow + bx] += sum;
+                }
+            } else if (pixels != null) {
+                int offset = y * width;
+                for (int bx = 0; bx < GRID_SIZE; bx++) {
+                    int end = offset + columnStart[bx + 1];
+                    int sum = 0;
+                    for (int p = offset + columnStart[bx]; p < end; p++) {
+                        sum += pixels[p] & 0xff;
+                    }
+                    sums[blockRow + bx] += (long) sum << 8;
+                }
+            } else {
+                int[] row = this.row;
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x];
+                    luma[x] = 77 * ((rgb >> 16) & 0xff) + 150 * ((rgb >> 8) & 0xff) + 29 * (rgb & 0xff);
+                }
+                for (int bx = 0; bx < GRID_SIZE; bx++) {
+                    int end = columnStart[bx + 1];
+                    int sum = 0;
+                    for (int x = columnStart[bx]; x < end; x++) {
+                        sum += luma[x];
+                    }
+                    sums[blockRow + bx] += sum;
+                }
+            }
+        }
+        for (int b = 0; b < BLOCKS; b++) {
+            blockMeans[b] = blockCounts[b] == 0 ? 0 : (int) (sums[b] / ((long) blockCounts[b] << 8));
+        }
+    }
+
+    /**
+     * @return fraction of blocks whose mean luma differs from the reference by more than the block threshold
+     */
+    private double changedFraction() {
+        int threshold = blockThreshold;
+        int changed = 0;
+        for (int b = 0; b < BLOCKS; b++) {
+            changed += Math.abs(blockMeans[b] - reference[b]) > threshold ? 1 : 0;
+        }
+        return changed / (double) BLOCKS;
+    }
+
+    /**
+     * Sizes the work arrays for a new frame size. The reference is discarded, so the next frame is forwarded.
+     *
+     * @param width  subsampled frame width
+     * @param height subsampled frame height
+     */
+    private void resize(int width, int height) {
+        row = new int[width];
+        luma = new int[width];
+        weights = new int[width * 3];
+        for (int p = 0; p < weights.length; p += 3) {
+            weights[p] = 29;
+            weights[p + 1] = 150;
+            weights[p + 2] = 77;
+        }
+        // block column bx covers the pixels x with x * GRID_SIZE / width == bx
+        for (int bx = 0; bx <= GRID_SIZE; bx++) {
+            columnStart[bx] = (bx * width + GRID_SIZE - 1) / GRID_SIZE;
+        }
+        Arrays.fill(blockCounts, 0);
+        for (int y = 0; y < height; y++) {
+            int blockRow = y * GRID_SIZE / height * GRID_SIZE;
+            for (int bx = 0; bx < GRID_SIZE; bx++) {
+                blockCounts[blockRow + bx] += columnStart[bx + 1] - columnStart[bx];
+            }
+        }
+        gridWidth = width;
+        gridHeight = height;
+        hasReference = false;
+    }
+
+    /**
+     * @return number of frames handed to the filter
+     */
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * @return number of frames passed on to the downstream listener
+     */
+    public long getFramesForwarded() {
+        return framesForwarded.get();
+    }
+
+    /**
+     * @return number of frames dropped because they did not change enough
+     */
+    public long getFramesSuppressed() {
+        return framesSuppressed.get();
+    }
+
+    /**
+     * @return number of frames dropped unscored because the worker fell behind
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * @return number of frames which could not be decoded and were forwarded unfiltered
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return changed block fraction of the most recently scored frame, 1 before the first comparison
+     */
+    public double getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * @return smoothed time in milliseconds to decode and score one frame on the worker thread
+     */
+    public double getAverageFilterMillis() {
+        return averageFilterNanos / 1_000_000.0;
+    }
+
+    /**
+     * Stops the worker after the frame it is working on and waits for it, at most a second, so the downstream
+     * listener is not called after this returns and can be closed next. Queued frames and errors are discarded.
+     * The downstream listener is not closed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        queue.clear();
+        pendingErrors.clear();
+        if (Thread.currentThread() == worker) return;
+        try {
+            worker.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            System.err.println("Frame change filter worker still busy " + CLOSE_TIMEOUT_MILLIS + " ms after close");
+        }
+    }
+}
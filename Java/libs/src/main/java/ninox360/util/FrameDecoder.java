@@ -0,0 +1,220 @@
+package ninox360.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Decodes a continuous series of frames while reusing everything that can be reused: one ImageReader, one input
+ * stream over the encoded bytes, one body buffer and one destination image which is overwritten by every decode.
+ * Optionally frames are decoded at a fraction of their size with source subsampling, which is considerably faster
+ * for thumbnails and live previews than decoding at full size and scaling down.
+ * <pre>
+ *     Usage Example:
+ *     try (FrameDecoder preview = new FrameDecoder(4)) {   // quarter width and height
+ *         while (running) {
+ *             BufferedImage image = api.sendCaptureImageFrame(preview);
+ *             display(image); // overwritten by the next frame, copy it if it has to be kept
+ *         }
+ *     }
+ * </pre>
+ * A decoder is not thread safe, use one per consumer thread.
+ */
+public class FrameDecoder implements Closeable {
+    private final int subsampling;
+    private final ReusableImageInputStream input = new ReusableImageInputStream();
+    private ImageReader reader;
+    private ImageReadParam param;
+    private BufferedImage destination;
+    private ImageTypeSpecifier destinationType;
+    private byte[] body = new byte[64 * 1024];
+
+    /**
+     * Creates a decoder producing full size images.
+     */
+    public FrameDecoder() {
+        this(1);
+    }
+
+    /**
+     * @param subsampling keep every n-th pixel in both directions, 1 for full size, e.g. 4 for a quarter size preview
+     */
+    public FrameDecoder(int subsampling) {
+        if (subsampling < 1) throw new IllegalArgumentException("subsampling < 1");
+        this.subsampling = subsampling;
+    }
+
+    /**
+     * @return the source subsampling factor of this decoder
+     */
+    public int getSubsampling() {
+        return subsampling;
+    }
+
+    /**
+     * Decodes an encoded frame into the reused destination image.
+     *
+     * @param imageBytes encoded frame, from its position to its limit; the buffer itself is not modified
+     * @return the decoded image, valid until the next call of this decoder
+     * @throws IOException if the bytes are not a valid image
+     */
+    public BufferedImage decode(ByteBuffer imageBytes) throws IOException {
+        input.reset(imageBytes);
+        try {
+            if (reader == null) createReader();
+            reader.setInput(input, true, true);
+
+            int width = (reader.getWidth(0) + subsampling - 1) / subsampling;
+            int height = (reader.getHeight(0) + subsampling - 1) / subsampling;
+            // the reader's preferred type, a colour frame may also be decodable into a gray destination
+            ImageTypeSpecifier type = reader.getImageTypes(0).next();
+            if (destination == null || destination.getWidth() != width || destination.getHeight() != height
+                    || !type.equals(destinationType)) {
+                // first frame, new size or the colour layout of the stream changed
+                destinationType = type;
+                destination = type.createBufferedImage(width, height);
+            }
+            param.setDestination(destination);
+            return reader.read(0, param);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Frame decode FAILED Hit Exception: '" + e + "'");
+            throw new MalformedResponseException("The frame is not a valid image", e);
+        }
+    }
+
+    /**
+     * Decodes an encoded frame into the reused destination image.
+     *
+     * @param frame frame received from a {@link FrameStream} or {@link FrameArchive}
+     * @return the decoded image, valid until the next call of this decoder
+     * @throws IOException if the frame is not a valid image
+     */
+    public BufferedImage decode(Frame frame) throws IOException {
+        return decode(frame.bytes());
+    }
+
+    /**
+     * Reads a response body into the reused body buffer and decodes it, no per-frame byte array is allocated.
+     *
+     * @param body          response body stream
+     * @param contentLength size of the body if known, otherwise -1
+     * @return the decoded image, valid until the next call of this decoder
+     * @throws IOException if the body cannot be read or is not a valid image
+     */
+    BufferedImage decode(InputStream body, long contentLength) throws IOException {
+        if (contentLength > this.body.length && contentLength <= Integer.MAX_VALUE) {
+            this.body = new byte[(int) contentLength];
+        }
+        int length = 0;
+        int read;
+        while ((read = body.read(this.body, length, this.body.length - length)) != -1) {
+            length += read;
+            if (length == this.body.length) {
+                int next = body.read();
+                if (next == -1) break;
+                byte[] grown = new byte[this.body.length * 2];
+                System.arraycopy(this.body, 0, grown, 0, length);
+                grown[length++] = (byte) next;
+                this.body = grown;
+            }
+        }
+        if (length == 0) {
+            throw new MalformedResponseException("The response body is empty");
+        }
+        return decode(ByteBuffer.wrap(this.body, 0, length));
+    }
+
+    /**
+     * Finds a reader for the image format of the first frame and prepares its parameters.
+     *
+     * @throws IOException if no reader supports the format
+     */
+    private void createReader() throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        input.seek(0);
+        if (!readers.hasNext()) {
+            throw new IOException("The byte array does not contain a valid image");
+        }
+        reader = readers.next();
+        param = reader.getDefaultReadParam();
+        if (subsampling > 1) param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    }
+
+    /**
+     * Releases the image reader.
+     */
+    @Override
+    public void close() {
+        if (reader != null) reader.dispose();
+        reader = null;
+        destination = null;
+        destinationType = null;
+    }
+
+    /**
+     * Image input stream over a byte buffer which can be pointed at the next frame instead of being recreated.
+     */
+    private static final class ReusableImageInputStream extends ImageInputStreamImpl {
+        private ByteBuffer buffer;
+        private int start;
+        private int end;
+
+        /**
+         * @param source encoded frame, from its position to its limit; a buffer without accessible array, e.g. a
+         *               mapped archive segment, is read through a private view of it
+         */
+        void reset(ByteBuffer source) {
+            buffer = source.hasArray() ? source : source.duplicate();
+            start = source.position();
+            end = source.limit();
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+        }
+
+        @Override
+        public int read() {
+            bitOffset = 0;
+            int index = start + (int) streamPos;
+            if (index >= end) return -1;
+            streamPos++;
+            return buffer.get(index) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            bitOffset = 0;
+            int index = start + (int) streamPos;
+            int available = end - index;
+            if (len == 0) return 0;
+            if (available <= 0) return -1;
+            int count = Math.min(len, available);
+            if (buffer.hasArray()) {
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + index, b, off, count);
+            } else {
+                buffer.limit(end).position(index);
+                buffer.get(b, off, count);
+            }
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return end - start;
+        }
+
+        @Override
+        public void close() {
+            // reused for the next frame, there is nothing to release
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package ninox360.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records encoded frames into a rolling archive of segment files instead of one file per frame.
+ * Frame bytes are appended to a data file through a memory-mapped window of at most 16 MiB, which is moved along as
+ * the file grows, so a finished segment holds only a small mapping until it is collected. Every frame gets a 20 byte entry
+ * (timestamp, offset, length) in the segment's index file. A new segment is started once the current one reaches
+ * its size or time limit, and the oldest segments can be deleted to bound disk use.
+ * Read archives back with {@link FrameArchive}.
+ * <pre>
+ *     Usage Example:
+ *     try (FrameRecorder recorder = new FrameRecorder(Paths.get("session-42"));
+ *          FrameStream stream = api.openFrameStream(3, 2, recorder)) {
+ *         Thread.sleep(60_000);
+ *     }
+ * </pre>
+ * The recorder is a {@link FrameStream.FrameListener}, so it can record a stream directly. Appending is thread safe.
+ */
+public class FrameRecorder implements Closeable, FrameStream.FrameListener {
+    static final String DATA_SUFFIX = ".frames";
+    static final String INDEX_SUFFIX = ".index";
+    static final String SEGMENT_PREFIX = "segment-";
+    static final int INDEX_MAGIC = 0x4E584649; // "NXFI"
+    static final int INDEX_VERSION = 1;
+    static final int INDEX_HEADER_SIZE = 8;
+    static final int INDEX_ENTRY_SIZE = 20;
+    static final long MAP_WINDOW_BYTES = 16L * 1024 * 1024;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    private final Deque<Integer> segments = new ArrayDeque<>();
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile int maxSegments;
+
+    private int segmentNumber;
+    private FileChannel dataChannel;
+    private MappedByteBuffer data;
+    private long windowStart;
+    private FileChannel indexChannel;
+    private long segmentStartMillis;
+    private long lastTimestampMillis = Long.MIN_VALUE;
+    private boolean closed;
+
+    /**
+     * Creates a recorder with 256 MiB segments of at most 10 minutes each.
+     *
+     * @param directory folder holding the archive, created if missing
+     * @throws IOException if the folder cannot be created or read
+     */
+    public FrameRecorder(Path directory) throws IOException {
+        this(directory, 256L * 1024 * 1024, 10 * 60 * 1000L);
+    }
+
+    /**
+     * @param directory        folder holding the archive, created if missing; recording continues after existing segments,
+     *                         and after their last timestamp
+     * @param maxSegmentBytes  size limit of one data file in bytes
+     * @param maxSegmentMillis time span of one segment in milliseconds, 0 for no time limit
+     * @throws IOException if the folder cannot be created or read
+     */
+    public FrameRecorder(Path directory, long maxSegmentBytes, long maxSegmentMillis) throws IOException {
+        if (maxSegmentBytes <= 0 || maxSegmentBytes > Integer.MAX_VALUE) throw new IllegalArgumentException("maxSegmentBytes must be between 1 and 2 GiB");
+        if (maxSegmentMillis < 0) throw new IllegalArgumentException("maxSegmentMillis < 0");
+        this.directory = Objects.requireNonNull(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentMillis = maxSegmentMillis;
+        Files.createDirectories(directory);
+        segments.addAll(listSegments(directory));
+        segmentNumber = segments.isEmpty() ? 0 : segments.peekLast();
+        lastTimestampMillis = lastRecordedTimestamp();
+    }
+
+    /**
+     * Reads the timestamp of the newest frame already in the archive, so appends after a restart keep the
+     * timestamps ordered even if the clock was set back meanwhile.
+     *
+     * @return timestamp of the last complete index entry, Long.MIN_VALUE if the archive holds no frames
+     * @throws IOException if an index cannot be read
+     */
+    private long lastRecordedTimestamp() throws IOException {
+        ByteBuffer timestamp = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.BIG_ENDIAN);
+        for (Iterator<Integer> it = segments.descendingIterator(); it.hasNext(); ) {
+            Path indexFile = directory.resolve(segmentName(it.next()) + INDEX_SUFFIX);
+            try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                long entries = (index.size() - INDEX_HEADER_SIZE) / INDEX_ENTRY_SIZE;
+                if (entries <= 0) continue;
+                long position = INDEX_HEADER_SIZE + (entries - 1) * INDEX_ENTRY_SIZE;
+                timestamp.clear();
+                while (timestamp.hasRemaining()) {
+                    if (index.read(timestamp, position + timestamp.position()) < 0) throw new IOException("Truncated frame index: " + indexFile);
+                }
+                timestamp.flip();
+                return timestamp.getLong();
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Limits the number of segments kept on disk, the oldest segments are deleted when a new one starts.
+     *
+     * @param maxSegments number of segments to keep, 0 to keep all of them
+     * @return this recorder for chaining
+     */
+    public FrameRecorder setMaxSegments(int maxSegments) {
+        if (maxSegments < 0) throw new IllegalArgumentException("maxSegments < 0");
+        this.maxSegments = maxSegments;
+        return this;
+    }
+
+    /**
+     * Appends a frame received from a {@link FrameStream} or capture request.
+     *
+     * @param frame frame to record
+     * @throws IOException if the frame cannot be written
+     */
+    public void append(Frame frame) throws IOException {
+        append(frame.bytes(), frame.getTimestampMillis());
+    }
+
+    /**
+     * Appends encoded frame bytes. Timestamps must not go backwards, an earlier timestamp is stored as the
+     * previous one so the archive stays searchable.
+     *
+     * @param bytes           encoded frame, from its position to its limit; the buffer itself is not modified
+     * @param timestampMillis wall clock time of the frame
+     * @throws IOException if the frame cannot be written
+     */
+    public synchronized void append(ByteBuffer bytes, long timestampMillis) throws IOException {
+        if (closed) throw new IOException("Recorder is closed");
+        ByteBuffer frame = bytes.duplicate();
+        int length = frame.remaining();
+        long timestamp = Math.max(timestampMillis, lastTimestampMillis);
+
+        long written = data == null ? 0 : windowStart + data.position();
+        if (data == null || (written > 0 && written + length > maxSegmentBytes)
+                || (maxSegmentMillis > 0 && timestamp - segmentStartMillis >= maxSegmentMillis)) {
+            startSegment(timestamp, length);
+            written = 0;
+        } else if (data.remaining() < length) {
+            mapWindow(written, length);
+        }
+
+        long offset = written;
+        data.put(frame);
+
+        indexEntry.clear();
+        indexEntry.putLong(timestamp).putLong(offset).putInt(length).flip();
+        while (indexEntry.hasRemaining()) {
+            indexChannel.write(indexEntry);
+        }
+
+        lastTimestampMillis = timestamp;
+        framesWritten.incrementAndGet();
+        bytesWritten.addAndGet(length);
+    }
+
+    /**
+     * Records a frame delivered by a stream, failures are counted instead of being thrown.
+     *
+     * @param frame newly received frame
+     */
+    @Override
+    public void onFrame(Frame frame) {
+        try {
+            append(frame);
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            System.err.println("Failed to record frame " + frame.getSequence() + " Hit Exception: '" + e + "'");
+        }
+    }
+
+    /**
+     * Finishes the current segment and opens the next one.
+     *
+     * @param timestamp   timestamp of the first frame in the new segment
+     * @param firstLength size of the first frame, a larger frame gets a segment of its own size
+     * @throws IOException if the segment files cannot be created
+     */
+    private void startSegment(long timestamp, int firstLength) throws IOException {
+        finishSegment();
+        segmentNumber++;
+        Path dataFile = directory.resolve(segmentName(segmentNumber) + DATA_SUFFIX);
+        Path indexFile = directory.resolve(segmentName(segmentNumber) + INDEX_SUFFIX);
+
+        dataChannel = FileChannel.open(dataFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapWindow(0, firstLength);
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE).putInt(INDEX_MAGIC).putInt(INDEX_VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            indexChannel.write(header);
+        }
+        segmentStartMillis = timestamp;
+
+        segments.addLast(segmentNumber);
+        deleteOldSegments();
+    }
+
+    /**
+     * Maps the next window of the current data file, growing the file. The previous window is flushed first.
+     *
+     * @param start     offset in the data file at which the window starts, the bytes written so far
+     * @param minLength the window holds at least this many bytes
+     * @throws IOException if the file cannot be mapped
+     */
+    private void mapWindow(long start, int minLength) throws IOException {
+        if (data != null) data.force();
+        long size = Math.max(Math.min(MAP_WINDOW_BYTES, maxSegmentBytes - start), minLength);
+        data = dataChannel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        windowStart = start;
+    }
+
+    /**
+     * Flushes the current segment and trims its data file to the bytes actually written.
+     *
+     * @throws IOException if the segment cannot be flushed
+     */
+    private void finishSegment() throws IOException {
+        if (data == null) return;
+        data.force();
+        indexChannel.force(false);
+        long written = windowStart + data.position();
+        try {
+            dataChannel.truncate(written);
+        } catch (IOException e) {
+            // Windows refuses to shrink a file while it is mapped; the index still marks the valid region
+            System.err.println("Failed to trim " + segmentName(segmentNumber) + DATA_SUFFIX + " to " + written
+                    + " bytes Hit Exception: '" + e + "'");
+        }
+        dataChannel.close();
+        indexChannel.close();
+        data = null;
+        dataChannel = null;
+        indexChannel = null;
+    }
+
+    /**
+     * Deletes the oldest finished segments beyond the configured limit.
+     *
+     * @throws IOException if a segment cannot be deleted
+     */
+    private void deleteOldSegments() throws IOException {
+        int limit = maxSegments;
+        while (limit > 0 && segments.size() > limit) {
+            int oldest = segments.removeFirst();
+            Files.deleteIfExists(directory.resolve(segmentName(oldest) + INDEX_SUFFIX));
+            Files.deleteIfExists(directory.resolve(segmentName(oldest) + DATA_SUFFIX));
+        }
+    }
+
+    /**
+     * Flushes written frames to disk without closing the segment.
+     *
+     * @throws IOException if the segment cannot be flushed
+     */
+    public synchronized void flush() throws IOException {
+        if (data == null) return;
+        data.force();
+        indexChannel.force(false);
+    }
+
+    /**
+     * @return number of frames recorded
+     */
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /**
+     * @return number of frame bytes recorded
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return number of stream frames which could not be recorded
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return folder holding the archive
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Finishes the current segment, further appends fail.
+     *
+     * @throws IOException if the segment cannot be flushed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        finishSegment();
+    }
+
+    /**
+     * @param number segment number
+     * @return file name of the segment without suffix
+     */
+    static String segmentName(int number) {
+        return String.format("%s%08d", SEGMENT_PREFIX, number);
+    }
+
+    /**
+     * @param directory folder holding an archive
+     * @return numbers of the segments which have an index file, in ascending order
+     * @throws IOException if the folder cannot be read
+     */
+    static List<Integer> listSegments(Path directory) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + INDEX_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - INDEX_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
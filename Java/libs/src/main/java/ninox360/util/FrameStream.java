@@ -0,0 +1,387 @@
+package ninox360.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Continuous CAPTURE_VIDEO_FRAME stream which keeps several capture requests in flight, so a new frame is
+ * already on the way while the previous one is being received and processed.
+ * Frames are handed over in encoded form, decoding happens only when the consumer asks for pixels.
+ * Frames are delivered either through a bounded queue or, when one is given, only to a listener, which is called
+ * on a delivery thread of the stream for one frame at a time in sequence order. Both modes hand frames over through
+ * the same bounded queue: when the consumer or the listener falls behind the oldest queued frame is dropped instead
+ * of stalling the pipeline, and frames arriving out of order (older than one already delivered) are discarded.
+ * <pre>
+ *     Usage Example:
+ *     try (FrameStream stream = api.openFrameStream(3, 2)) {
+ *         while (running) {
+ *             Frame frame = stream.take();
+ *             display(frame.getImage());
+ *         }
+ *         System.out.println(stream.getFramesPerSecond() + " fps, " + stream.getAverageLatencyMillis() + " ms");
+ *     }
+ * </pre>
+ */
+public class FrameStream implements Closeable {
+    /**
+     * The stream stops itself after this many capture failures in a row.
+     */
+    static final int MAX_CONSECUTIVE_ERRORS = 10;
+    /**
+     * Delay before re-requesting after the first failure in a row, doubled with every further failure.
+     */
+    static final long ERROR_BACKOFF_MILLIS = 50;
+    static final long MAX_ERROR_BACKOFF_MILLIS = 1_000;
+    private static final long TAKE_POLL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000;
+    private static final double SMOOTHING = 0.1;
+
+    /**
+     * Receives frames and failures on the stream's delivery thread, one call at a time and frames in sequence
+     * order. Capturing goes on while the listener works; frames which arrive while the queue is full replace the
+     * oldest waiting frame.
+     */
+    public interface FrameListener {
+        /**
+         * @param frame newly received frame
+         */
+        void onFrame(Frame frame);
+
+        /**
+         * @param e capture failure, the stream keeps running until too many failures occur in a row
+         */
+        default void onError(IOException e) {
+        }
+    }
+
+    private final Supplier<CompletableFuture<ByteBuffer>> capture;
+    private final int prefetch;
+    private final ArrayBlockingQueue<Frame> queue;
+    private final FrameListener listener;
+    private final ConcurrentLinkedQueue<IOException> pendingErrors = new ConcurrentLinkedQueue<>();
+    private final Thread deliverer;
+    private final Set<CompletableFuture<ByteBuffer>> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong consecutiveErrors = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean delivering;
+    private long lastDeliveredSequence = -1;
+    private long lastDeliveredNanos;
+    private double averageIntervalNanos;
+    private double averageLatencyNanos;
+    private long lastLatencyNanos;
+
+    /**
+     * @param capture       issues one asynchronous capture request
+     * @param prefetch      number of capture requests kept in flight
+     * @param queueCapacity number of frames buffered for the consumer or waiting for the listener
+     * @param listener      optional callback for every delivered frame instead of {@link #take()}, may be null
+     */
+    FrameStream(Supplier<CompletableFuture<ByteBuffer>> capture, int prefetch, int queueCapacity, FrameListener listener) {
+        if (prefetch < 1) throw new IllegalArgumentException("prefetch < 1");
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity < 1");
+        this.capture = capture;
+        this.prefetch = prefetch;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.listener = listener;
+        if (listener != null) {
+            this.deliverer = new Thread(this::deliver, "FrameStream");
+            this.deliverer.setDaemon(true);
+        } else {
+            this.deliverer = null;
+        }
+    }
+
+    /**
+     * Issues the initial batch of capture requests.
+     */
+    void start() {
+        running = true;
+        if (deliverer != null) {
+            delivering = true;
+            deliverer.start();
+        }
+        for (int i = 0; i < prefetch; i++) {
+            requestFrame();
+        }
+    }
+
+    /**
+     * Issues a single capture request and re-issues another one when it completes.
+     */
+    private void requestFrame() {
+        if (!running) return;
+
+        long sequence = nextSequence.getAndIncrement();
+        long requestedAt = System.nanoTime();
+        CompletableFuture<ByteBuffer> future = capture.get();
+        inFlight.add(future);
+        if (!running) {
+            // closed while the request was being issued, close() may already have walked the in-flight set
+            inFlight.remove(future);
+            future.cancel(true);
+            return;
+        }
+        future.whenComplete((bytes, error) -> {
+            inFlight.remove(future);
+            if (error != null) {
+                long failures = onCaptureFailed(error);
+                scheduleRetry(failures);
+            } else {
+                consecutiveErrors.set(0);
+                onFrameReceived(new Frame(sequence, bytes, System.currentTimeMillis(), System.nanoTime() - requestedAt));
+                requestFrame();
+            }
+        });
+    }
+
+    /**
+     * Re-requests a frame after a failure with an exponential backoff, so a short outage does not use up
+     * {@link #MAX_CONSECUTIVE_ERRORS} within milliseconds.
+     *
+     * @param failures number of failures in a row
+     */
+    private void scheduleRetry(long failures) {
+        if (!running) return;
+        long delay = Math.min(MAX_ERROR_BACKOFF_MILLIS, ERROR_BACKOFF_MILLIS << Math.min(failures - 1, 20));
+        CommandRunner.retryScheduler().schedule(this::requestFrame, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the frame timings and queues the frame for the consumer or the delivery thread. Ordering is checked
+     * under the stream's lock, so the queue never holds an older frame after a newer one.
+     *
+     * @param frame received frame
+     */
+    private void onFrameReceived(Frame frame) {
+        if (!running) return;
+        framesReceived.incrementAndGet();
+
+        long latencyNanos = frame.getLatencyNanos();
+        synchronized (this) {
+            if (frame.getSequence() < lastDeliveredSequence) {
+                // a newer frame has already been delivered, an older one is of no use to a live view
+                framesDropped.incrementAndGet();
+                return;
+            }
+            long now = System.nanoTime();
+            if (lastDeliveredSequence >= 0) {
+                long interval = now - lastDeliveredNanos;
+                averageIntervalNanos = averageIntervalNanos == 0 ? interval : averageIntervalNanos + SMOOTHING * (interval - averageIntervalNanos);
+            }
+            averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos : averageLatencyNanos + SMOOTHING * (latencyNanos - averageLatencyNanos);
+            lastLatencyNanos = latencyNanos;
+            lastDeliveredNanos = now;
+            lastDeliveredSequence = frame.getSequence();
+
+            // drop the oldest frame rather than stall the capture pipeline
+            while (!queue.offer(frame)) {
+                if (queue.poll() != null) framesDropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Counts the failure and stops the stream once the device appears unreachable.
+     *
+     * @param error failure reported by the capture request
+     * @return number of failures in a row, including this one
+     */
+    private long onCaptureFailed(Throwable error) {
+        if (!running) return 0;
+        errors.incrementAndGet();
+        long failures = consecutiveErrors.incrementAndGet();
+        if (failures >= MAX_CONSECUTIVE_ERRORS) {
+            System.err.println("Frame stream stopped after " + MAX_CONSECUTIVE_ERRORS + " consecutive capture failures");
+            running = false;
+        }
+        if (listener != null) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            pendingErrors.add(cause instanceof IOException ? (IOException) cause : new IOException(cause));
+        }
+        return failures;
+    }
+
+    /**
+     * Passes queued frames and errors to the listener until the stream is closed, or until it has stopped after
+     * repeated capture failures and nothing is left to deliver.
+     */
+    private void deliver() {
+        try {
+            while (delivering) {
+                IOException e;
+                while (delivering && (e = pendingErrors.poll()) != null) {
+                    try {
+                        listener.onError(e);
+                    } catch (RuntimeException listenerError) {
+                        System.err.println("Frame listener FAILED Hit Exception: '" + listenerError + "'");
+                    }
+                }
+                // polled rather than interrupted on close, an interrupt would close the file channels of a recorder
+                Frame frame = queue.poll(TAKE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    if (!running && pendingErrors.isEmpty() && queue.isEmpty()) break;
+                    continue;
+                }
+                if (!delivering) break;
+                try {
+                    listener.onFrame(frame);
+                } catch (RuntimeException listenerError) {
+                    System.err.println("Frame listener FAILED Hit Exception: '" + listenerError + "'");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the next frame. Once the stream is closed or stopped after repeated capture failures the frames
+     * still queued are returned, then the stream is reported as stopped instead of waiting forever.
+     *
+     * @return the oldest queued frame
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the stream has stopped and no frames are left, or frames go to a listener
+     */
+    public Frame take() throws InterruptedException {
+        checkQueueMode();
+        while (true) {
+            Frame frame = queue.poll(TAKE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (frame != null) return frame;
+            if (!running) {
+                // a frame may have been queued just before the stream stopped
+                frame = queue.poll();
+                if (frame != null) return frame;
+                throw new IllegalStateException("Frame stream stopped");
+            }
+        }
+    }
+
+    /**
+     * Waits up to the given time for the next frame.
+     *
+     * @param timeout how long to wait
+     * @param unit    unit of the timeout
+     * @return the oldest queued frame, or null if none arrived in time
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if frames go to a listener
+     */
+    public Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        checkQueueMode();
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Discards all queued frames except the newest, useful for displays which only care about the live image.
+     *
+     * @return the newest queued frame, or null if the queue is empty
+     * @throws IllegalStateException if frames go to a listener
+     */
+    public Frame latest() {
+        checkQueueMode();
+        Frame newest = null;
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            if (newest != null) framesDropped.incrementAndGet();
+            newest = frame;
+        }
+        return newest;
+    }
+
+    /**
+     * The queue belongs to the delivery thread when there is a listener, reading it here would steal frames.
+     */
+    private void checkQueueMode() {
+        if (listener != null) throw new IllegalStateException("Frames are delivered to the listener");
+    }
+
+    /**
+     * @return true until the stream is closed or stopped after repeated capture failures
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return number of frames received from the device
+     */
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * @return number of frames discarded because the consumer or the listener fell behind or they arrived out of
+     * order
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * @return number of failed capture requests
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return recent delivered frame rate, smoothed over the last frames
+     */
+    public synchronized double getFramesPerSecond() {
+        return averageIntervalNanos == 0 ? 0 : 1_000_000_000.0 / averageIntervalNanos;
+    }
+
+    /**
+     * @return smoothed time in milliseconds from capture request to frame received
+     */
+    public synchronized double getAverageLatencyMillis() {
+        return averageLatencyNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return latency in milliseconds of the most recently delivered frame
+     */
+    public synchronized double getLastLatencyMillis() {
+        return lastLatencyNanos / 1_000_000.0;
+    }
+
+    /**
+     * Stops issuing capture requests and cancels the ones in flight. Queued frames can still be read.
+     * With a listener, the frames and errors still waiting for it are discarded and the delivery thread is waited
+     * for, at most a second, so the listener is not called after this returns and can be closed next.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (CompletableFuture<ByteBuffer> future : inFlight) {
+            future.cancel(true);
+        }
+        if (deliverer == null) return;
+        delivering = false;
+        queue.clear();
+        pendingErrors.clear();
+        if (Thread.currentThread() == deliverer || !deliverer.isAlive()) return;
+        try {
+            deliverer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (deliverer.isAlive()) {
+            System.err.println("Frame stream delivery thread still busy " + CLOSE_TIMEOUT_MILLIS + " ms after close");
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package ninox360.util;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Tunable settings for the long-lived HTTPS client owned by each {@link RemoteAPI} instance.
+ * <pre>
+ *     Usage Example:
+ *     HttpClientConfig config = new HttpClientConfig()
+ *             .setMaxIdleConnections(2)
+ *             .setReadTimeoutMillis(2_000);
+ *
+ *     RemoteAPI api = new RemoteAPI(config);
+ * </pre>
+ */
+public class HttpClientConfig {
+    private int maxIdleConnections = 5;
+    private long keepAliveMillis = 5 * 60 * 1000L;
+    private long connectTimeoutMillis = 10_000L;
+    private long readTimeoutMillis = 10_000L;
+    private long writeTimeoutMillis = 10_000L;
+    private int tlsSessionCacheSize = 32;
+    private int tlsSessionTimeoutSeconds = 24 * 60 * 60;
+    private ExecutorService executorService;
+    private int maxRequests = 64;
+    private int maxRequestsPerHost = 16;
+    private boolean http2Enabled = true;
+
+    /**
+     * @return number of idle keep-alive connections held open per client
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Sets how many idle keep-alive connections the pool may hold open.
+     *
+     * @param maxIdleConnections idle connection limit, must not be negative
+     * @return this config for chaining
+     */
+    public HttpClientConfig setMaxIdleConnections(int maxIdleConnections) {
+        if (maxIdleConnections < 0) throw new IllegalArgumentException("maxIdleConnections < 0");
+        this.maxIdleConnections = maxIdleConnections;
+        return this;
+    }
+
+    /**
+     * @return time in milliseconds an idle connection is kept alive before eviction
+     */
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * Sets how long an idle connection is kept alive before it is evicted from the pool.
+     *
+     * @param keepAliveMillis keep-alive duration in milliseconds, must be positive
+     * @return this config for chaining
+     */
+    public HttpClientConfig setKeepAliveMillis(long keepAliveMillis) {
+        if (keepAliveMillis <= 0) throw new IllegalArgumentException("keepAliveMillis <= 0");
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    /**
+     * @return TCP + TLS connect timeout in milliseconds, 0 means no timeout
+     */
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * @param connectTimeoutMillis TCP + TLS connect timeout in milliseconds, 0 means no timeout
+     * @return this config for chaining
+     */
+    public HttpClientConfig setConnectTimeoutMillis(long connectTimeoutMillis) {
+        if (connectTimeoutMillis < 0) throw new IllegalArgumentException("connectTimeoutMillis < 0");
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return socket read timeout in milliseconds, 0 means no timeout
+     */
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * @param readTimeoutMillis socket read timeout in milliseconds, 0 means no timeout
+     * @return this config for chaining
+     */
+    public HttpClientConfig setReadTimeoutMillis(long readTimeoutMillis) {
+        if (readTimeoutMillis < 0) throw new IllegalArgumentException("readTimeoutMillis < 0");
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return socket write timeout in milliseconds, 0 means no timeout
+     */
+    public long getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+
+    /**
+     * @param writeTimeoutMillis socket write timeout in milliseconds, 0 means no timeout
+     * @return this config for chaining
+     */
+    public HttpClientConfig setWriteTimeoutMillis(long writeTimeoutMillis) {
+        if (writeTimeoutMillis < 0) throw new IllegalArgumentException("writeTimeoutMillis < 0");
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return number of TLS sessions cached for abbreviated (resumed) handshakes, 0 means unlimited
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * @param tlsSessionCacheSize number of TLS sessions cached for resumption, 0 means unlimited
+     * @return this config for chaining
+     */
+    public HttpClientConfig setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        if (tlsSessionCacheSize < 0) throw new IllegalArgumentException("tlsSessionCacheSize < 0");
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+        return this;
+    }
+
+    /**
+     * @return lifetime in seconds of a cached TLS session, 0 means no limit
+     */
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    /**
+     * @param tlsSessionTimeoutSeconds lifetime in seconds of a cached TLS session, 0 means no limit
+     * @return this config for chaining
+     */
+    public HttpClientConfig setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+        if (tlsSessionTimeoutSeconds < 0) throw new IllegalArgumentException("tlsSessionTimeoutSeconds < 0");
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+        return this;
+    }
+
+    /**
+     * @return executor which runs asynchronous commands, null when the client's default pool is used
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Sets the executor which runs asynchronous commands and their completion callbacks.
+     * On JDK 21+ virtual threads can be used: {@code setExecutorService(Executors.newVirtualThreadPerTaskExecutor())}.
+     * The caller owns the executor and remains responsible for shutting it down.
+     *
+     * @param executorService executor for asynchronous calls, null to use the client's default pool
+     * @return this config for chaining
+     */
+    public HttpClientConfig setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    /**
+     * @return maximum number of asynchronous commands in flight across all devices
+     */
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @param maxRequests maximum number of asynchronous commands in flight, further commands are queued
+     * @return this config for chaining
+     */
+    public HttpClientConfig setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) throw new IllegalArgumentException("maxRequests < 1");
+        this.maxRequests = maxRequests;
+        return this;
+    }
+
+    /**
+     * @return maximum number of asynchronous commands in flight to a single device
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * @param maxRequestsPerHost maximum number of asynchronous commands in flight to one device, further commands are queued
+     * @return this config for chaining
+     */
+    public HttpClientConfig setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) throw new IllegalArgumentException("maxRequestsPerHost < 1");
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        return this;
+    }
+
+    /**
+     * @return true when HTTP/2 is offered to the device during the TLS handshake
+     */
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * Sets whether HTTP/2 is offered to the device through ALPN. Devices which do not support it keep using
+     * HTTP/1.1 over the same port. With HTTP/2 all concurrent commands share a single TLS connection.
+     *
+     * @param http2Enabled false to always use HTTP/1.1
+     * @return this config for chaining
+     */
+    public HttpClientConfig setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+        return this;
+    }
+}
@@ -1,33 +1,162 @@
 package ninox360.util;
 
 import okhttp3.*;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
 
 import javax.imageio.ImageIO;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles HTTPS setup, Packet Construction, Server interaction, Serialization, Deserialization,
  * Image requests, and Error Handling.
+ * The device address is held per instance and every outbound packet carries its own endpoint,
+ * so separate instances can drive separate devices from separate threads.
  */
 public class HttpCommunicationUtil {
-    static String ipAddressOut;
-    static String ipBase = "https://localhost:3003";
+    static final String REGISTER_COMMAND = "REGISTER";
+    static final String UNKNOWN_COMMAND = "UNKNOWN";
+    static final String CAPTURE_COMMAND = "CAPTURE_VIDEO_FRAME";
+    static final String FILE_COMMAND = "GET_FILE";
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private volatile String ipBase = "https://localhost:3003";
+    private final HttpClientConfig config;
+    private final ConnectionStats connectionStats = new ConnectionStats();
+    private final CommandMetrics commandMetrics = new CommandMetrics();
+    private final List<CommandListener> commandListeners = new CopyOnWriteArrayList<>();
+    private volatile OkHttpClient client;
 
     /**
-     * Constructs a Nested Map representing a YAML packet and sets the routing address. Calls the serializer.
+     * Creates the communication utility with the default client settings.
+     */
+    public HttpCommunicationUtil() {
+        this(new HttpClientConfig());
+    }
+
+    /**
+     * Creates the communication utility, the underlying client is built once on first use and shared by all requests.
+     *
+     * @param config connection pool, timeout and TLS session settings
+     */
+    public HttpCommunicationUtil(HttpClientConfig config) {
+        this.config = Objects.requireNonNull(config);
+        this.commandListeners.add(commandMetrics);
+    }
+
+    /**
+     * @return connection usage counters for this client
+     */
+    public ConnectionStats getConnectionStats() {
+        return connectionStats;
+    }
+
+    /**
+     * @return per-command latency, error and byte counters, recorded for every request of this instance
+     */
+    public CommandMetrics getCommandMetrics() {
+        return commandMetrics;
+    }
+
+    /**
+     * Registers a listener which receives an event for every completed request.
+     *
+     * @param listener callback, invoked on the thread completing the request
+     */
+    public void addCommandListener(CommandListener listener) {
+        commandListeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * @param listener previously registered callback
+     */
+    public void removeCommandListener(CommandListener listener) {
+        commandListeners.remove(listener);
+    }
+
+    /**
+     * Reports a completed request to every registered listener, a failing listener does not affect the others.
+     *
+     * @param timings timings collected for the call
+     * @param failure error of the call, null on success
+     */
+    private void recordCommand(CallTimings timings, Exception failure) {
+        CommandEvent event = timings.complete(failure);
+        for (CommandListener listener : commandListeners) {
+            try {
+                listener.onCommandComplete(event);
+            } catch (RuntimeException e) {
+                System.err.println("Command listener failed Hit Exception: '" + e + "'");
+            }
+        }
+    }
+
+    /**
+     * @return base address of the device this instance talks to
+     */
+    public String getIpBase() {
+        return ipBase;
+    }
+
+    /**
+     * Sets the base address of the device, requests constructed afterwards are routed to it.
+     *
+     * @param ipBase address representing the scanner server, e.g. "https://192.168.1.20:3003"
+     */
+    public void setIpBase(String ipBase) {
+        this.ipBase = Objects.requireNonNull(ipBase);
+    }
+
+    /**
+     * Constructs an outbound request, pairing the serialized packet with the endpoint of this instance's device.
+     *
+     * @param serverSecret key which is provided by the remote control application on SI
+     * @param clientSecret client secret given by the server, empty when registering
+     * @param version      packet version
+     * @param command      action which we are issuing
+     * @param text         additional parameters for a command
+     * @return immutable request ready to be sent
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public RemoteRequest constructRequest(String serverSecret, String clientSecret, int version, String command, String text) throws IOException {
+        String packet = constructPacket(serverSecret, clientSecret, version, command, text);
+        if (clientSecret.isEmpty()) {
+            return new RemoteRequest(REGISTER_COMMAND, ipBase + "/register", packet);
+        }
+        return new RemoteRequest(command, ipBase + "/command", packet);
+    }
+
+    /**
+     * Constructs a serialized YAML packet with {@link PacketCodec}.
+     * The routing address is not part of the packet, see {@link #constructRequest}.
      *
      * @param serverSecret key which is provided by the remote control application on SI
      * @param clientSecret client secret given by the server
@@ -38,76 +167,194 @@ public class HttpCommunicationUtil {
      * @throws IOException indicated an issue, printing the function specific message and exception details.
      */
     public static String constructPacket(String serverSecret, String clientSecret, int version, String command, String text) throws IOException {
-        Map<String, Object> packetName = new HashMap<>();
-        Map<String, Object> innerPacket = new HashMap<>();
-
         try {
             if (clientSecret.isEmpty()) { //assume we are registering the device
-                innerPacket.put("scanner_secret", serverSecret);
-                innerPacket.put("version", version);
-
-                packetName.put("PacketRemoteRegister", innerPacket);
-
-                ipAddressOut = ipBase + "/register";
-            } else {
-                innerPacket.put("secret", clientSecret);
-                innerPacket.put("value", text);
-                innerPacket.put("command", command);
-
-                packetName.put("PacketRemoteCommand", innerPacket);
-
-                ipAddressOut = ipBase + "/command";
+                return PacketCodec.encodeRegister(serverSecret, version);
             }
-
-            return serializeYaml(packetName);
+            return PacketCodec.encodeCommand(clientSecret, command, text);
         } catch (Exception e) {
            throw handleError(e, "Failed to create outbound packet prior to serialization");
         }
     }
 
     /**
-     * Serialize/Format the yaml map into a string
+     * Reads a response body after it has been received, used by both the blocking and asynchronous paths.
      *
-     * @param yamlPacket Nested Map which will be serialized
-     * @return Formatted String
-     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     * @param <T> decoded result type
      */
-    private static String serializeYaml(Map<String, Object> yamlPacket) throws IOException {
-        try {
-            DumperOptions options = new DumperOptions();
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
 
-            options.setIndent(2);
-            options.setPrettyFlow(true);
-            options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+    /**
+     * Helper function to simplify request creation. The request is tagged with its timings so the
+     * event listener can fill them in.
+     *
+     * @param request packet and endpoint which are being sent out
+     * @param timings timings of this call
+     * @return Request builder ready to be built and executed
+     */
+    private static Request.Builder newRequest(RemoteRequest request, CallTimings timings) {
+        RequestBody body = RequestBody.create(request.getPacket(), MediaType.parse("application/x-yaml"));
+
+        Request.Builder builder = new Request.Builder().url(request.getUrl()).post(body).tag(CallTimings.class, timings);
+        if (CAPTURE_COMMAND.equals(request.getCommand()) || FILE_COMMAND.equals(request.getCommand())) {
+            // JPEG frames do not shrink, spare the device compressing them; file bodies must stay uncompressed so Range
+            // offsets count file bytes. Other responses are gzipped transparently
+            builder.header("Accept-Encoding", "identity");
+        }
+        return builder;
+    }
 
-            Yaml yaml = new Yaml(options);
+    /**
+     * Creates the call for a request, applying the per-call timeout when one is set.
+     *
+     * @param request       which is being sent out
+     * @param timeoutMillis limit for the whole call, 0 for the client's default timeouts only
+     * @return the call, not yet executed
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private Call newCall(Request request, long timeoutMillis) throws IOException {
+        Call call = getClient().newCall(request);
+        if (timeoutMillis > 0) call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        return call;
+    }
 
-            return yaml.dump(yamlPacket);
+    /**
+     * Executes an already built request, blocking until the response headers arrive.
+     *
+     * @param request       which is being sent out
+     * @param timeoutMillis limit for the whole call, 0 for the client's default timeouts only
+     * @return Response from the server
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private Response executeRequest(Request request, long timeoutMillis) throws IOException {
+        try {
+            return newCall(request, timeoutMillis).execute();
+        } catch (IOException e) {
+            throw handleTransportError(e, "Error encountered during request execution");
         } catch (Exception e) {
-            throw handleError(e, "Failed to serialize yaml packet");
+            throw handleError(e, "Error encountered during request execution");
         }
     }
 
     /**
-     * Helper function to simplify request creation and execution
+     * Sends the request, processes the response with the handler and reports the command to the listeners.
      *
-     * @param packet which is being sent out
-     * @param url    endpoint which the packet is being sent to
-     * @return Response from the server
+     * @param request  packet and endpoint which are being sent out
+     * @param handler  reads the response body
+     * @param errorMsg message used when the request or response fails
+     * @param <T>      decoded result type
+     * @return the decoded response
      * @throws IOException indicated an issue, printing the function specific message and exception details.
      */
-    private Response executeRequest(String packet, String url) throws IOException {
-        OkHttpClient client = setupOkHttpClient();
+    private <T> T execute(RemoteRequest request, ResponseHandler<T> handler, String errorMsg) throws IOException {
+        CallTimings timings = new CallTimings(request.getCommand());
+        return execute(newRequest(request, timings).build(), request.getTimeoutMillis(), timings, handler, errorMsg);
+    }
 
+    /**
+     * Sends a prepared request, processes the response with the handler and reports the command to the listeners.
+     *
+     * @param httpRequest   request tagged with the timings
+     * @param timeoutMillis limit for the whole call, 0 for the client's default timeouts only
+     * @param timings       timings of this call
+     * @param handler       reads the response body
+     * @param errorMsg      message used when the request or response fails
+     * @param <T>           decoded result type
+     * @return the decoded response
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private <T> T execute(Request httpRequest, long timeoutMillis, CallTimings timings, ResponseHandler<T> handler, String errorMsg) throws IOException {
+        IOException failure = null;
+        // Execute the request and get the response
+        try (Response response = executeRequest(httpRequest, timeoutMillis)) {
+            Objects.requireNonNull(response);
+            return handler.handle(response);
+        } catch (Exception e) {
+            failure = handleFailure(e, errorMsg);
+            throw failure;
+        } finally {
+            recordCommand(timings, failure);
+        }
+    }
+
+    /**
+     * Enqueues the request without blocking the caller. Cancelling the returned future cancels the call.
+     *
+     * @param request  packet and endpoint which are being sent out
+     * @param handler  reads the response body on the dispatcher thread
+     * @param errorMsg message used when the response cannot be processed
+     * @param <T>      decoded result type
+     * @return future completed with the decoded response, or exceptionally with an IOException
+     */
+    private <T> CompletableFuture<T> executeAsync(RemoteRequest request, ResponseHandler<T> handler, String errorMsg) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CallTimings timings = new CallTimings(request.getCommand());
         try {
-            RequestBody body = RequestBody.create(packet, MediaType.parse("application/x-yaml"));
+            Call call = newCall(newRequest(request, timings).build(), request.getTimeoutMillis());
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) call.cancel();
+            });
 
-            Request request = new Request.Builder().url(url).post(body).build();
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    if (future.isDone()) return;
+                    IOException failure = handleTransportError(e, "Error encountered during request execution");
+                    recordCommand(timings, failure);
+                    future.completeExceptionally(failure);
+                }
 
-            return client.newCall(request).execute();
+                @Override
+                public void onResponse(Call call, Response response) {
+                    T result = null;
+                    IOException failure = null;
+                    try (Response r = response) {
+                        result = handler.handle(r);
+                    } catch (Exception e) {
+                        failure = handleFailure(e, errorMsg);
+                    }
+                    recordCommand(timings, failure);
+                    if (failure != null) {
+                        future.completeExceptionally(failure);
+                    } else {
+                        future.complete(result);
+                    }
+                }
+            });
         } catch (Exception e) {
-            throw handleError(e, "Error encountered during request execution");
+            future.completeExceptionally(e instanceof IOException ? e : handleError(e, "Error encountered during request execution"));
         }
+        return future;
+    }
+
+    /**
+     * Opens a connection to the device ahead of the first command: the client is created, the TLS handshake is done
+     * and the connection is returned to the pool. A HEAD request to the base address is used, its status is ignored.
+     *
+     * @return future completed once the connection is pooled, or exceptionally with an IOException
+     */
+    public CompletableFuture<Void> warmConnection() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            newCall(new Request.Builder().url(ipBase + "/").head().build(), 0).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    future.completeExceptionally(handleError(e, "Failed to open a connection to " + call.request().url()));
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    future.complete(null);
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(e instanceof IOException ? e : handleError(e, "Failed to open a connection"));
+        }
+        return future;
     }
 
     /**
@@ -119,16 +366,39 @@ public class HttpCommunicationUtil {
      * @throws IOException indicated an issue, printing the function specific message and exception details.
      */
     public Map<String, Object> sendPacketAndDeserializeYaml(String packet, String url) throws IOException {
-        // Execute the request and get the response
-        try (Response response = executeRequest(packet, url)) {
-            Objects.requireNonNull(response);
-            if (!response.isSuccessful()) handleRejectedRequest(response);
+        return sendPacketAndDeserializeYaml(new RemoteRequest(UNKNOWN_COMMAND, url, packet));
+    }
 
-            Objects.requireNonNull(response.body());
-            return deserializeYamlPacket(response.body().string());
-        } catch (Exception e) {
-            throw handleError(e, "Failed to process command request");
-        }
+    /**
+     * Asynchronous counterpart of {@link #sendPacketAndDeserializeYaml(String, String)}, the calling thread is not blocked.
+     *
+     * @param packet Serialized YAML packet which is being sent out.
+     * @param url    URL endpoint.
+     * @return future completed with the response packet contents, or exceptionally with an IOException
+     */
+    public CompletableFuture<Map<String, Object>> sendPacketAndDeserializeYamlAsync(String packet, String url) {
+        return sendPacketAndDeserializeYamlAsync(new RemoteRequest(UNKNOWN_COMMAND, url, packet));
+    }
+
+    /**
+     * Sends a constructed request, manages the Yaml response
+     *
+     * @param request packet and endpoint which are being sent out
+     * @return Response Packet of the response contents for easy processing
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public Map<String, Object> sendPacketAndDeserializeYaml(RemoteRequest request) throws IOException {
+        return execute(request, HttpCommunicationUtil::readYamlResponse, "Failed to process command request");
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendPacketAndDeserializeYaml(RemoteRequest)}, the calling thread is not blocked.
+     *
+     * @param request packet and endpoint which are being sent out
+     * @return future completed with the response packet contents, or exceptionally with an IOException
+     */
+    public CompletableFuture<Map<String, Object>> sendPacketAndDeserializeYamlAsync(RemoteRequest request) {
+        return executeAsync(request, HttpCommunicationUtil::readYamlResponse, "Failed to process command request");
     }
 
     /**
@@ -140,33 +410,344 @@ public class HttpCommunicationUtil {
      * @throws IOException indicated an issue, printing the function specific message and exception details.
      */
     public BufferedImage sendPacketAndDeserializeImage(String packet, String url) throws IOException {
-        // Execute the request and get the response
-        try (Response response = executeRequest(packet, url)) {
-            Objects.requireNonNull(response);
+        return sendPacketAndDeserializeImage(new RemoteRequest(UNKNOWN_COMMAND, url, packet));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendPacketAndDeserializeImage(String, String)}, the calling thread is not blocked.
+     *
+     * @param packet Serialized YAML packet which is being sent out.
+     * @param url    URL endpoint.
+     * @return future completed with the decoded image, or exceptionally with an IOException
+     */
+    public CompletableFuture<BufferedImage> sendPacketAndDeserializeImageAsync(String packet, String url) {
+        return sendPacketAndDeserializeImageAsync(new RemoteRequest(UNKNOWN_COMMAND, url, packet));
+    }
+
+    /**
+     * Sends a constructed request, manages the Image response
+     *
+     * @param request packet and endpoint which are being sent out
+     * @return BufferedImage for further processing
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public BufferedImage sendPacketAndDeserializeImage(RemoteRequest request) throws IOException {
+        return execute(request, HttpCommunicationUtil::readImageResponse, "Failed to process image command request");
+    }
+
+    /**
+     * Sends a constructed request and decodes the Image response with a reusable decoder. The body is read into the
+     * decoder's buffer and decoded into its destination image, so no per-frame buffers or images are allocated.
+     *
+     * @param request packet and endpoint which are being sent out
+     * @param decoder decoder owned by the calling thread
+     * @return the decoded image, owned by the decoder and overwritten by its next decode
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public BufferedImage sendPacketAndDeserializeImage(RemoteRequest request, FrameDecoder decoder) throws IOException {
+        return execute(request, response -> {
             if (!response.isSuccessful()) handleRejectedRequest(response);
 
             Objects.requireNonNull(response.body());
-            return getImageObject(response.body().bytes());
-        } catch (Exception e) {
-            throw handleError(e, "Failed to process image command request");
+            return decoder.decode(response.body().byteStream(), response.body().contentLength());
+        }, "Failed to process image command request");
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendPacketAndDeserializeImage(RemoteRequest)}, the calling thread is not blocked.
+     *
+     * @param request packet and endpoint which are being sent out
+     * @return future completed with the decoded image, or exceptionally with an IOException
+     */
+    public CompletableFuture<BufferedImage> sendPacketAndDeserializeImageAsync(RemoteRequest request) {
+        return executeAsync(request, HttpCommunicationUtil::readImageResponse, "Failed to process image command request");
+    }
+
+    /**
+     * Sends a constructed request and returns the encoded response body untouched, no image decoding takes place.
+     *
+     * @param request packet and endpoint which are being sent out
+     * @return the encoded body, e.g. the JPEG bytes of a captured frame
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public ByteBuffer sendPacketAndReadBytes(RemoteRequest request) throws IOException {
+        return execute(request, HttpCommunicationUtil::readBytesResponse, "Failed to process raw command request");
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendPacketAndReadBytes(RemoteRequest)}, the calling thread is not blocked.
+     *
+     * @param request packet and endpoint which are being sent out
+     * @return future completed with the encoded body, or exceptionally with an IOException
+     */
+    public CompletableFuture<ByteBuffer> sendPacketAndReadBytesAsync(RemoteRequest request) {
+        return executeAsync(request, HttpCommunicationUtil::readBytesResponse, "Failed to process raw command request");
+    }
+
+    /**
+     * Sends a constructed request and streams the response body into the channel through a fixed size buffer,
+     * the body is never held in memory as a whole.
+     *
+     * @param request packet and endpoint which are being sent out
+     * @param target  channel receiving the body, it is not closed
+     * @return number of bytes written to the channel
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public long sendPacketAndTransfer(RemoteRequest request, WritableByteChannel target) throws IOException {
+        return execute(request, response -> {
+            if (!response.isSuccessful()) handleRejectedRequest(response);
+
+            Objects.requireNonNull(response.body());
+            return transfer(response.body().source(), target);
+        }, "Failed to transfer command response");
+    }
+
+    /**
+     * Sends a constructed request and streams the response body into a file through a fixed size buffer,
+     * so memory use stays constant whatever the file size. The body is written to "target.part" and moved
+     * into place once complete. If a partial file from an interrupted transfer exists, an HTTP Range request
+     * asks the server for the remainder only; servers which ignore the range simply send the whole file again.
+     *
+     * @param request  packet and endpoint which are being sent out
+     * @param target   final location of the file, an existing file is replaced
+     * @param listener progress callback, may be null
+     * @return sizes, timing and throughput of the transfer
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public DownloadResult sendPacketAndDownload(RemoteRequest request, Path target, TransferListener listener) throws IOException {
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        long resumeFrom = Files.isRegularFile(partial) ? Files.size(partial) : 0;
+
+        DownloadResult result = download(request, target, partial, resumeFrom, listener);
+        if (result == null) {
+            // the partial file does not match the server's copy, start over
+            Files.deleteIfExists(partial);
+            result = download(request, target, partial, 0, listener);
+        }
+        return result;
+    }
+
+    /**
+     * Single download attempt, see {@link #sendPacketAndDownload(RemoteRequest, Path, TransferListener)}.
+     *
+     * @param request    packet and endpoint which are being sent out
+     * @param target     final location of the file
+     * @param partial    file receiving the body until the transfer completes
+     * @param resumeFrom bytes already present in the partial file, 0 to download everything
+     * @param listener   progress callback, may be null
+     * @return sizes, timing and throughput of the transfer, null when the server rejected the requested range or
+     *         answered with a different one
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private DownloadResult download(RemoteRequest request, Path target, Path partial, long resumeFrom, TransferListener listener) throws IOException {
+        long started = System.nanoTime();
+        CallTimings timings = new CallTimings(request.getCommand());
+        Request.Builder builder = newRequest(request, timings);
+        if (resumeFrom > 0) builder.header("Range", "bytes=" + resumeFrom + "-");
+
+        return execute(builder.build(), request.getTimeoutMillis(), timings, response -> {
+            if (response.code() == 416 && resumeFrom > 0) return null;
+            if (!response.isSuccessful()) handleRejectedRequest(response);
+            Objects.requireNonNull(response.body());
+
+            long offset = 0;
+            if (response.code() == 206) {
+                // a partial body is only usable if it continues the partial file up to the end of the file
+                if (resumeFrom > 0 && isRemainderFrom(response, resumeFrom)) {
+                    offset = resumeFrom;
+                } else if (resumeFrom > 0) {
+                    return null;
+                } else {
+                    throw new MalformedResponseException("Partial content " + response.header("Content-Range") + " received for a full download");
+                }
+            }
+            long contentLength = response.body().contentLength();
+            long total = contentLength >= 0 ? offset + contentLength : -1;
+
+            long transferred;
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.position(offset);
+                if (listener != null) listener.onStart(offset);
+                transferred = transfer(response.body().source(), channel, offset, total, started, listener);
+                channel.force(false);
+            }
+
+            try {
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new DownloadResult(target, offset + transferred, transferred, offset > 0, System.nanoTime() - started);
+        }, "Failed to download file to " + target);
+    }
+
+    /**
+     * @param response partial content response
+     * @param expected offset which was requested
+     * @return true when the Content-Range header is missing, or starts at the requested offset and reaches the end
+     *         of the file
+     */
+    private static boolean isRemainderFrom(Response response, long expected) {
+        String contentRange = response.header("Content-Range");
+        if (contentRange == null) return true;
+        if (!contentRange.startsWith("bytes " + expected + "-")) return false;
+        int dash = contentRange.indexOf('-');
+        int slash = contentRange.indexOf('/', dash);
+        if (slash < 0) return false;
+        String size = contentRange.substring(slash + 1).trim();
+        if (size.equals("*")) return true;
+        try {
+            return Long.parseLong(contentRange.substring(dash + 1, slash).trim()) + 1 == Long.parseLong(size);
+        } catch (NumberFormatException e) {
+            return false;
         }
     }
 
     /**
-     * Extracts the yaml information and populates a global map for the response packet contents
+     * Copies the source into the file channel with a single fixed size buffer, reporting progress periodically.
+     *
+     * @param source   body of the response
+     * @param target   file receiving the bytes
+     * @param offset   bytes already present in the file before this transfer
+     * @param total    expected final file size, -1 when unknown
+     * @param started  System.nanoTime() at which the transfer started
+     * @param listener progress callback, may be null
+     * @return number of bytes copied by this transfer
+     * @throws IOException if reading or writing fails
+     */
+    private static long transfer(ReadableByteChannel source, FileChannel target, long offset, long total,
+                                 long started, TransferListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        long transferred = 0;
+        long lastReport = started;
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                transferred += target.write(buffer);
+            }
+            buffer.clear();
+
+            long now = System.nanoTime();
+            if (listener != null && now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                listener.onProgress(offset + transferred, total, bytesPerSecond(transferred, now - started));
+                lastReport = now;
+            }
+        }
+        if (listener != null) {
+            listener.onProgress(offset + transferred, total, bytesPerSecond(transferred, System.nanoTime() - started));
+        }
+        return transferred;
+    }
+
+    /**
+     * @param bytes       bytes moved
+     * @param elapsedNanos time taken
+     * @return throughput in bytes per second
+     */
+    static double bytesPerSecond(long bytes, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0 : bytes * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * Copies everything from the source into the target using a single fixed size buffer.
+     *
+     * @param source body of the response
+     * @param target channel receiving the bytes
+     * @return number of bytes copied
+     * @throws IOException if reading or writing fails
+     */
+    private static long transfer(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        long total = 0;
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                total += target.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Validates the response and deserializes the YAML body.
+     *
+     * @param response received from the server
+     * @return Response Packet of the response contents
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private static Map<String, Object> readYamlResponse(Response response) throws IOException {
+        Objects.requireNonNull(response);
+        if (!response.isSuccessful()) handleRejectedRequest(response);
+
+        Objects.requireNonNull(response.body());
+        return deserializeYamlPacket(response.body().string());
+    }
+
+    /**
+     * Validates the response and returns the body bytes without decoding them.
+     *
+     * @param response received from the server
+     * @return the encoded body
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private static ByteBuffer readBytesResponse(Response response) throws IOException {
+        Objects.requireNonNull(response);
+        if (!response.isSuccessful()) handleRejectedRequest(response);
+
+        Objects.requireNonNull(response.body());
+        byte[] bytes = response.body().bytes();
+        if (bytes.length == 0) {
+            throw new MalformedResponseException("The response body is empty");
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Validates the response and decodes the image body.
+     *
+     * @param response received from the server
+     * @return BufferedImage decoded from the body
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private static BufferedImage readImageResponse(Response response) throws IOException {
+        Objects.requireNonNull(response);
+        if (!response.isSuccessful()) handleRejectedRequest(response);
+
+        Objects.requireNonNull(response.body());
+        return getImageObject(response.body().bytes());
+    }
+
+    /**
+     * Decodes an encoded image, e.g. a frame returned by {@link #sendPacketAndReadBytes(RemoteRequest)}.
+     * The buffer position is left unchanged.
+     *
+     * @param imageBytes encoded image bytes
+     * @return BufferedImage for further processing
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    public static BufferedImage decodeImage(ByteBuffer imageBytes) throws IOException {
+        if (imageBytes.hasArray()) {
+            return getImageObject(imageBytes.array(), imageBytes.arrayOffset() + imageBytes.position(), imageBytes.remaining());
+        }
+        byte[] copy = new byte[imageBytes.remaining()];
+        imageBytes.duplicate().get(copy);
+        return getImageObject(copy);
+    }
+
+    /**
+     * Extracts the yaml information for the response packet contents
      *
      * @param textIn raw string response which is being deserialized
      * @throws IOException indicated an issue, printing the function specific message and exception details.
      */
     private static Map<String, Object> deserializeYamlPacket(String textIn) throws IOException {
-        Yaml yaml = new Yaml();
         try {
-            // load the full packet
-            Map<String, Object> yamlResult = yaml.load(textIn);
-            // extract the inner map and store it globally
-            return ((Map<String, Object>) yamlResult.get("PacketRemoteResponse"));
+            return PacketCodec.decodeResponse(textIn);
         } catch (Exception e) {
-            throw handleError(e, "Failed to Deserialize YAML Response Packet");
+            System.err.println("Failed to Deserialize YAML Response Packet Hit Exception: '" + e + "'");
+            throw new MalformedResponseException("Failed to Deserialize YAML Response Packet", e);
         }
     }
 
@@ -177,15 +758,28 @@ public class HttpCommunicationUtil {
      * @throws IOException indicated an issue, printing the function specific message and exception details.
      */
     private static BufferedImage getImageObject(byte[] imageBytes) throws IOException {
+        return getImageObject(imageBytes, 0, imageBytes.length);
+    }
+
+    /**
+     * Processes the image bytes from a region of an array and validates
+     *
+     * @param imageBytes array holding the encoded image
+     * @param offset     start of the image within the array
+     * @param length     number of bytes of the image
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private static BufferedImage getImageObject(byte[] imageBytes, int offset, int length) throws IOException {
         // Convert the byte array to BufferedImage
-        try (ByteArrayInputStream byteStream = new ByteArrayInputStream(imageBytes)) {
+        try (ByteArrayInputStream byteStream = new ByteArrayInputStream(imageBytes, offset, length)) {
             BufferedImage image = ImageIO.read(byteStream);
             if (image == null) {
                 throw new IOException("The byte array does not contain a valid image");
             }
             return image;
-        } catch (IOException e) {
-            throw handleError(e, "saveImage FAILED: - ImageIo.read failure, Image is not valid");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("saveImage FAILED: - ImageIo.read failure, Image is not valid Hit Exception: '" + e + "'");
+            throw new MalformedResponseException("ImageIo.read failure, Image is not valid", e);
         }
     }
 
@@ -201,24 +795,102 @@ public class HttpCommunicationUtil {
         return new IOException(msg, e);
     }
 
+    /**
+     * Error handling for failures of the connection, see {@link #handleError(Exception, String)}.
+     *
+     * @param e   Exception to display.
+     * @param msg Error message to provide additional context from the function.
+     * @return TransportException marking the failure as a transport failure for retries and the circuit breaker.
+     */
+    private static TransportException handleTransportError(Exception e, String msg) {
+        System.err.println(msg + " Hit Exception: '" + e + "'");
+        return new TransportException(msg, e);
+    }
+
+    /**
+     * Error handling for a failed request or response handler. Failures which are already classified are returned
+     * unchanged: a {@link TransportException} has been displayed when it was raised, a {@link RejectedRequestException}
+     * or {@link MalformedResponseException} is displayed here. Only unclassified failures are wrapped.
+     *
+     * @param e   Exception to display.
+     * @param msg Error message to provide additional context from the function.
+     * @return the classified failure, a TransportException for a broken connection or a plain IOException otherwise.
+     */
+    private static IOException handleFailure(Exception e, String msg) {
+        if (e instanceof TransportException) return (IOException) e;
+        if (e instanceof RejectedRequestException || e instanceof MalformedResponseException) {
+            System.err.println(msg + " Hit Exception: '" + e + "'");
+            return (IOException) e;
+        }
+        return isConnectionFailure(e) ? handleTransportError(e, msg) : handleError(e, msg);
+    }
+
+    /**
+     * Tells a broken connection while the response is read from failures of the response handler itself, e.g. a
+     * full disk while a download is written.
+     *
+     * @param e failure of the response handler
+     * @return true if reading the response from the connection failed
+     */
+    private static boolean isConnectionFailure(Exception e) {
+        return e instanceof InterruptedIOException || e instanceof SocketException || e instanceof EOFException
+                || e instanceof SSLException;
+    }
+
     /**
      * Handle a failed or blocked response packet when trying to execute a request.
      *
      * @param response object returned back from the server.
-     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     * @throws RejectedRequestException always, carrying the HTTP status code of the response.
      */
-    private void handleRejectedRequest(Response response) throws IOException {
+    private static void handleRejectedRequest(Response response) throws IOException {
         String responseBody = response.body() != null ? response.body().string() : "No response body";
-        throw new IOException("Request failed: Status - '" + response.code() + "', Message - '" + response.message() + "' , Body - '" + responseBody + "'");
+        throw new RejectedRequestException(response.code(), "Request failed: Status - '" + response.code() + "', Message - '" + response.message() + "' , Body - '" + responseBody + "'");
+    }
+
+    /**
+     * Returns the shared client, building it on first use.
+     *
+     * @return the client instance which we will communicate via
+     * @throws IOException indicated an issue, printing the function specific message and exception details.
+     */
+    private OkHttpClient getClient() throws IOException {
+        OkHttpClient result = client;
+        if (result == null) {
+            synchronized (this) {
+                result = client;
+                if (result == null) {
+                    result = setupOkHttpClient();
+                    client = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases the pooled connections and dispatcher threads. Later requests will build a new client.
+     */
+    public void close() {
+        OkHttpClient result;
+        synchronized (this) {
+            result = client;
+            client = null;
+        }
+        if (result != null) {
+            if (config.getExecutorService() == null) result.dispatcher().executorService().shutdown();
+            result.connectionPool().evictAll();
+        }
     }
 
     /**
-     * SSL Management
+     * SSL Management. A single SSLContext is kept for the lifetime of the client so its session cache allows
+     * abbreviated TLS handshakes when a pooled connection has to be re-established.
      *
      * @return the modified client instance which we will communicate via
      * @throws IOException indicated an issue, printing the function specific message and exception details.
      */
-    private static OkHttpClient setupOkHttpClient() throws IOException {
+    private OkHttpClient setupOkHttpClient() throws IOException {
         try {
             // Create a trust manager that does not validate certificate chains
             final TrustManager[] trustAllCerts = new TrustManager[]{new X509TrustManager() {
@@ -239,6 +911,8 @@ public class HttpCommunicationUtil {
             // Install the all-trusting trust manager
             final SSLContext sslContext = SSLContext.getInstance("SSL");
             sslContext.init(null, trustAllCerts, new SecureRandom());
+            sslContext.getClientSessionContext().setSessionCacheSize(config.getTlsSessionCacheSize());
+            sslContext.getClientSessionContext().setSessionTimeout(config.getTlsSessionTimeoutSeconds());
 
             // Create a ssl socket factory with our all-trusting manager
             final SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
@@ -246,6 +920,22 @@ public class HttpCommunicationUtil {
             OkHttpClient.Builder builder = new OkHttpClient.Builder();
             builder.sslSocketFactory(sslSocketFactory, (X509TrustManager) trustAllCerts[0]);
             builder.hostnameVerifier((hostname, session) -> true);
+            builder.connectionPool(new ConnectionPool(config.getMaxIdleConnections(), config.getKeepAliveMillis(), TimeUnit.MILLISECONDS));
+            builder.connectTimeout(config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+            builder.readTimeout(config.getReadTimeoutMillis(), TimeUnit.MILLISECONDS);
+            builder.writeTimeout(config.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS);
+            builder.eventListenerFactory(CallEventListener.factory(connectionStats));
+            // HTTP/2 is negotiated through ALPN during the TLS handshake, devices without it fall back to HTTP/1.1
+            builder.protocols(config.isHttp2Enabled()
+                    ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                    : Collections.singletonList(Protocol.HTTP_1_1));
+
+            Dispatcher dispatcher = config.getExecutorService() != null
+                    ? new Dispatcher(config.getExecutorService())
+                    : new Dispatcher();
+            dispatcher.setMaxRequests(config.getMaxRequests());
+            dispatcher.setMaxRequestsPerHost(config.getMaxRequestsPerHost());
+            builder.dispatcher(dispatcher);
 
             return builder.build();
         } catch (Exception e) {
@@ -0,0 +1,85 @@
+package ninox360.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear latency histogram with microsecond resolution. Each power of two is split into four
+ * buckets, so reported percentiles are within 25% of the true value; the maximum is exact.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos latency to record
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        counts.incrementAndGet(bucketFor(micros));
+        total.incrementAndGet();
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return upper bound of the bucket holding the percentile, in nanoseconds, 0 when empty
+     */
+    long percentileNanos(double percentile) {
+        long count = total.get();
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBoundMicros(i) * 1_000, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * @return largest recorded latency in nanoseconds
+     */
+    long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    long count() {
+        return total.get();
+    }
+
+    /**
+     * @param micros latency in microseconds
+     * @return bucket index, values below 4 get their own bucket
+     */
+    static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return largest microsecond value falling into the bucket
+     */
+    static long upperBoundMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+    }
+}
@@ -0,0 +1,41 @@
+package ninox360.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the device answered but the response body could not be decoded, e.g. a YAML packet that does not
+ * parse or a frame that is not a valid image. The device is reachable, so the failure is neither retried nor
+ * counted by the {@link CircuitBreaker}. Use {@link #isCauseOf(Throwable)} to find it in a cause chain.
+ */
+public class MalformedResponseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message details of the response
+     */
+    public MalformedResponseException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message details of the response
+     * @param cause   decoder failure
+     */
+    public MalformedResponseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * Searches the cause chain for a malformed response.
+     *
+     * @param error failure of a command
+     * @return true if the failure was caused by a response which could not be decoded
+     */
+    public static boolean isCauseOf(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MalformedResponseException) return true;
+            if (cause.getCause() == cause) break;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,280 @@
+package ninox360.util;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encoder and decoder for the fixed remote packet schema (PacketRemoteRegister, PacketRemoteCommand and
+ * PacketRemoteResponse). Outbound packets are written from a template straight into a StringBuilder, and
+ * responses are parsed by a small line reader. Anything outside the expected shape is handed to SnakeYAML,
+ * so the result is always the same as a full YAML parse.
+ * <pre>
+ *     Usage Example:
+ *     String packet = PacketCodec.encodeCommand("BLZ1x", "EXPOSURE", "10000000");
+ *     // PacketRemoteCommand:
+ *     //   secret: BLZ1x
+ *     //   value: "10000000"
+ *     //   command: EXPOSURE
+ * </pre>
+ */
+public final class PacketCodec {
+    private static final String REGISTER_HEADER = "PacketRemoteRegister:\n  scanner_secret: ";
+    private static final String REGISTER_VERSION = "\n  version: ";
+    private static final String COMMAND_HEADER = "PacketRemoteCommand:\n  secret: ";
+    private static final String COMMAND_VALUE = "\n  value: ";
+    private static final String COMMAND_COMMAND = "\n  command: ";
+    private static final String RESPONSE_HEADER = "PacketRemoteResponse:";
+    /**
+     * Characters which cannot start a plain scalar, or only in some contexts.
+     */
+    private static final String INDICATORS = "-?:,[]{}#&*!|>'\"%@`";
+
+    private static final Resolver RESOLVER = new Resolver();
+    private static final ThreadLocal<Yaml> FALLBACK_YAML = ThreadLocal.withInitial(Yaml::new);
+
+    private PacketCodec() {
+    }
+
+    /**
+     * Encodes a register packet.
+     *
+     * @param serverSecret key which is provided by the remote control application on SI
+     * @param version      packet version
+     * @return the serialized YAML packet
+     */
+    public static String encodeRegister(String serverSecret, int version) {
+        StringBuilder out = new StringBuilder(REGISTER_HEADER.length() + REGISTER_VERSION.length() + serverSecret.length() + 16);
+        out.append(REGISTER_HEADER);
+        appendScalar(out, serverSecret);
+        out.append(REGISTER_VERSION).append(version).append('\n');
+        return out.toString();
+    }
+
+    /**
+     * Encodes a command packet.
+     *
+     * @param clientSecret client secret given by the server
+     * @param command      action which we are issuing
+     * @param value        additional parameters for a command
+     * @return the serialized YAML packet
+     */
+    public static String encodeCommand(String clientSecret, String command, String value) {
+        StringBuilder out = new StringBuilder(COMMAND_HEADER.length() + COMMAND_VALUE.length() + COMMAND_COMMAND.length()
+                + clientSecret.length() + command.length() + value.length() + 16);
+        out.append(COMMAND_HEADER);
+        appendScalar(out, clientSecret);
+        out.append(COMMAND_VALUE);
+        appendScalar(out, value);
+        out.append(COMMAND_COMMAND);
+        appendScalar(out, command);
+        out.append('\n');
+        return out.toString();
+    }
+
+    /**
+     * Appends a string scalar, plain when it cannot be mistaken for another type, double quoted otherwise.
+     *
+     * @param out   destination
+     * @param value string to write
+     */
+    private static void appendScalar(StringBuilder out, String value) {
+        if (isPlainSafe(value)) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    // characters YAML does not allow unescaped in a stream
+                    if (c < 0x20 || (c >= 0x7f && c <= 0x9f)) {
+                        out.append(String.format("\\x%02x", (int) c));
+                    } else if (c == 0xfffe || c == 0xffff) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * @param value string to check
+     * @return true when the value is a word made of [A-Za-z0-9_] which YAML reads back as a string
+     */
+    private static boolean isPlainSafe(String value) {
+        if (value.isEmpty()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean word = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+            if (!word) return false;
+        }
+        return isString(value);
+    }
+
+    /**
+     * @param plain unquoted scalar
+     * @return true when YAML resolves the scalar to a string rather than a number, boolean or null
+     */
+    private static boolean isString(String plain) {
+        return Tag.STR.equals(RESOLVER.resolve(NodeId.scalar, plain, true));
+    }
+
+    /**
+     * Decodes a response packet and returns the inner PacketRemoteResponse map.
+     *
+     * @param textIn raw string response which is being deserialized
+     * @return map of the response fields, e.g. "response" and "message"
+     * @throws IOException if the text is not a valid response packet
+     */
+    public static Map<String, Object> decodeResponse(String textIn) throws IOException {
+        Map<String, Object> fields = decodeResponseFast(textIn);
+        return fields != null ? fields : decodeResponseYaml(textIn);
+    }
+
+    /**
+     * Parses the common shape of a response: a header line followed by indented "key: value" lines with
+     * plain or simply quoted string values.
+     *
+     * @param text raw response
+     * @return the fields, or null when the text needs a full YAML parse
+     */
+    static Map<String, Object> decodeResponseFast(String text) {
+        Map<String, Object> fields = new HashMap<>(4);
+        int length = text.length();
+        int pos = 0;
+        boolean header = false;
+        String indent = null;
+
+        while (pos < length) {
+            int end = text.indexOf('\n', pos);
+            if (end < 0) end = length;
+            int lineEnd = end > pos && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            String line = text.substring(pos, lineEnd);
+            pos = end + 1;
+
+            if (line.trim().isEmpty()) continue;
+            if (!header) {
+                if (!line.equals(RESPONSE_HEADER) && !line.equals(RESPONSE_HEADER + " ")) return null;
+                header = true;
+                continue;
+            }
+
+            int keyStart = 0;
+            while (keyStart < line.length() && line.charAt(keyStart) == ' ') keyStart++;
+            if (keyStart == 0) return null;
+            String lineIndent = line.substring(0, keyStart);
+            if (indent == null) {
+                indent = lineIndent;
+            } else if (!indent.equals(lineIndent)) {
+                return null;
+            }
+
+            int colon = line.indexOf(": ", keyStart);
+            if (colon < 0) return null;
+            String key = line.substring(keyStart, colon);
+            if (!isSimpleKey(key) || fields.containsKey(key)) return null;
+
+            String value = parseValue(line.substring(colon + 2).trim());
+            if (value == null) return null;
+            fields.put(key, value);
+        }
+        return header && !fields.isEmpty() ? fields : null;
+    }
+
+    /**
+     * @param key mapping key
+     * @return true for keys made of lower case letters and underscores
+     */
+    private static boolean isSimpleKey(String key) {
+        if (key.isEmpty()) return false;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || c == '_')) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param raw scalar text after "key: "
+     * @return the string value, or null when the scalar is not a simple string
+     */
+    private static String parseValue(String raw) {
+        if (raw.isEmpty()) return null;
+        char first = raw.charAt(0);
+        if (first == '\'') {
+            if (raw.length() < 2 || raw.charAt(raw.length() - 1) != '\'') return null;
+            String inner = raw.substring(1, raw.length() - 1);
+            return inner.indexOf('\'') >= 0 || !isPrintableAscii(inner) ? null : inner;
+        }
+        if (first == '"') {
+            if (raw.length() < 2 || raw.charAt(raw.length() - 1) != '"') return null;
+            String inner = raw.substring(1, raw.length() - 1);
+            return inner.indexOf('"') >= 0 || inner.indexOf('\\') >= 0 || !isPrintableAscii(inner) ? null : inner;
+        }
+        // an indicator such as ',' or '-' changes the meaning of the scalar or is rejected by YAML
+        if (INDICATORS.indexOf(first) >= 0) return null;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_' || c == '-' || c == '.' || c == ' ' || c == '/' || c == ',';
+            if (!safe) return null;
+        }
+        return isString(raw) ? raw : null;
+    }
+
+    /**
+     * @param text quoted scalar content
+     * @return true when every character is printable ASCII, anything else is left to SnakeYAML's checks
+     */
+    private static boolean isPrintableAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 || c > 0x7e) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Full YAML parse used when the fast reader does not recognise the text.
+     *
+     * @param textIn raw response
+     * @return the PacketRemoteResponse map
+     * @throws IOException if the text is not a valid response packet
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> decodeResponseYaml(String textIn) throws IOException {
+        Object yamlResult = FALLBACK_YAML.get().load(textIn);
+        if (!(yamlResult instanceof Map)) {
+            throw new IOException("Response is not a YAML mapping");
+        }
+        Object inner = ((Map<String, Object>) yamlResult).get("PacketRemoteResponse");
+        if (!(inner instanceof Map)) {
+            throw new IOException("Response does not contain a PacketRemoteResponse");
+        }
+        return (Map<String, Object>) inner;
+    }
+}
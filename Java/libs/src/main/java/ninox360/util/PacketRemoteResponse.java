@@ -1,9 +0,0 @@
-package ninox360.util;
-
-/**
- * Response Packet for relaying responses back from the device/server
- */
-class PacketRemoteResponse {
-        String response;
-        String message;
-}
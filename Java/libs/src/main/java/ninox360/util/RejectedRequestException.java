@@ -0,0 +1,44 @@
+package ninox360.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the device answers a request with an HTTP error status, e.g. 403 when the client secret is no longer
+ * accepted. The exception is usually wrapped by the command that failed, use {@link #statusCodeOf(Throwable)}
+ * to find the status code in a cause chain.
+ */
+public class RejectedRequestException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    /**
+     * @param statusCode HTTP status code of the response
+     * @param message    details of the rejected request
+     */
+    public RejectedRequestException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return HTTP status code of the response
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Searches the cause chain for a rejected request.
+     *
+     * @param error failure of a command
+     * @return the HTTP status code, or -1 if the request never got a response, e.g. a connection failure
+     */
+    public static int statusCodeOf(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RejectedRequestException) return ((RejectedRequestException) cause).getStatusCode();
+            if (cause.getCause() == cause) break;
+        }
+        return -1;
+    }
+}
@@ -2,17 +2,151 @@ package ninox360.util;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * API to simplify interation with a Surface inspector device for Remote Control.
+ * Each instance keeps its own pooled HTTPS client, so connections and TLS sessions are reused between commands.
  */
-public class RemoteAPI {
-    HttpCommunicationUtil util = new HttpCommunicationUtil();
-    String clientSecret;
-    PacketRemoteResponse responsePacket = new PacketRemoteResponse();
+public class RemoteAPI implements Closeable {
+    final HttpCommunicationUtil util;
+    volatile String clientSecret;
+    private volatile String serverSecret;
+    private final Object registrationLock = new Object();
+    private CompletableFuture<Boolean> pendingRegistration;
+    private final CommandRunner runner = new CommandRunner(this);
+    private volatile SecretStore secretStore;
+    private volatile RemoteResponse lastResponse = new RemoteResponse(null, null);
+    private final StateCache stateCache = new StateCache(() -> sendCommandAsync("GET_STATE", ""));
+
+    /**
+     * Creates the API with the default connection settings.
+     */
+    public RemoteAPI() {
+        this(new HttpClientConfig());
+    }
+
+    /**
+     * Creates the API with custom connection pool, timeout and TLS session settings.
+     *
+     * @param config client settings shared by every command sent through this instance
+     */
+    public RemoteAPI(HttpClientConfig config) {
+        this.util = new HttpCommunicationUtil(config);
+    }
+
+    /**
+     * Connection usage counters, useful to confirm that commands reuse pooled connections.
+     *
+     * @return counters of opened versus reused connections for this instance
+     */
+    public ConnectionStats getConnectionStats() {
+        return util.getConnectionStats();
+    }
+
+    /**
+     * @return protocol negotiated with the device, "h2" or "http/1.1", null before the first command
+     */
+    public String getProtocol() {
+        return util.getConnectionStats().getProtocol();
+    }
+
+    /**
+     * Per-command latency percentiles, phase breakdown, error rate and byte counts.
+     * <pre>
+     *     Usage Example:
+     *     CommandStats stats = remote.getCommandMetrics().getStats("GET_STATE");
+     *     System.out.println(stats.getP99Millis() + " ms p99, " + stats.getErrorCount() + " errors");
+     * </pre>
+     *
+     * @return metrics recorded for every command sent by this instance
+     */
+    public CommandMetrics getCommandMetrics() {
+        return util.getCommandMetrics();
+    }
+
+    /**
+     * Registers a listener which receives a {@link CommandEvent} for every completed command, e.g. to forward
+     * timings to an external monitoring system.
+     *
+     * @param listener callback, invoked on the thread completing the command
+     */
+    public void addCommandListener(CommandListener listener) {
+        util.addCommandListener(listener);
+    }
+
+    /**
+     * @param listener previously registered callback
+     */
+    public void removeCommandListener(CommandListener listener) {
+        util.removeCommandListener(listener);
+    }
+
+    /**
+     * Circuit breaker of this device, commands fail immediately while it is open.
+     *
+     * @return the breaker, its thresholds can be adjusted
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return runner.getCircuitBreaker();
+    }
+
+    /**
+     * Sets the retry and deadline policy of one command type. GET_STATE, CAPTURE_VIDEO_FRAME and the registration,
+     * "REGISTER", are idempotent and retried by default ({@link CommandPolicy#idempotent()}), all other commands are
+     * sent once with a deadline. The deadline does not apply to GET_FILE downloads.
+     *
+     * @param command action the policy applies to, e.g. "GET_STATE"
+     * @param policy  retry and deadline settings
+     */
+    public void setCommandPolicy(String command, CommandPolicy policy) {
+        runner.setPolicy(Objects.requireNonNull(command), Objects.requireNonNull(policy));
+    }
+
+    /**
+     * Sets the policy used for commands without a policy of their own.
+     *
+     * @param policy retry and deadline settings, only idempotent commands should be retried
+     */
+    public void setDefaultCommandPolicy(CommandPolicy policy) {
+        runner.setDefaultPolicy(Objects.requireNonNull(policy));
+    }
+
+    /**
+     * @param command action, e.g. "GET_STATE"
+     * @return the retry and deadline policy applied to the command
+     */
+    public CommandPolicy getCommandPolicy(String command) {
+        return runner.getPolicy(command);
+    }
+
+    /**
+     * Last known scanner state, refreshed by every GET_STATE response and optionally by a background poller.
+     * <pre>
+     *     Usage Example:
+     *     api.getStateCache().start(200, 5_000);
+     *     ScannerState state = api.getStateCache().get(); // never blocks on the network
+     * </pre>
+     *
+     * @return the state cache of this device
+     */
+    public StateCache getStateCache() {
+        return stateCache;
+    }
 
     /**
      * Set the Device base IP address
@@ -20,21 +154,20 @@ public class RemoteAPI {
      * @param ip address representing the scanner server
      */
     public void setIP(String ip) {
-        HttpCommunicationUtil.ipBase = ip;
+        util.setIpBase(ip);
     }
 
     /**
-     * Sets the local response variables based on the deserialized response map
-     *
-     * @param response Map of the Response and Message from PacketRemoteResponse
+     * @return the Device base IP address this instance sends commands to
      */
-    private void setResponse(Map<String, Object> response) {
-        responsePacket.response = (String) response.get("response");
-        responsePacket.message = (String) response.get("message");
+    public String getIP() {
+        return util.getIpBase();
     }
 
     /**
      * Indicates a status after an outbound command/register packet has been sent, stored until the next packet is sent.
+     * With several threads sharing this instance the stored response may belong to another thread's command,
+     * use the {@link RemoteResponse} returned by the send method instead.
      * <pre>
      *     Usage Example:
      *     api.sendRegister(serverSecret);
@@ -46,13 +179,16 @@ public class RemoteAPI {
      * </pre>
      *
      * @return returns the corresponding network status string from a prior response.
+     * @deprecated use {@link RemoteResponse#getStatus()} of the response returned by the send method
      */
+    @Deprecated
     public String getResponseStatus() {
-        return responsePacket.response;
+        return lastResponse.getStatusText();
     }
 
     /**
      * Gets the server response message following a request, stored until the next packet is sent.
+     * Like {@link #getResponseStatus()} this is not reliable when several threads share this instance.
      * <pre>
      *     Usage Example:
      *     api.sendRegister(serverSecret);
@@ -64,117 +200,493 @@ public class RemoteAPI {
      * </pre>
      *
      * @return returns the corresponding message string, in the example: "MaDA1" would be returned
+     * @deprecated use {@link RemoteResponse#getMessage()} of the response returned by the send method
      */
+    @Deprecated
     public String getResponseMsg() {
-        return responsePacket.message;
+        return lastResponse.getMessage();
     }
 
     /**
-     * Registers the device by requesting a client secret which is later used for future commands
+     * Registers the device by requesting a client secret which is later used for future commands.
+     * The server secret is kept, so the device is registered again automatically if it later rejects the client secret.
      *
      * @param serverSecret Generated key found in the "Remote Control" feature of the Surface Inspector device
+     * @return the response of the device, its message is the issued client secret
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendRegister(String serverSecret) throws IOException {
-        String registerPacket = HttpCommunicationUtil.constructPacket(serverSecret, "", 0, "", "");
-        setResponse(util.sendPacketAndDeserializeYaml(registerPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendRegister(String serverSecret) throws IOException {
+        this.serverSecret = serverSecret;
+        long start = System.nanoTime();
+        Map<String, Object> packet = runner.run(HttpCommunicationUtil.REGISTER_COMMAND,
+                timeout -> util.sendPacketAndDeserializeYaml(util.constructRequest(serverSecret, "", 0, "", "").withTimeout(timeout)));
+        RemoteResponse response = RemoteResponse.fromMap(packet, System.nanoTime() - start);
+        lastResponse = response;
 
         // set the client secret to the response message for future commands
-        this.clientSecret = getResponseMsg();
+        this.clientSecret = response.getMessage();
+        if (response.isSuccess()) persistSecret(response.getMessage());
+        return response;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendRegister(String)}, the client secret is stored once the response arrives.
+     * <pre>
+     *     Usage Example:
+     *     api.sendRegisterAsync(serverSecret)
+     *             .thenCompose(registered -&gt; api.sendGetStateAsync())
+     *             .thenAccept(state -&gt; System.out.println("State: " + state.getMessage()));
+     * </pre>
+     *
+     * @param serverSecret Generated key found in the "Remote Control" feature of the Surface Inspector device
+     * @return future completed with the register response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendRegisterAsync(String serverSecret) {
+        this.serverSecret = serverSecret;
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, Object>> sent = runner.runAsync(HttpCommunicationUtil.REGISTER_COMMAND, timeout -> {
+            try {
+                return util.sendPacketAndDeserializeYamlAsync(util.constructRequest(serverSecret, "", 0, "", "").withTimeout(timeout));
+            } catch (IOException e) {
+                return failedFuture(e);
+            }
+        });
+        return cancellable(sent, response -> {
+            RemoteResponse result = RemoteResponse.fromMap(response, System.nanoTime() - start);
+            this.clientSecret = result.getMessage();
+            if (result.isSuccess()) persistSecret(result.getMessage());
+            return result;
+        });
+    }
+
+    /**
+     * Persists client secrets in a local file, so a restarted process can use {@link #connect(String)} instead of
+     * registering again. Every successful registration updates the store.
+     *
+     * @param secretStore store shared by any number of devices, null to stop persisting secrets
+     */
+    public void setSecretStore(SecretStore secretStore) {
+        this.secretStore = secretStore;
+    }
+
+    /**
+     * Connects to the device with the fewest round-trips: when the secret store holds a client secret for this
+     * device it is validated with a single GET_STATE, otherwise the device is registered.
+     * If the device rejects the stored secret (HTTP 401/403) it is registered again automatically; any other
+     * unsuccessful answer or failed GET_STATE (e.g. a timeout or an unreadable response) falls back to
+     * {@link #sendRegister(String)}. Only a failed re-registration is thrown without another attempt.
+     * <pre>
+     *     Usage Example:
+     *     api.setSecretStore(new SecretStore(Paths.get("client-secrets.properties")));
+     *     api.prewarm();
+     *     // ... other start-up work ...
+     *     RemoteResponse connected = api.connect(serverSecret);
+     * </pre>
+     *
+     * @param serverSecret Generated key found in the "Remote Control" feature of the Surface Inspector device
+     * @return the response of the validating GET_STATE, or of the registration
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process
+     */
+    public RemoteResponse connect(String serverSecret) throws IOException {
+        SecretStore store = secretStore;
+        String stored = store == null ? null : store.get(getIP());
+        if (stored == null) return sendRegister(serverSecret);
+
+        this.serverSecret = serverSecret;
+        this.clientSecret = stored;
+        RemoteResponse state;
+        try {
+            state = sendGetState();
+        } catch (IOException e) {
+            // the runner has already tried to register again after a rejected secret
+            if (CommandRunner.isSecretRejected(RejectedRequestException.statusCodeOf(e))) throw e;
+            return sendRegister(serverSecret);
+        }
+        return state.isSuccess() ? state : sendRegister(serverSecret);
+    }
+
+    /**
+     * Prepares for the first command in the background: opens and pools the HTTPS connection to the device and
+     * loads and exercises the packet codec, YAML and JPEG decoding classes, which otherwise make the first command
+     * of a process noticeably slower. Call it as early as possible, e.g. right after {@link #setIP(String)}.
+     *
+     * @return future completed when both are done; a connection failure completes it exceptionally
+     */
+    public CompletableFuture<Void> prewarm() {
+        CompletableFuture<Void> classes = CompletableFuture.runAsync(RemoteAPI::warmClasses);
+        return CompletableFuture.allOf(classes, util.warmConnection());
+    }
+
+    /**
+     * Runs the codec, SnakeYAML and ImageIO paths used by commands once, so their classes are loaded and initialised.
+     */
+    private static void warmClasses() {
+        try {
+            String response = "PacketRemoteResponse:\n  response: SUCCESS\n  message: IDLE\n";
+            PacketCodec.encodeCommand("WARM", "GET_STATE", "");
+            PacketCodec.decodeResponse(response);
+            PacketCodec.decodeResponseYaml(response);
+
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+            decodeImage(ByteBuffer.wrap(jpeg.toByteArray()));
+        } catch (IOException e) {
+            System.err.println("Prewarm FAILED Hit Exception: '" + e + "'");
+        }
+    }
+
+    /**
+     * @param clientSecret secret issued by a successful registration
+     */
+    private void persistSecret(String clientSecret) {
+        SecretStore store = secretStore;
+        if (store == null || clientSecret == null) return;
+        try {
+            store.put(getIP(), clientSecret);
+        } catch (IOException e) {
+            System.err.println("Failed to persist the client secret Hit Exception: '" + e + "'");
+        }
+    }
+
+    /**
+     * Builds and sends a command packet, blocking until the response is received.
+     *
+     * @param command action which we are issuing
+     * @param value   additional parameters for a command
+     * @return the response, also stored for {@link #getResponseStatus()} and {@link #getResponseMsg()}
+     * @throws IOException An exception will be thrown if any process fails
+     */
+    private RemoteResponse sendCommand(String command, String value) throws IOException {
+        long start = System.nanoTime();
+        RemoteResponse response = RemoteResponse.fromMap(send(command, value, util::sendPacketAndDeserializeYaml), System.nanoTime() - start);
+        lastResponse = response;
+        return response;
+    }
+
+    /**
+     * Builds and enqueues a command packet without blocking. The shared response returned by
+     * {@link #getResponseStatus()} and {@link #getResponseMsg()} is not updated by asynchronous commands.
+     *
+     * @param command action which we are issuing
+     * @param value   additional parameters for a command
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    CompletableFuture<RemoteResponse> sendCommandAsync(String command, String value) {
+        long start = System.nanoTime();
+        return cancellable(sendAsync(command, value, util::sendPacketAndDeserializeYamlAsync),
+                response -> RemoteResponse.fromMap(response, System.nanoTime() - start));
+    }
+
+    /**
+     * Sends a request through the command policy: every attempt is built with the current client secret and the
+     * time left before the deadline.
+     *
+     * @param command action which we are issuing
+     * @param value   additional parameters for a command
+     * @param sender  sends one request and reads its response
+     * @param <T>     response type
+     * @return the response
+     * @throws IOException An exception will be thrown if the last attempt fails or no attempt could be made
+     */
+    private <T> T send(String command, String value, Sender<T> sender) throws IOException {
+        return send(command, value, runner.getPolicy(command), sender);
+    }
+
+    /**
+     * Sends a request through an explicit policy instead of the command's own.
+     *
+     * @param command action which we are issuing
+     * @param value   additional parameters for a command
+     * @param policy  retry and deadline settings for this call
+     * @param sender  sends one request and reads its response
+     * @param <T>     response type
+     * @return the response
+     * @throws IOException An exception will be thrown if the last attempt fails or no attempt could be made
+     */
+    private <T> T send(String command, String value, CommandPolicy policy, Sender<T> sender) throws IOException {
+        return runner.run(command, policy, timeout -> sender.send(util.constructRequest("", clientSecret, 0, command, value).withTimeout(timeout)));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #send(String, String, Sender)}.
+     *
+     * @param command action which we are issuing
+     * @param value   additional parameters for a command
+     * @param sender  enqueues one request
+     * @param <T>     response type
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    private <T> CompletableFuture<T> sendAsync(String command, String value, Function<RemoteRequest, CompletableFuture<T>> sender) {
+        return runner.runAsync(command, timeout -> {
+            try {
+                return sender.apply(util.constructRequest("", clientSecret, 0, command, value).withTimeout(timeout));
+            } catch (IOException e) {
+                return failedFuture(e);
+            }
+        });
+    }
+
+    /**
+     * Sends one request, blocking until its response is read.
+     *
+     * @param <T> response type
+     */
+    @FunctionalInterface
+    private interface Sender<T> {
+        T send(RemoteRequest request) throws IOException;
+    }
+
+    /**
+     * Registers again with the stored server secret after the device rejected the client secret.
+     * Concurrent callers share a single registration, and nothing is sent when another caller already replaced
+     * the rejected secret.
+     *
+     * @param rejectedSecret client secret the device refused
+     * @return future completed with true when a new client secret is in place
+     */
+    CompletableFuture<Boolean> reregisterAsync(String rejectedSecret) {
+        synchronized (registrationLock) {
+            if (!Objects.equals(clientSecret, rejectedSecret)) return CompletableFuture.completedFuture(true);
+            String secret = serverSecret;
+            if (secret == null) return CompletableFuture.completedFuture(false);
+            if (pendingRegistration == null) {
+                CompletableFuture<Boolean> registration = sendRegisterAsync(secret).thenApply(RemoteResponse::isSuccess);
+                pendingRegistration = registration;
+                registration.whenComplete((registered, error) -> {
+                    synchronized (registrationLock) {
+                        if (pendingRegistration == registration) pendingRegistration = null;
+                    }
+                });
+            }
+            return pendingRegistration;
+        }
+    }
+
+    /**
+     * Maps the result of a request, cancelling the returned future also cancels the underlying call.
+     *
+     * @param source future of the request
+     * @param mapper converts the raw result
+     * @param <S>    raw result type
+     * @param <T>    mapped result type
+     * @return future of the mapped result
+     */
+    private static <S, T> CompletableFuture<T> cancellable(CompletableFuture<S> source, Function<S, T> mapper) {
+        CompletableFuture<T> mapped = source.thenApply(mapper);
+        mapped.whenComplete((result, error) -> {
+            if (mapped.isCancelled()) source.cancel(true);
+        });
+        return mapped;
+    }
+
+    /**
+     * Creates a batch of commands which are sent together, see {@link CommandBatch}.
+     *
+     * @return an empty batch bound to this device
+     */
+    public CommandBatch batch() {
+        return new CommandBatch(this);
+    }
+
+    /**
+     * @param e failure to report
+     * @param <T> future value type
+     * @return a future which is already completed exceptionally
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
     }
 
     /**
      * Sends the request to Start scanning.
      *
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendStartScan() throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "START_SCAN", "");
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendStartScan() throws IOException {
+        RemoteResponse response = sendCommand("START_SCAN", "");
+        if (response.isSuccess()) stateCache.setScanning(true);
+        return response;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendStartScan()}, the calling thread is not blocked.
+     *
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendStartScanAsync() {
+        CompletableFuture<RemoteResponse> future = sendCommandAsync("START_SCAN", "");
+        future.thenAccept(response -> {
+            if (response.isSuccess()) stateCache.setScanning(true);
+        });
+        return future;
     }
 
     /**
      * Sends the request to Stop scanning.
      *
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendStopScan() throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "STOP_SCAN", "");
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendStopScan() throws IOException {
+        RemoteResponse response = sendCommand("STOP_SCAN", "");
+        if (response.isSuccess()) stateCache.setScanning(false);
+        return response;
     }
 
     /**
-     * Requests the current scanner State.
+     * Asynchronous counterpart of {@link #sendStopScan()}, the calling thread is not blocked.
      *
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendStopScanAsync() {
+        CompletableFuture<RemoteResponse> future = sendCommandAsync("STOP_SCAN", "");
+        future.thenAccept(response -> {
+            if (response.isSuccess()) stateCache.setScanning(false);
+        });
+        return future;
+    }
+
+    /**
+     * Requests the current scanner State, the response also refreshes the {@link #getStateCache() state cache}.
+     *
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendGetState() throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "GET_STATE", "");
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendGetState() throws IOException {
+        long sentAtNanos = System.nanoTime();
+        RemoteResponse response = sendCommand("GET_STATE", "");
+        stateCache.update(response, sentAtNanos);
+        return response;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendGetState()}, the calling thread is not blocked.
+     *
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendGetStateAsync() {
+        long sentAtNanos = System.nanoTime();
+        CompletableFuture<RemoteResponse> future = sendCommandAsync("GET_STATE", "");
+        future.thenAccept(response -> stateCache.update(response, sentAtNanos));
+        return future;
     }
 
     /**
      * Sets the camera stillness requirement.
      *
      * @param state: Boolean indicating if the stillness is required prior to scanning, true=on false=off
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendStillnessRequired(boolean state) throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "REQUIRE_STILL", Boolean.toString(state));
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendStillnessRequired(boolean state) throws IOException {
+        return sendCommand("REQUIRE_STILL", Boolean.toString(state));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendStillnessRequired(boolean)}, the calling thread is not blocked.
+     *
+     * @param state Boolean indicating if the stillness is required prior to scanning, true=on false=off
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendStillnessRequiredAsync(boolean state) {
+        return sendCommandAsync("REQUIRE_STILL", Boolean.toString(state));
     }
 
     /**
      * Sets the camera QR marker requirement.
      *
      * @param state: Boolean indicating if the QR marker is required prior to scanning, true=on false=off
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendMarkerRequired(boolean state) throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "REQUIRE_MARKER", Boolean.toString(state));
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendMarkerRequired(boolean state) throws IOException {
+        return sendCommand("REQUIRE_MARKER", Boolean.toString(state));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendMarkerRequired(boolean)}, the calling thread is not blocked.
+     *
+     * @param state Boolean indicating if the QR marker is required prior to scanning, true=on false=off
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendMarkerRequiredAsync(boolean state) {
+        return sendCommandAsync("REQUIRE_MARKER", Boolean.toString(state));
     }
 
     /**
      * Sets the camera sensor exposure time (nanoseconds) aka shutter speed.
      *
      * @param exposure_ns, exposure time aka shutter speed, represented in nanoseconds
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendSetCameraExposure(long exposure_ns) throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "EXPOSURE", Long.toString(exposure_ns));
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendSetCameraExposure(long exposure_ns) throws IOException {
+        return sendCommand("EXPOSURE", Long.toString(exposure_ns));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendSetCameraExposure(long)}, the calling thread is not blocked.
+     *
+     * @param exposure_ns exposure time aka shutter speed, represented in nanoseconds
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendSetCameraExposureAsync(long exposure_ns) {
+        return sendCommandAsync("EXPOSURE", Long.toString(exposure_ns));
     }
 
     /**
      * Sets the camera sensor sensitivity aka ISO.
      *
      * @param sensitivity_iso, exposure time aka shutter speed, represented in nanoseconds
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendSetCameraSensitivity(int sensitivity_iso) throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "SENSITIVITY", Integer.toString(sensitivity_iso));
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendSetCameraSensitivity(int sensitivity_iso) throws IOException {
+        return sendCommand("SENSITIVITY", Integer.toString(sensitivity_iso));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendSetCameraSensitivity(int)}, the calling thread is not blocked.
+     *
+     * @param sensitivity_iso camera sensor sensitivity aka ISO
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendSetCameraSensitivityAsync(int sensitivity_iso) {
+        return sendCommandAsync("SENSITIVITY", Integer.toString(sensitivity_iso));
     }
 
     /**
      * Sets the nickname for the most recent scan/photo. The name is set in 'value'.
      *
      * @param name a String to name the Scan file
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendSetNickname(String name) throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "SET_NICKNAME", name);
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendSetNickname(String name) throws IOException {
+        return sendCommand("SET_NICKNAME", name);
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendSetNickname(String)}, the calling thread is not blocked.
+     *
+     * @param name a String to name the Scan file
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendSetNicknameAsync(String name) {
+        return sendCommandAsync("SET_NICKNAME", name);
     }
 
     /**
@@ -185,39 +697,242 @@ public class RemoteAPI {
      *                     detailed information will be displayed depending on the process
      */
     public BufferedImage sendCaptureImageFrame() throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "CAPTURE_VIDEO_FRAME", "");
-        return util.sendPacketAndDeserializeImage(commandPacket, HttpCommunicationUtil.ipAddressOut);
+        return send("CAPTURE_VIDEO_FRAME", "", util::sendPacketAndDeserializeImage);
+    }
+
+    /**
+     * Captures a video frame and decodes it with a reusable decoder, for long running capture loops which should not
+     * allocate a new image per frame. A decoder created with subsampling gives a downscaled preview.
+     * <pre>
+     *     Usage Example:
+     *     FrameDecoder decoder = new FrameDecoder(2);
+     *     BufferedImage preview = api.sendCaptureImageFrame(decoder); // half width and height
+     * </pre>
+     *
+     * @param decoder decoder owned by the calling thread
+     * @return the decoded frame, owned by the decoder and overwritten by its next decode
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process
+     */
+    public BufferedImage sendCaptureImageFrame(FrameDecoder decoder) throws IOException {
+        return send("CAPTURE_VIDEO_FRAME", "", request -> util.sendPacketAndDeserializeImage(request, decoder));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendCaptureImageFrame()}, the image is decoded on the client's executor.
+     *
+     * @return future completed with the captured frame, or exceptionally with an IOException
+     */
+    public CompletableFuture<BufferedImage> sendCaptureImageFrameAsync() {
+        return sendAsync("CAPTURE_VIDEO_FRAME", "", util::sendPacketAndDeserializeImageAsync);
+    }
+
+    /**
+     * Captures a video frame and returns it exactly as encoded by the device (JPEG), without decoding it.
+     * Use this when frames are only archived or forwarded; {@link #decodeImage(ByteBuffer)} gives pixels on demand.
+     *
+     * @return the encoded frame bytes
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process
+     */
+    public ByteBuffer sendCaptureImageFrameBytes() throws IOException {
+        return send("CAPTURE_VIDEO_FRAME", "", util::sendPacketAndReadBytes);
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendCaptureImageFrameBytes()}, the calling thread is not blocked.
+     *
+     * @return future completed with the encoded frame bytes, or exceptionally with an IOException
+     */
+    public CompletableFuture<ByteBuffer> sendCaptureImageFrameBytesAsync() {
+        return sendAsync("CAPTURE_VIDEO_FRAME", "", util::sendPacketAndReadBytesAsync);
+    }
+
+    /**
+     * Captures a video frame and streams the encoded bytes straight into the channel, e.g. a socket or file.
+     * The command policy, circuit breaker and metrics apply as for every other capture. A seekable channel such as
+     * a file is rewound to its starting position and truncated there before a retry; any other channel cannot
+     * take back bytes a failed attempt wrote, so the frame is requested only once.
+     *
+     * @param target channel receiving the JPEG bytes, it is not closed
+     * @return number of bytes written
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process
+     */
+    public long sendCaptureImageFrameTo(WritableByteChannel target) throws IOException {
+        String command = "CAPTURE_VIDEO_FRAME";
+        if (!(target instanceof SeekableByteChannel)) {
+            return send(command, "", runner.getPolicy(command).withMaxAttempts(1), request -> util.sendPacketAndTransfer(request, target));
+        }
+        SeekableByteChannel seekable = (SeekableByteChannel) target;
+        long start = seekable.position();
+        boolean[] attempted = new boolean[1];
+        return send(command, "", runner.getPolicy(command), request -> {
+            if (attempted[0]) {
+                // drop whatever the failed attempt wrote
+                seekable.position(start);
+                seekable.truncate(start);
+            }
+            attempted[0] = true;
+            return util.sendPacketAndTransfer(request, target);
+        });
+    }
+
+    /**
+     * Captures a video frame and writes the original JPEG to disk, without any decode or recompression.
+     *
+     * @param filePath storage path, an existing file is overwritten
+     * @return number of bytes written
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process
+     */
+    public long sendCaptureImageFrameToFile(Path filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return sendCaptureImageFrameTo(channel);
+        }
+    }
+
+    /**
+     * Starts a continuous frame stream which keeps several CAPTURE_VIDEO_FRAME requests in flight.
+     *
+     * @param prefetch      number of capture requests kept in flight, 2-4 is usually enough to hide the round-trip
+     * @param queueCapacity number of frames buffered for the consumer, the oldest frame is dropped when full
+     * @return the running stream, close it to stop capturing
+     */
+    public FrameStream openFrameStream(int prefetch, int queueCapacity) {
+        return openFrameStream(prefetch, queueCapacity, null);
+    }
+
+    /**
+     * Starts a continuous frame stream which keeps several CAPTURE_VIDEO_FRAME requests in flight.
+     *
+     * @param prefetch      number of capture requests kept in flight, 2-4 is usually enough to hide the round-trip
+     * @param queueCapacity number of frames waiting for the listener, the oldest frame is dropped when full
+     * @param listener      callback invoked on the stream's delivery thread for every delivered frame, one at a
+     *                      time, instead of {@link FrameStream#take()}; may be null
+     * @return the running stream, close it to stop capturing
+     */
+    public FrameStream openFrameStream(int prefetch, int queueCapacity, FrameStream.FrameListener listener) {
+        FrameStream stream = new FrameStream(this::sendCaptureImageFrameBytesAsync, prefetch, queueCapacity, listener);
+        stream.start();
+        return stream;
+    }
+
+    /**
+     * Starts running a scan plan on this device, see {@link ScanSession}.
+     *
+     * @param plan     steps to run, copied so the plan can be reused
+     * @param listener callback invoked for every step, may be null
+     * @return the running session, close it to cancel the plan
+     */
+    public ScanSession runScanPlan(ScanPlan plan, ScanSession.SessionListener listener) {
+        ScanSession session = new ScanSession(this, plan, listener);
+        session.start();
+        return session;
     }
 
     /**
      * Uploads the Scan or File to Ninox360 Cloud storage.
      *
      * @param fileName of the file which we are uploading
+     * @return the response of the device
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendUploadScan(String fileName) throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "UPLOAD_REMOTE", fileName);
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public RemoteResponse sendUploadScan(String fileName) throws IOException {
+        return sendCommand("UPLOAD_REMOTE", fileName);
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendUploadScan(String)}, the calling thread is not blocked.
+     *
+     * @param fileName of the file which we are uploading
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendUploadScanAsync(String fileName) {
+        return sendCommandAsync("UPLOAD_REMOTE", fileName);
     }
 
     /**
      * Request that the scanner send over the specified file.
+     * The response is read as a YAML packet; to retrieve the file contents use {@link #downloadFile(String, Path)}.
+     *
+     * @param fileName Filename which we are getting from the server.
+     * @return the response of the device
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process
+     */
+    public RemoteResponse sendGetFile(String fileName) throws IOException {
+        return sendCommand("GET_FILE", fileName);
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #sendGetFile(String)}, the calling thread is not blocked.
+     *
+     * @param fileName Filename which we are getting from the server.
+     * @return future completed with the response, or exceptionally with an IOException
+     */
+    public CompletableFuture<RemoteResponse> sendGetFileAsync(String fileName) {
+        return sendCommandAsync("GET_FILE", fileName);
+    }
+
+    /**
+     * Downloads the specified file from the scanner, streaming it to disk with constant memory use.
      *
      * @param fileName Filename which we are getting from the server.
+     * @param target   local path the file is written to, an existing file is replaced
+     * @return sizes, timing and throughput of the transfer
      * @throws IOException An exception will be thrown if any process fails,
      *                     detailed information will be displayed depending on the process
      */
-    public void sendGetFile(String fileName) throws IOException {
-        String commandPacket = HttpCommunicationUtil.constructPacket("", clientSecret, 0, "GET_FILE", fileName);
-        setResponse(util.sendPacketAndDeserializeYaml(commandPacket, HttpCommunicationUtil.ipAddressOut));
+    public DownloadResult downloadFile(String fileName, Path target) throws IOException {
+        return downloadFile(fileName, target, null);
     }
 
     /**
-     * Disconnect this client from the scanner. Forget the client specific secret.
+     * Downloads the specified file from the scanner, streaming it to disk with constant memory use.
+     * An interrupted download leaves "target.part" behind; calling this again resumes it with an HTTP Range
+     * request when the server supports ranges, otherwise the file is downloaded from the start.
+     * The download goes through the circuit breaker, is retried and re-registers like other commands, but is not
+     * limited by the command deadline since large files may take long to transfer.
+     *
+     * @param fileName Filename which we are getting from the server.
+     * @param target   local path the file is written to, an existing file is replaced
+     * @param listener progress callback, may be null
+     * @return sizes, timing and throughput of the transfer
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process
+     */
+    public DownloadResult downloadFile(String fileName, Path target, TransferListener listener) throws IOException {
+        String command = "GET_FILE";
+        return send(command, fileName, runner.getPolicy(command).withDeadlineMillis(0),
+                request -> util.sendPacketAndDownload(request, target, listener));
+    }
+
+    /**
+     * Disconnect this client from the scanner. Forget the client specific secret, also in the secret store, and the
+     * server secret kept for automatic re-registration.
      */
     public void disconnect() {
+        serverSecret = null;
         clientSecret = "";
+        SecretStore store = secretStore;
+        if (store == null) return;
+        try {
+            store.remove(getIP());
+        } catch (IOException e) {
+            System.err.println("Failed to remove the stored client secret Hit Exception: '" + e + "'");
+        }
+    }
+
+    /**
+     * Releases the pooled connections held by this instance and stops the state poller. The instance can still be
+     * used afterwards, the next command will open a fresh connection.
+     */
+    @Override
+    public void close() {
+        stateCache.stop();
+        util.close();
     }
 
     /**
@@ -238,4 +953,35 @@ public class RemoteAPI {
             throw new IOException("Failed to save the image: " + filePath + " at path: " + file.getAbsolutePath());
         }
     }
+
+    /**
+     * API utility for decoding an encoded frame, e.g. from {@link #sendCaptureImageFrameBytes()}, into pixels.
+     *
+     * @param imageBytes encoded image, the buffer position is left unchanged
+     * @return BufferedImage for further interaction/manipulation
+     * @throws IOException if the bytes are not a valid image
+     */
+    public static BufferedImage decodeImage(ByteBuffer imageBytes) throws IOException {
+        return HttpCommunicationUtil.decodeImage(imageBytes);
+    }
+
+    /**
+     * API utility for saving encoded image bytes to disk as-is, keeping the original JPEG quality.
+     *
+     * @param imageBytes encoded image, the buffer position is left unchanged
+     * @param filePath   storage path, an existing file is overwritten
+     * @throws IOException An exception will be thrown if any process fails,
+     *                     detailed information will be displayed depending on the process + The file data
+     */
+    public static void saveImageBytesToDisk(ByteBuffer imageBytes, String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer view = imageBytes.duplicate();
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        } catch (Exception e) {
+            throw new IOException("Failed to save the image: " + filePath + " at path: " + path.toAbsolutePath(), e);
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package ninox360.util;
+
+/**
+ * Immutable outbound request: the serialized packet together with the endpoint it is sent to.
+ * Created by {@link HttpCommunicationUtil#constructRequest}, safe to share between threads.
+ */
+public final class RemoteRequest {
+    private final String command;
+    private final String url;
+    private final String packet;
+    private final long timeoutMillis;
+
+    /**
+     * @param command action which the packet issues, "REGISTER" for registration packets
+     * @param url     endpoint which the packet is being sent to
+     * @param packet  serialized YAML packet
+     */
+    RemoteRequest(String command, String url, String packet) {
+        this(command, url, packet, 0);
+    }
+
+    /**
+     * @param command       action which the packet issues, "REGISTER" for registration packets
+     * @param url           endpoint which the packet is being sent to
+     * @param packet        serialized YAML packet
+     * @param timeoutMillis limit in milliseconds for the whole call, 0 for the client's default timeouts only
+     */
+    RemoteRequest(String command, String url, String packet, long timeoutMillis) {
+        this.command = command;
+        this.url = url;
+        this.packet = packet;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis limit in milliseconds for the whole call, 0 for the client's default timeouts only
+     * @return a copy of this request with the given call timeout
+     */
+    RemoteRequest withTimeout(long timeoutMillis) {
+        return new RemoteRequest(command, url, packet, timeoutMillis);
+    }
+
+    /**
+     * @return action which the packet issues, "REGISTER" for registration packets
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return endpoint which the packet is being sent to
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return serialized YAML packet
+     */
+    public String getPacket() {
+        return packet;
+    }
+
+    /**
+     * @return limit in milliseconds for the whole call, from connecting to reading the body, 0 if not limited
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteRequest{command='" + command + "', url='" + url + "'}";
+    }
+}
@@ -0,0 +1,109 @@
+package ninox360.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable result of a single command or register request.
+ * Every send method returns its own result, so one RemoteAPI can be shared by several threads without locking.
+ * <pre>
+ *     Usage Example:
+ *     RemoteResponse response = api.sendGetState();
+ *     if (response.getStatus() == ResponseStatus.SUCCESS) {
+ *         System.out.println("State: " + response.getMessage() + " after " + response.getLatencyMillis() + " ms");
+ *     }
+ * </pre>
+ */
+public final class RemoteResponse {
+    private final ResponseStatus status;
+    private final String statusText;
+    private final String message;
+    private final long latencyNanos;
+    private final Map<String, Object> raw;
+
+    /**
+     * @param status  response status string, e.g. "SUCCESS"
+     * @param message response message, e.g. the issued client secret after registration
+     */
+    public RemoteResponse(String status, String message) {
+        this(status, message, 0, null);
+    }
+
+    /**
+     * @param status       response status string, e.g. "SUCCESS"
+     * @param message      response message, e.g. the issued client secret after registration
+     * @param latencyNanos time from sending the request until the response was read, including retries
+     * @param raw          every field of the response packet, copied; null for none
+     */
+    public RemoteResponse(String status, String message, long latencyNanos, Map<String, Object> raw) {
+        this.status = ResponseStatus.of(status);
+        this.statusText = status;
+        this.message = message;
+        this.latencyNanos = latencyNanos;
+        this.raw = raw == null ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(new HashMap<>(raw));
+    }
+
+    /**
+     * Builds the result from the deserialized PacketRemoteResponse map
+     *
+     * @param response     Map of the Response and Message from PacketRemoteResponse
+     * @param latencyNanos time from sending the request until the response was read
+     * @return the immutable result
+     */
+    static RemoteResponse fromMap(Map<String, Object> response, long latencyNanos) {
+        return new RemoteResponse(asString(response.get("response")), asString(response.get("message")), latencyNanos, response);
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return the response status
+     */
+    public ResponseStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the status string as sent by the device, e.g. "SUCCESS"
+     */
+    public String getStatusText() {
+        return statusText;
+    }
+
+    /**
+     * @return the server response message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true when the status reports success
+     */
+    public boolean isSuccess() {
+        return status == ResponseStatus.SUCCESS;
+    }
+
+    /**
+     * @return time from sending the request until the response was read in milliseconds, including retries
+     */
+    public double getLatencyMillis() {
+        return latencyNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return every field of the response packet, unmodifiable
+     */
+    public Map<String, Object> getRaw() {
+        return raw;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteResponse{status='" + statusText + "', message='" + message + "', latencyMillis="
+                + String.format("%.1f", getLatencyMillis()) + "}";
+    }
+}
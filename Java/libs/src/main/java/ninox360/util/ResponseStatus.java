@@ -0,0 +1,28 @@
+package ninox360.util;
+
+/**
+ * Status of a command or register response.
+ */
+public enum ResponseStatus {
+    /**
+     * The device accepted and carried out the request.
+     */
+    SUCCESS,
+    /**
+     * The device answered with any other status, the message describes the reason.
+     */
+    FAILURE,
+    /**
+     * The response carried no status.
+     */
+    UNKNOWN;
+
+    /**
+     * @param status status string of the response packet, e.g. "SUCCESS"
+     * @return the matching status, case is ignored
+     */
+    public static ResponseStatus of(String status) {
+        if (status == null || status.isEmpty()) return UNKNOWN;
+        return "success".equalsIgnoreCase(status) ? SUCCESS : FAILURE;
+    }
+}
@@ -0,0 +1,187 @@
+package ninox360.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Sequence of scan steps run by a {@link ScanSession}: commands to the device, timers and waits for external
+ * triggers such as a crawler reaching its next position. The whole sequence can be repeated, "{n}" in a nickname or
+ * file name is replaced by the number of the current pass, starting at 1.
+ * <pre>
+ *     Usage Example:
+ *     ScanPlan plan = new ScanPlan()
+ *             .awaitTrigger("position")      // crawler reached the next weld
+ *             .startScan()
+ *             .delay(2_500)                  // 2.5 s after the trigger
+ *             .stopScan()
+ *             .setNickname("weld-{n}")
+ *             .uploadScan("weld-{n}")        // runs in the background
+ *             .repeat(40);
+ * </pre>
+ */
+public final class ScanPlan {
+    /**
+     * Kinds of plan steps.
+     */
+    public enum StepType {
+        START_SCAN, STOP_SCAN, SET_NICKNAME, UPLOAD_SCAN, DELAY, AT, AWAIT_TRIGGER
+    }
+
+    /**
+     * Immutable step of a plan.
+     */
+    public static final class Step {
+        private final StepType type;
+        private final String value;
+        private final long millis;
+
+        private Step(StepType type, String value, long millis) {
+            this.type = type;
+            this.value = value;
+            this.millis = millis;
+        }
+
+        /**
+         * @return kind of step
+         */
+        public StepType getType() {
+            return type;
+        }
+
+        /**
+         * @return nickname, file name or trigger name, empty for other steps
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return delay or offset in milliseconds of timer steps, 0 for other steps
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case DELAY:
+                case AT:
+                    return type + "(" + millis + " ms)";
+                case START_SCAN:
+                case STOP_SCAN:
+                    return type.toString();
+                default:
+                    return type + "(" + value + ")";
+            }
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private int repeat = 1;
+
+    /**
+     * Adds a START_SCAN command.
+     *
+     * @return this plan
+     */
+    public ScanPlan startScan() {
+        return add(StepType.START_SCAN, "", 0);
+    }
+
+    /**
+     * Adds a STOP_SCAN command.
+     *
+     * @return this plan
+     */
+    public ScanPlan stopScan() {
+        return add(StepType.STOP_SCAN, "", 0);
+    }
+
+    /**
+     * Adds a SET_NICKNAME command.
+     *
+     * @param name a String to name the Scan file, "{n}" is replaced by the pass number
+     * @return this plan
+     */
+    public ScanPlan setNickname(String name) {
+        return add(StepType.SET_NICKNAME, Objects.requireNonNull(name), 0);
+    }
+
+    /**
+     * Adds an UPLOAD_REMOTE command. The plan continues as soon as the upload is requested, uploads overlap with
+     * the following steps and the session finishes once all of them completed.
+     *
+     * @param fileName of the file which we are uploading, "{n}" is replaced by the pass number
+     * @return this plan
+     */
+    public ScanPlan uploadScan(String fileName) {
+        return add(StepType.UPLOAD_SCAN, Objects.requireNonNull(fileName), 0);
+    }
+
+    /**
+     * Waits a fixed time, measured from the moment the previous timer or trigger step was due rather than from the
+     * end of the previous command, so command round-trips do not add up to drift.
+     *
+     * @param millis delay in milliseconds
+     * @return this plan
+     */
+    public ScanPlan delay(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("millis < 0");
+        return add(StepType.DELAY, "", millis);
+    }
+
+    /**
+     * Waits until a fixed offset from the start of the current pass. A later pass starts at the deadline of the
+     * previous pass' last timer or trigger step, so a plan ending with at(period) repeats at an exact period.
+     *
+     * @param offsetMillis offset in milliseconds from the start of the pass
+     * @return this plan
+     */
+    public ScanPlan at(long offsetMillis) {
+        if (offsetMillis < 0) throw new IllegalArgumentException("offsetMillis < 0");
+        return add(StepType.AT, "", offsetMillis);
+    }
+
+    /**
+     * Waits until {@link ScanSession#trigger(String)} is called with the name. A trigger fired before the session
+     * reaches this step is kept, so an early position signal is not lost.
+     *
+     * @param name trigger name, e.g. "position"
+     * @return this plan
+     */
+    public ScanPlan awaitTrigger(String name) {
+        return add(StepType.AWAIT_TRIGGER, Objects.requireNonNull(name), 0);
+    }
+
+    /**
+     * @param times number of passes through the steps, 1 by default
+     * @return this plan
+     */
+    public ScanPlan repeat(int times) {
+        if (times < 1) throw new IllegalArgumentException("times < 1");
+        this.repeat = times;
+        return this;
+    }
+
+    /**
+     * @return number of passes through the steps
+     */
+    public int getRepeat() {
+        return repeat;
+    }
+
+    /**
+     * @return the steps of one pass, unmodifiable
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    private ScanPlan add(StepType type, String value, long millis) {
+        steps.add(new Step(type, value, millis));
+        return this;
+    }
+}
@@ -0,0 +1,438 @@
+package ninox360.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link ScanPlan} against one device. All steps run on a single event loop thread owned by the session:
+ * timers are scheduled at absolute deadlines instead of sleeping, commands are sent asynchronously and the next
+ * step starts when the response arrives, and uploads run in the background while the plan continues.
+ * <pre>
+ *     Usage Example:
+ *     ScanSession session = api.runScanPlan(plan, null);
+ *     crawler.onPositionReached(() -&gt; session.trigger("position"));
+ *     session.getCompletion().join(); // all passes done and all uploads finished
+ * </pre>
+ * A failed command stops the session, and a scan which may have started is stopped. A failed upload is reported to the listener
+ * and makes the completion fail once the plan has finished.
+ */
+public class ScanSession implements Closeable {
+    /**
+     * Receives step results on the session's event loop thread, implementations should return quickly.
+     */
+    public interface SessionListener {
+        /**
+         * @param pass     pass through the plan, starting at 1
+         * @param step     completed step
+         * @param response response of the device, null for timer and trigger steps
+         */
+        void onStep(int pass, ScanPlan.Step step, RemoteResponse response);
+
+        /**
+         * @param pass  pass through the plan, starting at 1
+         * @param step  failed step
+         * @param error failure of the command, or the rejected response as an IOException
+         */
+        default void onStepFailed(int pass, ScanPlan.Step step, Throwable error) {
+        }
+    }
+
+    private final RemoteAPI api;
+    private final List<ScanPlan.Step> steps;
+    private final int repeat;
+    private final SessionListener listener;
+    private final ScheduledExecutorService loop;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final Set<CompletableFuture<RemoteResponse>> uploads = ConcurrentHashMap.newKeySet();
+    private final AtomicLong uploadFailures = new AtomicLong();
+    private final AtomicLong maxLatenessNanos = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+
+    // event loop state, only touched on the loop thread
+    private final Map<String, Integer> pendingTriggers = new HashMap<>();
+    private int pass = 1;
+    private int index;
+    private long passStartNanos;
+    private long lastDueNanos;
+    private String awaitedTrigger;
+    private boolean scanning;
+    private boolean finished;
+    private Future<?> scheduled;
+    private CompletableFuture<RemoteResponse> inFlight;
+
+    /**
+     * @param api      device the plan runs on
+     * @param plan     steps to run, copied so the plan can be reused
+     * @param listener optional callback for every step, may be null
+     */
+    ScanSession(RemoteAPI api, ScanPlan plan, SessionListener listener) {
+        this.api = api;
+        this.steps = new ArrayList<>(plan.getSteps());
+        this.repeat = plan.getRepeat();
+        this.listener = listener;
+        this.loop = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scan-session-" + api.getIP());
+            thread.setDaemon(true);
+            return thread;
+        });
+        completion.whenComplete((result, error) -> {
+            if (completion.isCancelled()) cancel();
+        });
+    }
+
+    /**
+     * Starts the first pass on the event loop.
+     */
+    void start() {
+        loop.execute(() -> {
+            passStartNanos = System.nanoTime();
+            lastDueNanos = passStartNanos;
+            runNext();
+        });
+    }
+
+    /**
+     * Signals an external event, e.g. a crawler reaching its next position. It releases the session if it waits
+     * for this trigger, otherwise it is kept for the next step waiting for it. Safe to call from any thread.
+     *
+     * @param name trigger name used in {@link ScanPlan#awaitTrigger(String)}
+     */
+    public void trigger(String name) {
+        long firedNanos = System.nanoTime();
+        execute(() -> {
+            if (finished) return;
+            if (name.equals(awaitedTrigger)) {
+                awaitedTrigger = null;
+                lastDueNanos = firedNanos;
+                completeStep(null);
+            } else {
+                pendingTriggers.merge(name, 1, Integer::sum);
+            }
+        });
+    }
+
+    /**
+     * @return future completed when every pass and every upload has finished, or exceptionally with the first
+     * failure; cancelling it cancels the session
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * @return true once the session has finished, failed or been cancelled
+     */
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * @return number of uploads still running, including those requested before the session was cancelled or failed
+     */
+    public int getPendingUploadCount() {
+        return uploads.size();
+    }
+
+    /**
+     * @return number of uploads which failed
+     */
+    public long getUploadFailureCount() {
+        return uploadFailures.get();
+    }
+
+    /**
+     * @return largest delay in milliseconds of a scheduled timer step behind its deadline, a measure of timing
+     * accuracy; steps reached after their deadline are counted by {@link #getOverrunCount()} instead
+     */
+    public double getMaxLatenessMillis() {
+        return maxLatenessNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return number of timer steps whose deadline had already passed when the plan reached them, because the
+     * commands before them took longer than the plan allowed
+     */
+    public long getOverrunCount() {
+        return overruns.get();
+    }
+
+    /**
+     * Runs steps until one has to wait for a timer, a trigger or a response.
+     */
+    private void runNext() {
+        while (!finished) {
+            if (index == steps.size()) {
+                if (pass == repeat) {
+                    finishPlan();
+                    return;
+                }
+                pass++;
+                index = 0;
+                passStartNanos = lastDueNanos;
+            }
+
+            ScanPlan.Step step = steps.get(index);
+            switch (step.getType()) {
+                case DELAY:
+                    if (schedule(lastDueNanos + TimeUnit.MILLISECONDS.toNanos(step.getMillis()))) return;
+                    break;
+                case AT:
+                    if (schedule(passStartNanos + TimeUnit.MILLISECONDS.toNanos(step.getMillis()))) return;
+                    break;
+                case AWAIT_TRIGGER:
+                    Integer pending = pendingTriggers.get(step.getValue());
+                    if (pending == null) {
+                        awaitedTrigger = step.getValue();
+                        return;
+                    }
+                    if (pending == 1) pendingTriggers.remove(step.getValue());
+                    else pendingTriggers.put(step.getValue(), pending - 1);
+                    lastDueNanos = System.nanoTime();
+                    break;
+                case UPLOAD_SCAN:
+                    upload(step);
+                    break;
+                default:
+                    send(step);
+                    return;
+            }
+            advance(null);
+        }
+    }
+
+    /**
+     * Schedules the current timer step at an absolute deadline.
+     *
+     * @param dueNanos System.nanoTime() at which the step is due
+     * @return true when the step was scheduled, false when the deadline has already passed
+     */
+    private boolean schedule(long dueNanos) {
+        lastDueNanos = dueNanos;
+        long delayNanos = dueNanos - System.nanoTime();
+        if (delayNanos <= 0) {
+            overruns.incrementAndGet();
+            return false;
+        }
+        scheduled = loop.schedule(() -> {
+            scheduled = null;
+            maxLatenessNanos.accumulateAndGet(System.nanoTime() - dueNanos, Math::max);
+            completeStep(null);
+        }, delayNanos, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /**
+     * Sends the command of the current step, the next step runs when its response arrives.
+     *
+     * @param step command step
+     */
+    private void send(ScanPlan.Step step) {
+        // a START_SCAN which times out or is cancelled may still have started the scan, so it is stopped on abort
+        if (step.getType() == ScanPlan.StepType.START_SCAN) scanning = true;
+        CompletableFuture<RemoteResponse> future = command(step);
+        inFlight = future;
+        future.whenCompleteAsync((response, error) -> {
+            inFlight = null;
+            if (finished) return;
+            if (error == null && !response.isSuccess()) {
+                error = new IOException(step + " rejected: " + response.getMessage());
+            }
+            if (error != null) {
+                fail(step, unwrap(error));
+                return;
+            }
+            if (step.getType() == ScanPlan.StepType.STOP_SCAN) scanning = false;
+            completeStep(response);
+        }, loop);
+    }
+
+    /**
+     * @param step command step
+     * @return the asynchronous command
+     */
+    private CompletableFuture<RemoteResponse> command(ScanPlan.Step step) {
+        switch (step.getType()) {
+            case START_SCAN:
+                return api.sendStartScanAsync();
+            case STOP_SCAN:
+                return api.sendStopScanAsync();
+            case SET_NICKNAME:
+                return api.sendSetNicknameAsync(expand(step.getValue()));
+            default:
+                throw new IllegalStateException("Not a command step: " + step);
+        }
+    }
+
+    /**
+     * Requests an upload without waiting for it, its result is reported when it arrives.
+     *
+     * @param step upload step
+     */
+    private void upload(ScanPlan.Step step) {
+        int uploadPass = pass;
+        CompletableFuture<RemoteResponse> future = api.sendUploadScanAsync(expand(step.getValue()));
+        uploads.add(future);
+        future.whenComplete((response, error) -> {
+            Throwable failure = error != null ? unwrap(error)
+                    : response.isSuccess() ? null : new IOException(step + " rejected: " + response.getMessage());
+            try {
+                loop.execute(() -> {
+                    uploads.remove(future);
+                    if (failure != null) {
+                        uploadFailures.incrementAndGet();
+                        notifyFailed(uploadPass, step, failure);
+                    } else {
+                        notifyStep(uploadPass, step, response);
+                    }
+                    if (finished && !completion.isDone() && uploads.isEmpty()) completeSession();
+                });
+            } catch (RejectedExecutionException e) {
+                // the session was cancelled or failed, keep the counts right without the listener
+                uploads.remove(future);
+                if (failure != null) {
+                    uploadFailures.incrementAndGet();
+                    System.err.println("Scan step " + step + " FAILED Hit Exception: '" + failure + "'");
+                }
+            }
+        });
+    }
+
+    /**
+     * Completes the step the session was waiting for and runs the following steps.
+     *
+     * @param response response of a command step, null otherwise
+     */
+    private void completeStep(RemoteResponse response) {
+        advance(response);
+        runNext();
+    }
+
+    /**
+     * Reports the current step and moves the position to the next one.
+     *
+     * @param response response of a command step, null otherwise
+     */
+    private void advance(RemoteResponse response) {
+        ScanPlan.Step step = steps.get(index);
+        if (step.getType() != ScanPlan.StepType.UPLOAD_SCAN) notifyStep(pass, step, response);
+        index++;
+    }
+
+    /**
+     * Marks the plan as finished, the session completes once the remaining uploads are done.
+     */
+    private void finishPlan() {
+        finished = true;
+        if (uploads.isEmpty()) completeSession();
+    }
+
+    private void completeSession() {
+        if (uploadFailures.get() > 0) {
+            completion.completeExceptionally(new IOException(uploadFailures.get() + " upload(s) failed"));
+        } else {
+            completion.complete(null);
+        }
+        loop.shutdown();
+    }
+
+    /**
+     * Stops the session after a failed command, stopping a running scan.
+     *
+     * @param step  failed step
+     * @param error failure
+     */
+    private void fail(ScanPlan.Step step, Throwable error) {
+        notifyFailed(pass, step, error);
+        abort(new IOException("Pass " + pass + ", " + step + " failed: " + error.getMessage(), error));
+    }
+
+    private void abort(Throwable reason) {
+        if (finished && completion.isDone()) return;
+        finished = true;
+        if (scheduled != null) scheduled.cancel(false);
+        if (inFlight != null) inFlight.cancel(true);
+        if (scanning) {
+            scanning = false;
+            api.sendStopScanAsync();
+        }
+        if (reason instanceof CancellationException) {
+            completion.cancel(false);
+        } else {
+            completion.completeExceptionally(reason);
+        }
+        loop.shutdown();
+    }
+
+    private void notifyStep(int stepPass, ScanPlan.Step step, RemoteResponse response) {
+        if (listener == null) return;
+        try {
+            listener.onStep(stepPass, step, response);
+        } catch (RuntimeException e) {
+            System.err.println("Scan session listener failed Hit Exception: '" + e + "'");
+        }
+    }
+
+    private void notifyFailed(int stepPass, ScanPlan.Step step, Throwable error) {
+        System.err.println("Scan step " + step + " FAILED Hit Exception: '" + error + "'");
+        if (listener == null) return;
+        try {
+            listener.onStepFailed(stepPass, step, error);
+        } catch (RuntimeException e) {
+            System.err.println("Scan session listener failed Hit Exception: '" + e + "'");
+        }
+    }
+
+    /**
+     * @param value nickname or file name
+     * @return the value with "{n}" replaced by the current pass number
+     */
+    private String expand(String value) {
+        return value.replace("{n}", Integer.toString(pass));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Runs a task on the event loop, ignored once the loop has shut down.
+     */
+    private void execute(Runnable task) {
+        try {
+            loop.execute(task);
+        } catch (RejectedExecutionException e) {
+            // the session has already ended
+        }
+    }
+
+    /**
+     * Cancels the session: pending timers and commands are cancelled and a running scan is stopped.
+     * Uploads already requested keep running on the device.
+     */
+    public void cancel() {
+        execute(() -> abort(new CancellationException("Scan session cancelled")));
+    }
+
+    /**
+     * Same as {@link #cancel()}.
+     */
+    @Override
+    public void close() {
+        cancel();
+    }
+}
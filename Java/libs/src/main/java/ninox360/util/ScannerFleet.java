@@ -0,0 +1,340 @@
+package ninox360.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controls several Surface Inspector devices at once. Every device keeps its own {@link RemoteAPI} and client secret,
+ * commands are fanned out on a bounded worker pool and each device gets the same timeout, so one slow or unreachable
+ * unit never holds up the results of the others.
+ * <pre>
+ *     Usage Example:
+ *     try (ScannerFleet fleet = new ScannerFleet()) {
+ *         fleet.addDevice("https://10.0.0.11:3003", "9n0SQ");
+ *         fleet.addDevice("https://10.0.0.12:3003", "Xk2LP");
+ *         fleet.registerAll();
+ *
+ *         fleet.setCameraExposure(10_000_000);
+ *         for (DeviceResult&lt;RemoteResponse&gt; state : fleet.getState().values()) {
+ *             System.out.println(state);
+ *         }
+ *     }
+ * </pre>
+ */
+public class ScannerFleet implements Closeable {
+    /**
+     * A command issued to a single device.
+     *
+     * @param <T> value returned by the command
+     */
+    @FunctionalInterface
+    public interface DeviceCommand<T> {
+        /**
+         * @param device API of the device the command is sent to
+         * @return future completed with the command result
+         */
+        CompletableFuture<T> send(RemoteAPI device);
+    }
+
+    private final HttpClientConfig config;
+    private final long timeoutMillis;
+    private final ExecutorService workers;
+    private final Map<String, RemoteAPI> devices = new LinkedHashMap<>();
+    private final Map<String, String> serverSecrets = new LinkedHashMap<>();
+
+    /**
+     * Creates a fleet with 16 workers, a 5 second timeout per device and the default connection settings.
+     */
+    public ScannerFleet() {
+        this(new HttpClientConfig(), 16, 5_000L);
+    }
+
+    /**
+     * @param config        client settings used for every device
+     * @param parallelism   number of devices contacted at the same time
+     * @param timeoutMillis time in milliseconds each device has to answer a command
+     */
+    public ScannerFleet(HttpClientConfig config, int parallelism, long timeoutMillis) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1");
+        if (timeoutMillis <= 0) throw new IllegalArgumentException("timeoutMillis <= 0");
+        this.config = Objects.requireNonNull(config);
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "ScannerFleet-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a device to the fleet, it is contacted once {@link #registerAll()} is called.
+     *
+     * @param ip           address representing the scanner server, also used to identify the device
+     * @param serverSecret Generated key found in the "Remote Control" feature of the device
+     * @return the API of the device, for commands addressed to this device only
+     */
+    public synchronized RemoteAPI addDevice(String ip, String serverSecret) {
+        if (devices.containsKey(ip)) throw new IllegalArgumentException("Device already added: " + ip);
+        RemoteAPI api = new RemoteAPI(config);
+        api.setIP(ip);
+        devices.put(ip, api);
+        serverSecrets.put(ip, Objects.requireNonNull(serverSecret));
+        return api;
+    }
+
+    /**
+     * Removes a device from the fleet and closes its connections.
+     *
+     * @param ip address the device was added with
+     */
+    public void removeDevice(String ip) {
+        RemoteAPI api;
+        synchronized (this) {
+            api = devices.remove(ip);
+            serverSecrets.remove(ip);
+        }
+        if (api != null) api.close();
+    }
+
+    /**
+     * @param ip address the device was added with
+     * @return the API of the device, or null if it is not part of the fleet
+     */
+    public synchronized RemoteAPI getDevice(String ip) {
+        return devices.get(ip);
+    }
+
+    /**
+     * @return addresses of all devices, in the order they were added
+     */
+    public synchronized List<String> getDevices() {
+        return new ArrayList<>(devices.keySet());
+    }
+
+    /**
+     * Registers every device in parallel, each with its own server secret.
+     *
+     * @return register response of each device
+     */
+    public Map<String, DeviceResult<RemoteResponse>> registerAll() {
+        Map<String, String> secrets;
+        synchronized (this) {
+            secrets = new LinkedHashMap<>(serverSecrets);
+        }
+        return broadcast(secrets.keySet(), device -> device.sendRegisterAsync(secrets.get(device.getIP())));
+    }
+
+    /**
+     * Starts scanning on every device.
+     *
+     * @return response of each device
+     */
+    public Map<String, DeviceResult<RemoteResponse>> startScan() {
+        return broadcast(RemoteAPI::sendStartScanAsync);
+    }
+
+    /**
+     * Stops scanning on every device.
+     *
+     * @return response of each device
+     */
+    public Map<String, DeviceResult<RemoteResponse>> stopScan() {
+        return broadcast(RemoteAPI::sendStopScanAsync);
+    }
+
+    /**
+     * Requests the scanner state of every device.
+     *
+     * @return response of each device, the state is the response message
+     */
+    public Map<String, DeviceResult<RemoteResponse>> getState() {
+        return broadcast(RemoteAPI::sendGetStateAsync);
+    }
+
+    /**
+     * Sets the camera exposure on every device.
+     *
+     * @param exposure_ns Exposure time in nanoseconds
+     * @return response of each device
+     */
+    public Map<String, DeviceResult<RemoteResponse>> setCameraExposure(long exposure_ns) {
+        return broadcast(device -> device.sendSetCameraExposureAsync(exposure_ns));
+    }
+
+    /**
+     * Sends a command to every device.
+     *
+     * @param command command issued to each device
+     * @param <T>     value returned by the command
+     * @return result of each device, in the order the devices were added
+     */
+    public <T> Map<String, DeviceResult<T>> broadcast(DeviceCommand<T> command) {
+        return broadcast(getDevices(), command);
+    }
+
+    /**
+     * Sends a command to some of the devices. Blocks until every device has answered or run out of time;
+     * a device which times out has its request cancelled and reports an error.
+     * <pre>
+     *     Usage Example:
+     *     Map&lt;String, DeviceResult&lt;RemoteResponse&gt;&gt; results =
+     *             fleet.broadcast(Arrays.asList(lineA, lineB), device -&gt; device.sendSetCameraSensitivityAsync(400));
+     * </pre>
+     *
+     * @param targets addresses of the devices to contact
+     * @param command command issued to each device
+     * @param <T>     value returned by the command
+     * @return result of each device, in the order of the targets
+     */
+    public <T> Map<String, DeviceResult<T>> broadcast(Collection<String> targets, DeviceCommand<T> command) {
+        List<DeviceTask<T>> tasks = new ArrayList<>(targets.size());
+        synchronized (this) {
+            for (String ip : targets) {
+                RemoteAPI api = devices.get(ip);
+                if (api == null) throw new IllegalArgumentException("Unknown device: " + ip);
+                tasks.add(new DeviceTask<>(ip, api, command, timeoutMillis));
+            }
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (DeviceTask<T> task : tasks) {
+            futures.add(workers.submit(task));
+        }
+
+        Map<String, DeviceResult<T>> results = new LinkedHashMap<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            DeviceTask<T> task = tasks.get(i);
+            results.put(task.ip, await(task, futures.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Sends a command to some of the devices.
+     *
+     * @param command command issued to each device
+     * @param targets addresses of the devices to contact
+     * @param <T>     value returned by the command
+     * @return result of each device, in the order of the targets
+     */
+    public <T> Map<String, DeviceResult<T>> broadcast(DeviceCommand<T> command, String... targets) {
+        return broadcast(Arrays.asList(targets), command);
+    }
+
+    /**
+     * Waits for a single device. Each task enforces its own deadline on its worker, so waiting in order does not
+     * delay the cancellation of any device.
+     *
+     * @param task   the device command
+     * @param future the submitted task
+     * @param <T>    value returned by the command
+     * @return the device result
+     */
+    private <T> DeviceResult<T> await(DeviceTask<T> task, Future<T> future) {
+        try {
+            T value = future.get();
+            return new DeviceResult<>(task.ip, value, null, task.elapsedNanos(), false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            IOException error = cause instanceof IOException ? (IOException) cause : new IOException("Command failed on device " + task.ip, cause);
+            return new DeviceResult<>(task.ip, null, error, task.elapsedNanos(), task.timedOut);
+        } catch (CancellationException e) {
+            return new DeviceResult<>(task.ip, null, new IOException("Command cancelled on device " + task.ip), task.elapsedNanos(), false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new DeviceResult<>(task.ip, null, new IOException("Interrupted while waiting for device " + task.ip), task.elapsedNanos(), false);
+        }
+    }
+
+    /**
+     * Stops the workers and closes the connections of every device.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        List<RemoteAPI> apis;
+        synchronized (this) {
+            apis = new ArrayList<>(devices.values());
+            devices.clear();
+            serverSecrets.clear();
+        }
+        for (RemoteAPI api : apis) {
+            api.close();
+        }
+    }
+
+    /**
+     * Runs a command on one device from a worker thread, holding the worker until the device answers or its
+     * deadline passes, so the number of devices contacted at once stays bounded. The deadline is measured from the
+     * moment a worker starts on the device; a device still queued behind others has not used any of its time.
+     *
+     * @param <T> value returned by the command
+     */
+    private static final class DeviceTask<T> implements Callable<T> {
+        private final String ip;
+        private final RemoteAPI api;
+        private final DeviceCommand<T> command;
+        private final long timeoutMillis;
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private volatile boolean timedOut;
+
+        DeviceTask(String ip, RemoteAPI api, DeviceCommand<T> command, long timeoutMillis) {
+            this.ip = ip;
+            this.api = api;
+            this.command = command;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public T call() throws Exception {
+            long now = System.nanoTime();
+            startNanos = now == 0 ? 1 : now;
+            CompletableFuture<T> result = command.send(api);
+            try {
+                return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                timedOut = true;
+                result.cancel(true);
+                throw new IOException("Device " + ip + " did not respond within " + timeoutMillis + " ms");
+            } catch (InterruptedException e) {
+                // cancelling the future cancels the underlying call
+                result.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } finally {
+                endNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * @return time the command has been running, or ran, on the device
+         */
+        long elapsedNanos() {
+            long start = startNanos;
+            if (start == 0) return 0;
+            long end = endNanos;
+            return (end != 0 ? end : System.nanoTime()) - start;
+        }
+    }
+}
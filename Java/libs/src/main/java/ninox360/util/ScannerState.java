@@ -0,0 +1,66 @@
+package ninox360.util;
+
+import java.util.Objects;
+
+/**
+ * Last known scanner state held by a {@link StateCache}, together with the time it was received.
+ */
+public final class ScannerState {
+    private final String status;
+    private final String message;
+    private final long receivedAtMillis;
+    private final long receivedAtNanos;
+
+    /**
+     * @param response         GET_STATE response
+     * @param receivedAtMillis wall clock time the response was received
+     * @param receivedAtNanos  monotonic time the response was received
+     */
+    ScannerState(RemoteResponse response, long receivedAtMillis, long receivedAtNanos) {
+        this.status = response.getStatusText();
+        this.message = response.getMessage();
+        this.receivedAtMillis = receivedAtMillis;
+        this.receivedAtNanos = receivedAtNanos;
+    }
+
+    /**
+     * @return response status of the GET_STATE request, e.g. "SUCCESS"
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return scanner state reported by the device
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return wall clock time in milliseconds at which the state was received
+     */
+    public long getReceivedAtMillis() {
+        return receivedAtMillis;
+    }
+
+    /**
+     * @return time in milliseconds since the state was received
+     */
+    public double getAgeMillis() {
+        return (System.nanoTime() - receivedAtNanos) / 1_000_000.0;
+    }
+
+    /**
+     * @param other state to compare with, may be null
+     * @return true when both the status and the message are the same
+     */
+    public boolean sameAs(ScannerState other) {
+        return other != null && Objects.equals(status, other.status) && Objects.equals(message, other.message);
+    }
+
+    @Override
+    public String toString() {
+        return "ScannerState{status=" + status + ", message=" + message + ", ageMillis=" + String.format("%.0f", getAgeMillis()) + "}";
+    }
+}
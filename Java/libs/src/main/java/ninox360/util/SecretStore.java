@@ -0,0 +1,107 @@
+package ninox360.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Keeps the client secret issued to each device in a local properties file, so a restarted process can send
+ * commands right away instead of registering again. The file is rewritten atomically on every change and, where
+ * the file system supports it, is readable by the owner only.
+ * <pre>
+ *     Usage Example:
+ *     RemoteAPI api = new RemoteAPI();
+ *     api.setIP("https://192.168.1.20:3003");
+ *     api.setSecretStore(new SecretStore(Paths.get("client-secrets.properties")));
+ *     api.connect(serverSecret); // registers only when no valid secret is stored
+ * </pre>
+ * One store can be shared by several RemoteAPI instances, secrets are keyed by the device address.
+ */
+public class SecretStore {
+    private final Path file;
+    private final Properties secrets = new Properties();
+
+    /**
+     * @param file properties file holding the secrets, loaded if it exists
+     * @throws IOException if the existing file cannot be read
+     */
+    public SecretStore(Path file) throws IOException {
+        this.file = Objects.requireNonNull(file);
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                secrets.load(in);
+            }
+        }
+    }
+
+    /**
+     * @param device device address, e.g. "https://192.168.1.20:3003"
+     * @return the stored client secret, or null
+     */
+    public synchronized String get(String device) {
+        return secrets.getProperty(device);
+    }
+
+    /**
+     * Stores the client secret of a device and writes the file.
+     *
+     * @param device       device address
+     * @param clientSecret secret issued by the device
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void put(String device, String clientSecret) throws IOException {
+        if (clientSecret.equals(secrets.getProperty(device))) return;
+        secrets.setProperty(device, clientSecret);
+        save();
+    }
+
+    /**
+     * Forgets the client secret of a device and writes the file.
+     *
+     * @param device device address
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void remove(String device) throws IOException {
+        if (secrets.remove(device) != null) save();
+    }
+
+    /**
+     * @return the properties file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the secrets to a temporary file and moves it over the previous one.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        try {
+            Files.createFile(temporary, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, the default permissions apply
+            Files.createFile(temporary);
+        }
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            secrets.store(out, "Surface Inspector client secrets");
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package ninox360.util;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Last known scanner state of a {@link RemoteAPI}, kept fresh by an optional background poller.
+ * Reading the cache never touches the network and never blocks. The poller asks quickly while a scan is running
+ * or shortly after the state changed, and slowly while the device is idle. Every GET_STATE response received
+ * through the API, polled or not, refreshes the cache. Responses are ordered by the time their request was sent,
+ * so an answer overtaken by the answer to a later request is discarded instead of rolling the state back.
+ * <pre>
+ *     Usage Example:
+ *     StateCache cache = api.getStateCache();
+ *     cache.addListener((previous, current) -&gt; System.out.println("State: " + current.getMessage()));
+ *     cache.start(200, 5_000);
+ *
+ *     ScannerState state = cache.get();
+ *     if (state != null &amp;&amp; state.getAgeMillis() &lt; 1_000) decide(state.getMessage());
+ * </pre>
+ */
+public class StateCache {
+    /**
+     * Number of fast polls made after a state change before the poller slows down again.
+     */
+    static final int FAST_POLLS_AFTER_CHANGE = 10;
+
+    /**
+     * Called when the response status or message changed, on the thread which received the new state or on one still
+     * notifying an earlier change. Listeners are called one state at a time, in the order the states were
+     * requested, and without any lock of the cache held, so they may send requests themselves.
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        /**
+         * @param previous state before the change, null for the first state received
+         * @param current  newly received state
+         */
+        void onStateChanged(ScannerState previous, ScannerState current);
+    }
+
+    private final Supplier<CompletableFuture<RemoteResponse>> fetch;
+    private final Object updateLock = new Object();
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<ScannerState[]> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingNotifications = new AtomicInteger();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong pollErrors = new AtomicLong();
+    private final AtomicLong staleResponses = new AtomicLong();
+
+    private volatile ScannerState state;
+    private long stateSentAtNanos;
+
+    private volatile boolean scanning;
+    private volatile long lastChangeNanos;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> pending;
+    private boolean pollInFlight;
+    private long fastIntervalMillis;
+    private long slowIntervalMillis;
+
+    /**
+     * @param fetch issues one GET_STATE request without updating the cache
+     */
+    StateCache(Supplier<CompletableFuture<RemoteResponse>> fetch) {
+        this.fetch = fetch;
+    }
+
+    /**
+     * @return the last known state, or null if no state has been received yet
+     */
+    public ScannerState get() {
+        return state;
+    }
+
+    /**
+     * Starts polling the device in the background, restarting with the new intervals if already running.
+     *
+     * @param fastIntervalMillis poll interval in milliseconds while scanning or right after a state change
+     * @param slowIntervalMillis poll interval in milliseconds while idle
+     */
+    public synchronized void start(long fastIntervalMillis, long slowIntervalMillis) {
+        if (fastIntervalMillis <= 0) throw new IllegalArgumentException("fastIntervalMillis <= 0");
+        if (slowIntervalMillis < fastIntervalMillis) throw new IllegalArgumentException("slowIntervalMillis < fastIntervalMillis");
+        this.fastIntervalMillis = fastIntervalMillis;
+        this.slowIntervalMillis = slowIntervalMillis;
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "StateCache-poller");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        reschedule(0);
+    }
+
+    /**
+     * Stops the background poller, the cache keeps its last state and is still refreshed by explicit requests.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        if (pending != null) pending.cancel(false);
+        pending = null;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * @return true while the background poller is running
+     */
+    public synchronized boolean isPolling() {
+        return scheduler != null;
+    }
+
+    /**
+     * @param listener callback for state changes
+     */
+    public void addListener(StateListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * @param listener previously registered callback
+     */
+    public void removeListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return number of background polls made
+     */
+    public long getPollCount() {
+        return polls.get();
+    }
+
+    /**
+     * @return number of background polls which failed, the cached state is kept when a poll fails
+     */
+    public long getPollErrorCount() {
+        return pollErrors.get();
+    }
+
+    /**
+     * @return number of responses discarded because the answer to a later request had already arrived
+     */
+    public long getStaleResponseCount() {
+        return staleResponses.get();
+    }
+
+    /**
+     * Marks whether a scan is running, a running scan keeps the poller at its fast interval.
+     *
+     * @param scanning true once a scan started, false once it stopped
+     */
+    void setScanning(boolean scanning) {
+        boolean changed = this.scanning != scanning;
+        this.scanning = scanning;
+        if (changed && scanning) wake();
+    }
+
+    /**
+     * Stores a freshly received state and notifies the listeners if it differs from the previous one.
+     * A response to a request sent before the request of the cached state is older than the cached state and is
+     * ignored. Changes are queued under the lock, in request order, and the listeners are called after it is
+     * released by whichever thread finds no other one notifying.
+     *
+     * @param response    GET_STATE response
+     * @param sentAtNanos System.nanoTime() at which the request was sent
+     */
+    void update(RemoteResponse response, long sentAtNanos) {
+        ScannerState previous;
+        ScannerState current;
+        synchronized (updateLock) {
+            previous = state;
+            if (previous != null && sentAtNanos - stateSentAtNanos < 0) {
+                staleResponses.incrementAndGet();
+                return;
+            }
+            long now = System.nanoTime();
+            current = new ScannerState(response, System.currentTimeMillis(), now);
+            state = current;
+            stateSentAtNanos = sentAtNanos;
+            if (current.sameAs(previous)) return;
+
+            lastChangeNanos = now;
+            pendingChanges.add(new ScannerState[]{previous, current});
+        }
+        notifyListeners();
+        if (previous != null) wake();
+    }
+
+    /**
+     * Calls the listeners for the queued changes unless another thread is already doing so, in which case that
+     * thread also takes the changes queued meanwhile.
+     */
+    private void notifyListeners() {
+        if (pendingNotifications.getAndIncrement() != 0) return;
+        do {
+            ScannerState[] change = pendingChanges.poll();
+            for (StateListener listener : listeners) {
+                try {
+                    listener.onStateChanged(change[0], change[1]);
+                } catch (RuntimeException e) {
+                    System.err.println("State listener failed Hit Exception: '" + e + "'");
+                }
+            }
+        } while (pendingNotifications.decrementAndGet() != 0);
+    }
+
+    /**
+     * @return the interval to wait before the next poll
+     */
+    private long nextIntervalMillis() {
+        if (scanning) return fastIntervalMillis;
+        long sinceChange = System.nanoTime() - lastChangeNanos;
+        boolean recentChange = lastChangeNanos != 0 && sinceChange < TimeUnit.MILLISECONDS.toNanos(fastIntervalMillis * FAST_POLLS_AFTER_CHANGE);
+        return recentChange ? fastIntervalMillis : slowIntervalMillis;
+    }
+
+    /**
+     * Brings the next poll forward when the poller is waiting on its slow interval.
+     */
+    private synchronized void wake() {
+        if (scheduler == null || pollInFlight || pending == null) return;
+        if (pending.getDelay(TimeUnit.MILLISECONDS) > fastIntervalMillis) reschedule(fastIntervalMillis);
+    }
+
+    /**
+     * @param delayMillis time until the next poll
+     */
+    private synchronized void reschedule(long delayMillis) {
+        if (pending != null) pending.cancel(false);
+        pending = scheduler.schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Issues one poll, the next one is scheduled when it completes so only one poll is ever in flight.
+     */
+    private void poll() {
+        synchronized (this) {
+            if (scheduler == null || pollInFlight) return;
+            pollInFlight = true;
+            pending = null;
+        }
+        polls.incrementAndGet();
+        long sentAtNanos = System.nanoTime();
+        CompletableFuture<RemoteResponse> request;
+        try {
+            request = fetch.get();
+        } catch (RuntimeException e) {
+            request = new CompletableFuture<>();
+            request.completeExceptionally(e);
+        }
+        request.whenComplete((response, error) -> {
+            if (error != null) {
+                pollErrors.incrementAndGet();
+            } else {
+                update(response, sentAtNanos);
+            }
+            synchronized (this) {
+                pollInFlight = false;
+                if (scheduler != null) reschedule(error != null ? slowIntervalMillis : nextIntervalMillis());
+            }
+        });
+    }
+}
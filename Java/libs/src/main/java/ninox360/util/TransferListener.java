@@ -0,0 +1,30 @@
+package ninox360.util;
+
+/**
+ * Receives periodic progress updates while a file is being transferred.
+ * <pre>
+ *     Usage Example:
+ *     api.downloadFile("scan_0001.zip", Paths.get("scans/scan_0001.zip"),
+ *             (transferred, total, bytesPerSecond) -&gt; System.out.println(transferred + "/" + total));
+ * </pre>
+ */
+@FunctionalInterface
+public interface TransferListener {
+    /**
+     * Called from the transferring thread, implementations should return quickly.
+     *
+     * @param bytesTransferred bytes of the file present locally so far, including any resumed part
+     * @param totalBytes       expected size of the file, -1 when the server did not report it
+     * @param bytesPerSecond   average throughput of the current transfer
+     */
+    void onProgress(long bytesTransferred, long totalBytes, double bytesPerSecond);
+
+    /**
+     * Called before a download starts writing the file, again if it has to start over. Lets a listener tell the
+     * bytes received now from the resumed part, which {@link #onProgress(long, long, double)} includes.
+     *
+     * @param resumedBytes bytes of the file already present locally from an earlier transfer, 0 when starting over
+     */
+    default void onStart(long resumedBytes) {
+    }
+}
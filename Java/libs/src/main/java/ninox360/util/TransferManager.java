@@ -0,0 +1,617 @@
+package ninox360.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Moves many scan files with bounded concurrency, per device and across all devices. Smaller files are started
+ * first so finished files pile up quickly, and every queued and finished transfer is written to an append-only
+ * journal. A restarted process re-adds its transfers (or calls {@link #loadPending(Function)}) and only the ones
+ * not finished yet are run; interrupted downloads continue from their partial file. The journal is compacted when
+ * it is opened: finished transfers are only kept while transfers of the same batch are still unfinished.
+ * Download bytes are measured as they arrive, the resumed part of a download is not counted again. An upload is
+ * carried out by the device itself, so its bytes are only the size hint it was queued with and are reported apart
+ * from the measured download bytes.
+ * <pre>
+ *     Usage Example:
+ *     try (TransferManager transfers = new TransferManager(Paths.get("transfers.journal"), 8, 2)) {
+ *         for (String scan : scanNames) {
+ *             transfers.addDownload(api, scan, -1, Paths.get("scans", scan));
+ *         }
+ *         TransferReport report = transfers.run();
+ *         System.out.println(report);
+ *     }
+ * </pre>
+ */
+public class TransferManager implements AutoCloseable {
+    /**
+     * Kind of transfer.
+     */
+    public enum Kind {
+        /** GET_FILE, the file is streamed to local disk. */
+        DOWNLOAD,
+        /** UPLOAD_REMOTE, the device uploads the file to cloud storage. */
+        UPLOAD
+    }
+
+    private static final String QUEUED = "QUEUED";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+
+    private final Path journalFile;
+    private final FileChannel journal;
+    private final int maxConcurrent;
+    private final int maxPerDevice;
+    private final Map<String, String[]> journalState = new HashMap<>();
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private volatile TransferListener listener;
+    private volatile Scheduler scheduler;
+    private volatile long runStartNanos;
+    private volatile boolean cancelled;
+    private boolean running;
+    private int skipped;
+
+    /**
+     * @param journalFile   journal of queued and finished transfers, created if missing, replayed and compacted if
+     *                      present
+     * @param maxConcurrent number of transfers running at once across all devices
+     * @param maxPerDevice  number of transfers running at once on one device
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public TransferManager(Path journalFile, int maxConcurrent, int maxPerDevice) throws IOException {
+        if (maxConcurrent < 1) throw new IllegalArgumentException("maxConcurrent < 1");
+        if (maxPerDevice < 1) throw new IllegalArgumentException("maxPerDevice < 1");
+        this.journalFile = Objects.requireNonNull(journalFile);
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerDevice = maxPerDevice;
+        if (Files.exists(journalFile)) {
+            readJournal();
+            compactJournal();
+        }
+        this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @param listener aggregate progress of the running transfers, may be null
+     */
+    public void setTransferListener(TransferListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a file download. Nothing is queued when the journal shows the download as done.
+     *
+     * @param device   device holding the file
+     * @param fileName Filename which we are getting from the server.
+     * @param sizeHint expected size in bytes used to order the transfers, -1 if unknown (started last)
+     * @param target   local path the file is written to
+     * @return true when the download was queued
+     * @throws IOException if the journal cannot be written
+     */
+    public boolean addDownload(RemoteAPI device, String fileName, long sizeHint, Path target) throws IOException {
+        return add(new Job(Kind.DOWNLOAD, device, fileName, sizeHint, Objects.requireNonNull(target)));
+    }
+
+    /**
+     * Queues a cloud upload. Nothing is queued when the journal shows the upload as done.
+     *
+     * @param device   device holding the file
+     * @param fileName of the file which we are uploading
+     * @param sizeHint expected size in bytes used to order the transfers, -1 if unknown (started last)
+     * @return true when the upload was queued
+     * @throws IOException if the journal cannot be written
+     */
+    public boolean addUpload(RemoteAPI device, String fileName, long sizeHint) throws IOException {
+        return add(new Job(Kind.UPLOAD, device, fileName, sizeHint, null));
+    }
+
+    /**
+     * Queues the transfers which an earlier run journaled but did not finish. Records which cannot be parsed are
+     * reported and skipped.
+     *
+     * @param devices looks up a device by the address it was journaled with, returns null for unknown devices
+     * @return number of transfers queued
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized int loadPending(Function<String, RemoteAPI> devices) throws IOException {
+        int queued = 0;
+        for (String[] record : new ArrayList<>(journalState.values())) {
+            if (!QUEUED.equals(record[0]) && !FAILED.equals(record[0])) continue;
+            RemoteAPI device = devices.apply(record[2]);
+            if (device == null) continue;
+            Job job;
+            try {
+                Kind kind = Kind.valueOf(record[1]);
+                Path target = kind == Kind.DOWNLOAD ? Paths.get(record[5]) : null;
+                job = new Job(kind, device, record[3], Long.parseLong(record[4]), target);
+            } catch (RuntimeException e) {
+                System.err.println("Skipping corrupt transfer journal record " + String.join(" ", record) + " Hit Exception: '" + e + "'");
+                continue;
+            }
+            if (add(job)) queued++;
+        }
+        return queued;
+    }
+
+    /**
+     * @param job transfer to queue
+     * @return true when queued, false when done already or queued twice
+     * @throws IOException if the journal cannot be written
+     */
+    private synchronized boolean add(Job job) throws IOException {
+        String[] previous = journalState.get(job.key);
+        if (previous != null && DONE.equals(previous[0])) {
+            skipped++;
+            return false;
+        }
+        if (jobs.containsKey(job.key)) return false;
+        jobs.put(job.key, job);
+        if (previous == null || !QUEUED.equals(previous[0])) {
+            writeJournal(QUEUED, job.kind.name(), job.deviceAddress, job.fileName, Long.toString(job.sizeHint),
+                    job.target != null ? job.target.toString() : "-");
+        }
+        return true;
+    }
+
+    /**
+     * Runs every queued transfer and blocks until all have finished or failed. Failed transfers stay pending in the
+     * journal and are attempted again by the next run. Only one run at a time is allowed.
+     *
+     * @return summary of the run
+     * @throws InterruptedException if interrupted while waiting, running transfers are abandoned
+     * @throws IllegalStateException if another thread is running this manager's transfers
+     */
+    public TransferReport run() throws InterruptedException {
+        List<Job> queue = new ArrayList<>();
+        int skippedJobs;
+        synchronized (this) {
+            if (running) throw new IllegalStateException("Transfers are already running");
+            running = true;
+            for (Job job : jobs.values()) {
+                String[] record = journalState.get(job.key);
+                if (record == null || !DONE.equals(record[0])) queue.add(job);
+            }
+            skippedJobs = skipped;
+            skipped = 0;
+            cancelled = false;
+        }
+        Collections.sort(queue);
+
+        Scheduler scheduler = new Scheduler(queue);
+        this.scheduler = scheduler;
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger completed = new AtomicInteger();
+        bytesTransferred.set(0);
+        uploadedBytes.set(0);
+        runStartNanos = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "TransferManager-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < maxConcurrent; i++) {
+                workers.execute(() -> {
+                    Job job;
+                    while ((job = scheduler.take()) != null) {
+                        try {
+                            transfer(job);
+                            completed.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            failures.add(job.deviceAddress + " " + job.fileName + ": " + e.getMessage());
+                            journalQuietly(FAILED, job, String.valueOf(e.getMessage()));
+                        } finally {
+                            scheduler.release(job);
+                        }
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting, transfers report their own progress
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            workers.shutdownNow();
+            throw e;
+        } finally {
+            this.scheduler = null;
+            synchronized (this) {
+                running = false;
+            }
+        }
+
+        synchronized (this) {
+            jobs.values().removeIf(job -> {
+                String[] record = journalState.get(job.key);
+                return record != null && DONE.equals(record[0]);
+            });
+        }
+        return new TransferReport(completed.get(), skippedJobs, new ArrayList<>(failures), bytesTransferred.get(),
+                uploadedBytes.get(), System.nanoTime() - runStartNanos);
+    }
+
+    /**
+     * Stops starting new transfers, the running ones finish and {@link #run()} returns.
+     */
+    public void cancel() {
+        cancelled = true;
+        Scheduler current = scheduler;
+        if (current != null) current.wake();
+    }
+
+    /**
+     * @return download bytes received by the current or last run
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred.get();
+    }
+
+    /**
+     * @return size hints of the uploads completed by the current or last run, nothing is measured for uploads
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    /**
+     * @return aggregate download throughput of the current or last run in bytes per second
+     */
+    public double getBytesPerSecond() {
+        return HttpCommunicationUtil.bytesPerSecond(bytesTransferred.get(), System.nanoTime() - runStartNanos);
+    }
+
+    /**
+     * @return number of queued transfers which are not done yet
+     */
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (Job job : jobs.values()) {
+            String[] record = journalState.get(job.key);
+            if (record == null || !DONE.equals(record[0])) pending++;
+        }
+        return pending;
+    }
+
+    /**
+     * Runs a single transfer on the calling worker thread.
+     *
+     * @param job transfer to run
+     * @throws IOException if the transfer fails
+     */
+    private void transfer(Job job) throws IOException {
+        long bytes;
+        if (job.kind == Kind.DOWNLOAD) {
+            Path parent = job.target.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            DownloadResult result = job.device.downloadFile(job.fileName, job.target, new DownloadProgress());
+            bytes = result.getBytesTransferred();
+        } else {
+            RemoteResponse response;
+            try {
+                response = job.device.sendUploadScanAsync(job.fileName).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while uploading " + job.fileName, e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            if (!response.isSuccess()) throw new IOException("Upload rejected: " + response.getMessage());
+            // the device uploads the file, the size hint is all that is known about it
+            bytes = Math.max(0, job.sizeHint);
+            uploadedBytes.addAndGet(bytes);
+        }
+        journalQuietly(DONE, job, Long.toString(bytes));
+    }
+
+    /**
+     * @param transferred download bytes received so far in this run
+     */
+    private void reportProgress(long transferred) {
+        TransferListener current = listener;
+        if (current == null) return;
+        long total = 0;
+        synchronized (this) {
+            for (Job job : jobs.values()) {
+                if (job.kind != Kind.DOWNLOAD) continue;
+                if (job.sizeHint < 0) {
+                    total = -1;
+                    break;
+                }
+                total += job.sizeHint;
+            }
+        }
+        current.onProgress(transferred, total, HttpCommunicationUtil.bytesPerSecond(transferred, System.nanoTime() - runStartNanos));
+    }
+
+    /**
+     * Writes a result record, a journal failure is reported but does not fail the transfer.
+     *
+     * @param state  DONE or FAILED
+     * @param job    finished transfer
+     * @param detail bytes moved or error message
+     */
+    private void journalQuietly(String state, Job job, String detail) {
+        try {
+            writeJournal(state, job.kind.name(), job.deviceAddress, job.fileName, detail);
+        } catch (IOException e) {
+            System.err.println("Failed to write transfer journal " + journalFile + " Hit Exception: '" + e + "'");
+        }
+    }
+
+    /**
+     * Appends one record to the journal and forces it to disk, then applies it to the in-memory state.
+     *
+     * @param fields state, kind, device, file name and details
+     * @throws IOException if the journal cannot be written
+     */
+    private synchronized void writeJournal(String... fields) throws IOException {
+        StringBuilder line = new StringBuilder();
+        appendLine(line, fields);
+        ByteBuffer bytes = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            journal.write(bytes);
+        }
+        journal.force(false);
+        apply(fields);
+    }
+
+    /**
+     * Replays the journal into the in-memory state, an incomplete last line from a crash is ignored.
+     *
+     * @throws IOException if the journal cannot be read
+     */
+    private void readJournal() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = unescape(fields[i]);
+                }
+                boolean complete = (QUEUED.equals(fields[0]) && fields.length == 6)
+                        || ((DONE.equals(fields[0]) || FAILED.equals(fields[0])) && fields.length == 5);
+                if (complete) apply(fields);
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with one holding a single record per unfinished transfer, plus the finished ones while
+     * any transfer is unfinished, so a restart still skips them. Once everything is finished the journal is emptied.
+     * The new journal is written beside the old one and moved over it.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    private void compactJournal() throws IOException {
+        boolean unfinished = false;
+        for (String[] record : journalState.values()) {
+            unfinished |= !DONE.equals(record[0]) && record.length == 6;
+        }
+        Path compacted = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        StringBuilder lines = new StringBuilder();
+        for (Iterator<String[]> it = journalState.values().iterator(); it.hasNext(); ) {
+            String[] record = it.next();
+            boolean done = DONE.equals(record[0]);
+            // a record without its queue details cannot be resumed
+            if ((done && !unfinished) || (!done && record.length != 6)) {
+                it.remove();
+                continue;
+            }
+            if (record.length == 6) {
+                appendLine(lines, QUEUED, record[1], record[2], record[3], record[4], record[5]);
+            }
+            if (done) appendLine(lines, DONE, record[1], record[2], record[3], "-");
+        }
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(compacted, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(compacted, journalFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param out    receives the record and a line break
+     * @param fields state, kind, device, file name and details
+     */
+    private static void appendLine(StringBuilder out, String... fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.append('\t');
+            escape(out, fields[i]);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * @param fields journal record
+     */
+    private void apply(String[] fields) {
+        String key = key(fields[1], fields[2], fields[3]);
+        String[] previous = journalState.get(key);
+        if (QUEUED.equals(fields[0]) || previous == null) {
+            journalState.put(key, fields.clone());
+        } else {
+            // keep the queue details, which are needed to resume, and only update the state
+            String[] updated = previous.clone();
+            updated[0] = fields[0];
+            journalState.put(key, updated);
+        }
+    }
+
+    private static String key(String kind, String device, String fileName) {
+        return kind + '\t' + device + '\t' + fileName;
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') out.append("\\\\");
+            else if (c == '\t') out.append("\\t");
+            else if (c == '\n') out.append("\\n");
+            else if (c == '\r') out.append("\\r");
+            else out.append(c);
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Closes the journal.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * Adds the bytes a download receives to the run's total, the resumed part already on disk is not counted.
+     */
+    private final class DownloadProgress implements TransferListener {
+        private long counted;
+
+        @Override
+        public void onStart(long resumedBytes) {
+            counted = resumedBytes;
+        }
+
+        @Override
+        public void onProgress(long transferred, long total, double bytesPerSecond) {
+            long received = transferred - counted;
+            counted = transferred;
+            reportProgress(bytesTransferred.addAndGet(received));
+        }
+    }
+
+    /**
+     * Hands out the smallest waiting transfer whose device still has a free slot.
+     */
+    private final class Scheduler {
+        private final List<Job> queue;
+        private final Map<RemoteAPI, Integer> active = new HashMap<>();
+
+        /**
+         * @param queue waiting transfers, smallest first
+         */
+        Scheduler(List<Job> queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * @return the next transfer, or null once the queue is empty or the run was cancelled
+         */
+        synchronized Job take() {
+            while (true) {
+                if (cancelled || queue.isEmpty()) return null;
+                for (Iterator<Job> it = queue.iterator(); it.hasNext(); ) {
+                    Job job = it.next();
+                    if (active.getOrDefault(job.device, 0) < maxPerDevice) {
+                        it.remove();
+                        active.merge(job.device, 1, Integer::sum);
+                        return job;
+                    }
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Wakes the workers waiting for a free device slot, e.g. so they see a cancellation.
+         */
+        synchronized void wake() {
+            notifyAll();
+        }
+
+        /**
+         * @param job finished transfer, frees its device slot
+         */
+        synchronized void release(Job job) {
+            active.merge(job.device, -1, Integer::sum);
+            notifyAll();
+        }
+    }
+
+    /**
+     * One queued transfer, ordered smallest first with unknown sizes last.
+     */
+    private static final class Job implements Comparable<Job> {
+        private final Kind kind;
+        private final RemoteAPI device;
+        private final String deviceAddress;
+        private final String fileName;
+        private final long sizeHint;
+        private final Path target;
+        private final String key;
+
+        Job(Kind kind, RemoteAPI device, String fileName, long sizeHint, Path target) {
+            this.kind = kind;
+            this.device = Objects.requireNonNull(device);
+            this.deviceAddress = String.valueOf(device.getIP());
+            this.fileName = Objects.requireNonNull(fileName);
+            this.sizeHint = sizeHint;
+            this.target = target;
+            this.key = key(kind.name(), deviceAddress, fileName);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            long a = sizeHint < 0 ? Long.MAX_VALUE : sizeHint;
+            long b = other.sizeHint < 0 ? Long.MAX_VALUE : other.sizeHint;
+            return Long.compare(a, b);
+        }
+    }
+}
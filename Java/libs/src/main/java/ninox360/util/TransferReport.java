@@ -0,0 +1,97 @@
+package ninox360.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable summary of a {@link TransferManager} run.
+ */
+public final class TransferReport {
+    private final int completed;
+    private final int skipped;
+    private final List<String> failures;
+    private final long bytesTransferred;
+    private final long uploadedBytes;
+    private final long elapsedNanos;
+
+    /**
+     * @param completed        number of transfers which finished in this run
+     * @param skipped          number of transfers already completed by an earlier run
+     * @param failures         description of each failed transfer
+     * @param bytesTransferred download bytes received in this run
+     * @param uploadedBytes    size hints of the uploads completed in this run
+     * @param elapsedNanos     duration of the run
+     */
+    TransferReport(int completed, int skipped, List<String> failures, long bytesTransferred, long uploadedBytes, long elapsedNanos) {
+        this.completed = completed;
+        this.skipped = skipped;
+        this.failures = Collections.unmodifiableList(failures);
+        this.bytesTransferred = bytesTransferred;
+        this.uploadedBytes = uploadedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return number of transfers which finished in this run
+     */
+    public int getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return number of transfers skipped because the journal shows them as done
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return number of transfers which failed, they are retried by the next run
+     */
+    public int getFailed() {
+        return failures.size();
+    }
+
+    /**
+     * @return "device file: error" for each failed transfer
+     */
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return download bytes received in this run
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * @return size hints of the uploads completed in this run; the device uploads the files, so these bytes are
+     *         not measured and not part of the throughput
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * @return duration of the run in milliseconds
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return aggregate download throughput of the run in bytes per second
+     */
+    public double getBytesPerSecond() {
+        return HttpCommunicationUtil.bytesPerSecond(bytesTransferred, elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "TransferReport{completed=" + completed + ", skipped=" + skipped + ", failed=" + getFailed()
+                + ", bytes=" + bytesTransferred + ", uploadedBytes=" + uploadedBytes + ", elapsedMillis=" + String.format("%.0f", getElapsedMillis())
+                + ", bytesPerSecond=" + String.format("%.0f", getBytesPerSecond()) + "}";
+    }
+}
@@ -0,0 +1,35 @@
+package ninox360.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when no complete response was received from the device: the connection could not be opened, the request
+ * timed out or the connection broke while the response was being read. Only these failures are retried as transient
+ * without an HTTP status and counted by the {@link CircuitBreaker}. Use {@link #isCauseOf(Throwable)} to find it in
+ * a cause chain.
+ */
+public class TransportException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message details of the request
+     * @param cause   failure of the connection
+     */
+    public TransportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * Searches the cause chain for a transport failure.
+     *
+     * @param error failure of a command
+     * @return true if the failure was caused by the connection to the device
+     */
+    public static boolean isCauseOf(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransportException) return true;
+            if (cause.getCause() == cause) break;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sends command batches to a mock device which fails or slows down single commands. Checks that the responses follow
+ * the queue order whatever order they arrive in, that a failing command fails the batch without waiting for the
+ * others, and that the commands still in flight are cancelled. A cancelled command releases the dispatcher thread
+ * it was waiting on, so an idle dispatcher long before the device answers shows the cancellation.
+ */
+public class CommandBatchTest {
+    private static final long SLOW_MILLIS = 5_000;
+
+    private MockScanner scanner;
+    private ThreadPoolExecutor dispatcher;
+    private RemoteAPI api;
+
+    @Before
+    public void setUp() throws IOException {
+        scanner = new MockScanner();
+        scanner.start();
+        dispatcher = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        api = new RemoteAPI(new HttpClientConfig().setExecutorService(dispatcher));
+        api.setIP(scanner.baseUrl());
+        assertTrue(api.sendRegister(scanner.getServerSecret()).isSuccess());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        scanner.close();
+        dispatcher.shutdownNow();
+    }
+
+    @Test
+    public void responsesFollowTheQueueOrder() throws IOException {
+        assertTrue(api.batch().execute().isEmpty());
+
+        // the first command is answered last
+        scanner.setCommandLatencyMillis("EXPOSURE", 200);
+        List<RemoteResponse> responses = api.batch()
+                .setCameraExposure(10_000_000)
+                .setCameraSensitivity(400)
+                .setNickname("Line 3")
+                .getState()
+                .execute();
+
+        assertEquals(4, responses.size());
+        assertEquals("10000000", responses.get(0).getMessage());
+        assertEquals("400", responses.get(1).getMessage());
+        assertEquals("Line 3", responses.get(2).getMessage());
+        assertEquals(MockScanner.IDLE, responses.get(3).getMessage());
+        assertEquals("10000000", scanner.getSetting("EXPOSURE"));
+        assertEquals("Line 3", scanner.getSetting("SET_NICKNAME"));
+    }
+
+    @Test
+    public void failingCommandFailsTheBatchAndCancelsTheOthers() throws Exception {
+        scanner.setCommandError("SENSITIVITY", 400).setCommandLatencyMillis("SET_NICKNAME", SLOW_MILLIS);
+
+        long start = System.nanoTime();
+        try {
+            api.batch().setCameraExposure(10_000_000).setCameraSensitivity(400).setNickname("Line 3").execute();
+            fail("batch succeeded");
+        } catch (IOException e) {
+            assertEquals(400, RejectedRequestException.statusCodeOf(e));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < SLOW_MILLIS / 2);
+        assertEquals(1, scanner.getInjectedErrorCount());
+
+        awaitIdleDispatcher();
+    }
+
+    @Test
+    public void cancellingTheBatchCancelsTheCommandsInFlight() throws Exception {
+        scanner.setCommandLatencyMillis("EXPOSURE", SLOW_MILLIS).setCommandLatencyMillis("SENSITIVITY", SLOW_MILLIS);
+        CompletableFuture<List<RemoteResponse>> batch = api.batch().setCameraExposure(10_000_000).setCameraSensitivity(400).executeAsync();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (dispatcher.getActiveCount() < 2) {
+            assertTrue("commands were not sent", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        assertTrue(batch.cancel(true));
+        assertTrue(batch.isCancelled());
+
+        awaitIdleDispatcher();
+    }
+
+    /**
+     * Waits until no call holds a dispatcher thread, well before a slowed down command would have been answered.
+     */
+    private void awaitIdleDispatcher() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS / 2);
+        while (dispatcher.getActiveCount() > 0) {
+            assertTrue("commands still in flight", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks retries, deadlines, the circuit breaker and automatic re-registration of the commands of a RemoteAPI
+ * against a mock device which injects failures.
+ */
+public class CommandRunnerTest {
+    private static final int THREADS = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockScanner scanner;
+    private RemoteAPI api;
+
+    @Before
+    public void setUp() throws IOException {
+        scanner = new MockScanner();
+        scanner.start();
+        api = new RemoteAPI();
+        api.setIP(scanner.baseUrl());
+        assertTrue(api.sendRegister(scanner.getServerSecret()).isSuccess());
+        api.setCommandPolicy("GET_STATE", new CommandPolicy().withMaxAttempts(3).withInitialBackoffMillis(1).withMaxBackoffMillis(5));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        scanner.close();
+    }
+
+    @Test
+    public void transientStatusIsRetriedUpToMaxAttempts() {
+        scanner.setErrorRate(1);
+        IOException e = getStateFailure();
+        assertEquals(503, RejectedRequestException.statusCodeOf(e));
+        assertEquals(3, scanner.getInjectedErrorCount());
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() {
+        scanner.setErrorRate(1).setErrorStatus(400);
+        IOException e = getStateFailure();
+        // the classified failure reaches the caller unwrapped
+        assertTrue(e instanceof RejectedRequestException);
+        assertEquals(400, RejectedRequestException.statusCodeOf(e));
+        assertEquals(1, scanner.getInjectedErrorCount());
+        assertEquals(CircuitBreaker.State.CLOSED, api.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void retriedCommandSucceedsOnceTheDeviceRecovers() throws Exception {
+        scanner.setErrorRate(1);
+        api.setCommandPolicy("GET_STATE", new CommandPolicy().withMaxAttempts(20).withInitialBackoffMillis(20).withMaxBackoffMillis(50));
+        CompletableFuture<RemoteResponse> state = api.sendGetStateAsync();
+        Thread.sleep(100);
+        scanner.setErrorRate(0);
+        assertEquals(MockScanner.IDLE, state.get(5, TimeUnit.SECONDS).getMessage());
+        assertTrue(scanner.getInjectedErrorCount() >= 1);
+    }
+
+    @Test
+    public void deadlineBoundsAllAttempts() {
+        scanner.setLatencyMillis(1_000);
+        api.setCommandPolicy("GET_STATE", new CommandPolicy().withMaxAttempts(5).withInitialBackoffMillis(1).withDeadlineMillis(200));
+        long start = System.nanoTime();
+        getStateFailure();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 800);
+    }
+
+    @Test
+    public void breakerOpensAndRecovers() throws Exception {
+        api.getCircuitBreaker().setFailureThreshold(2).setOpenMillis(300);
+        api.setCommandPolicy("GET_STATE", new CommandPolicy());
+        scanner.setErrorRate(1);
+        getStateFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, api.getCircuitBreaker().getState());
+        getStateFailure();
+        assertEquals(CircuitBreaker.State.OPEN, api.getCircuitBreaker().getState());
+
+        // rejected without reaching the device
+        getStateFailure();
+        assertEquals(2, scanner.getInjectedErrorCount());
+        assertEquals(1, api.getCircuitBreaker().getRejectedCount());
+
+        scanner.setErrorRate(0);
+        Thread.sleep(400);
+        assertEquals(MockScanner.IDLE, api.sendGetState().getMessage());
+        assertEquals(CircuitBreaker.State.CLOSED, api.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void failedTrialReopensTheBreaker() throws Exception {
+        api.getCircuitBreaker().setFailureThreshold(1).setOpenMillis(200);
+        api.setCommandPolicy("GET_STATE", new CommandPolicy());
+        scanner.setErrorRate(1);
+        getStateFailure();
+        assertEquals(CircuitBreaker.State.OPEN, api.getCircuitBreaker().getState());
+
+        Thread.sleep(250);
+        getStateFailure();
+        assertEquals(2, scanner.getInjectedErrorCount());
+        assertEquals(CircuitBreaker.State.OPEN, api.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void concurrentRejectedCommandsRegisterOnce() throws Exception {
+        scanner.revokeClientSecrets();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<RemoteResponse>> states = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                states.add(executor.submit(() -> {
+                    start.await();
+                    return api.sendGetState();
+                }));
+            }
+            start.countDown();
+            for (Future<RemoteResponse> state : states) {
+                assertEquals(MockScanner.IDLE, state.get(10, TimeUnit.SECONDS).getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // the first registration in setUp and the shared one after the secret was revoked
+        assertEquals(2, scanner.getRegisterCount());
+    }
+
+    @Test
+    public void concurrentRejectedAsyncCommandsRegisterOnce() throws Exception {
+        scanner.revokeClientSecrets();
+        List<CompletableFuture<RemoteResponse>> states = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            states.add(api.sendGetStateAsync());
+        }
+        for (CompletableFuture<RemoteResponse> state : states) {
+            assertEquals(MockScanner.IDLE, state.get(10, TimeUnit.SECONDS).getMessage());
+        }
+        assertEquals(2, scanner.getRegisterCount());
+    }
+
+    @Test
+    public void downloadReregistersWhenTheSecretIsRevoked() throws Exception {
+        scanner.addFile("scan.zip", 10_000);
+        scanner.revokeClientSecrets();
+        Path target = folder.getRoot().toPath().resolve("scan.zip");
+        assertEquals(10_000, api.downloadFile("scan.zip", target).getFileSize());
+        assertEquals(2, scanner.getRegisterCount());
+    }
+
+    @Test
+    public void registrationIsRetriedButNeverReregisters() throws Exception {
+        api.setCommandPolicy(HttpCommunicationUtil.REGISTER_COMMAND, CommandPolicy.idempotent().withInitialBackoffMillis(1).withMaxBackoffMillis(5));
+        scanner.setErrorRate(1);
+        try {
+            api.sendRegister(scanner.getServerSecret());
+            fail("registration succeeded");
+        } catch (IOException e) {
+            assertEquals(503, RejectedRequestException.statusCodeOf(e));
+        }
+        assertEquals(4, scanner.getInjectedErrorCount());
+
+        // a rejected registration fails instead of registering again
+        scanner.setErrorStatus(401);
+        try {
+            api.sendRegisterAsync(scanner.getServerSecret()).get(10, TimeUnit.SECONDS);
+            fail("registration succeeded");
+        } catch (ExecutionException e) {
+            assertEquals(401, RejectedRequestException.statusCodeOf((IOException) e.getCause()));
+        }
+        assertEquals(5, scanner.getInjectedErrorCount());
+    }
+
+    /**
+     * @return failure of a GET_STATE which is expected to fail
+     */
+    private IOException getStateFailure() {
+        try {
+            api.sendGetState();
+        } catch (IOException e) {
+            return e;
+        }
+        fail("GET_STATE succeeded");
+        return null;
+    }
+}
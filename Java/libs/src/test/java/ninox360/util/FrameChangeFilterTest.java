@@ -0,0 +1,209 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds frames served by mock devices through a change filter: a still device whose frames are all the same and a
+ * moving one whose frames shift from one to the next. Checks which frames reach the downstream listener, the
+ * received, forwarded and suppressed counts, and that closing the filter waits for its worker.
+ */
+public class FrameChangeFilterTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int MOVING_FRAMES = 4;
+
+    private static ByteBuffer still;
+    private static final ByteBuffer[] moving = new ByteBuffer[MOVING_FRAMES];
+
+    private final List<Long> forwarded = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeClass
+    public static void captureFrames() throws IOException {
+        still = capture(new MockScanner().setFrames(WIDTH, HEIGHT, 1), 1)[0];
+        ByteBuffer[] frames = capture(new MockScanner().setFrames(WIDTH, HEIGHT, MOVING_FRAMES), MOVING_FRAMES);
+        System.arraycopy(frames, 0, moving, 0, MOVING_FRAMES);
+    }
+
+    @Test
+    public void identicalFramesAreSuppressedAndChangedFramesForwarded() throws Exception {
+        try (FrameChangeFilter filter = new FrameChangeFilter(frame -> forwarded.add(frame.getSequence()), 8, 16)) {
+            long sequence = 0;
+            for (int i = 0; i < 5; i++) {
+                filter.onFrame(frame(sequence++, still, 0));
+            }
+            awaitScored(filter, 5);
+            assertEquals(Collections.singletonList(0L), forwarded);
+            assertEquals(4, filter.getFramesSuppressed());
+            assertEquals(0.0, filter.getLastScore(), 0.0);
+
+            // the first moving frame is the still image, the others shift against it and against each other
+            for (int i = 0; i < MOVING_FRAMES; i++) {
+                filter.onFrame(frame(sequence++, moving[i], 0));
+            }
+            filter.onFrame(frame(sequence++, moving[MOVING_FRAMES - 1], 0));
+            filter.onFrame(frame(sequence, moving[MOVING_FRAMES - 1], 0));
+            awaitScored(filter, 11);
+
+            assertEquals(Arrays.asList(0L, 6L, 7L, 8L), forwarded);
+            assertEquals(11, filter.getFramesReceived());
+            assertEquals(4, filter.getFramesForwarded());
+            assertEquals(7, filter.getFramesSuppressed());
+            assertEquals(0, filter.getFramesDropped());
+            assertEquals(0, filter.getErrorCount());
+            assertTrue(filter.getAverageFilterMillis() > 0);
+        }
+    }
+
+    @Test
+    public void thresholdsAndMaxIntervalDecideForwarding() throws Exception {
+        try (FrameChangeFilter filter = new FrameChangeFilter(frame -> forwarded.add(frame.getSequence()), 8, 16)
+                .setChangeThreshold(0)) {
+            for (int i = 0; i < 3; i++) {
+                filter.onFrame(frame(i, still, 0));
+            }
+            awaitScored(filter, 3);
+            assertEquals(Arrays.asList(0L, 1L, 2L), forwarded);
+        }
+
+        forwarded.clear();
+        // no block moves by more than 255, so nothing counts as changed
+        try (FrameChangeFilter filter = new FrameChangeFilter(frame -> forwarded.add(frame.getSequence()), 8, 16)
+                .setBlockThreshold(255)) {
+            for (int i = 0; i < MOVING_FRAMES; i++) {
+                filter.onFrame(frame(i, moving[i], 0));
+            }
+            awaitScored(filter, MOVING_FRAMES);
+            assertEquals(Collections.singletonList(0L), forwarded);
+        }
+
+        forwarded.clear();
+        try (FrameChangeFilter filter = new FrameChangeFilter(frame -> forwarded.add(frame.getSequence()), 8, 16)
+                .setMaxIntervalMillis(1_000)) {
+            long[] timestamps = {0, 400, 999, 1_000, 1_500, 2_100};
+            for (int i = 0; i < timestamps.length; i++) {
+                filter.onFrame(frame(i, still, timestamps[i]));
+            }
+            awaitScored(filter, timestamps.length);
+            assertEquals(Arrays.asList(0L, 3L, 5L), forwarded);
+            assertEquals(3, filter.getFramesSuppressed());
+        }
+    }
+
+    @Test
+    public void undecodableFramesAreForwardedUnfiltered() throws Exception {
+        try (FrameChangeFilter filter = new FrameChangeFilter(frame -> forwarded.add(frame.getSequence()), 8, 16)) {
+            filter.onFrame(frame(0, still, 0));
+            filter.onFrame(frame(1, ByteBuffer.wrap(new byte[]{1, 2, 3}), 0));
+            filter.onFrame(frame(2, still, 0));
+            awaitScored(filter, 3);
+            assertEquals(Arrays.asList(0L, 1L), forwarded);
+            assertEquals(1, filter.getErrorCount());
+        }
+    }
+
+    @Test
+    public void stillDeviceStreamIsSuppressed() throws Exception {
+        try (MockScanner scanner = new MockScanner().setFrames(WIDTH, HEIGHT, 1);
+             RemoteAPI api = new RemoteAPI()) {
+            scanner.start();
+            api.setIP(scanner.baseUrl());
+            assertTrue(api.sendRegister(scanner.getServerSecret()).isSuccess());
+
+            FrameChangeFilter filter = new FrameChangeFilter(frame -> forwarded.add(frame.getSequence()));
+            try (FrameStream stream = api.openFrameStream(2, 4, filter)) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (filter.getFramesSuppressed() < 10 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertTrue(stream.getFramesReceived() > 0);
+            }
+            filter.close();
+
+            assertTrue("suppressed " + filter.getFramesSuppressed(), filter.getFramesSuppressed() >= 10);
+            assertEquals(1, filter.getFramesForwarded());
+            assertEquals(1, forwarded.size());
+            // frames still queued at close are discarded uncounted
+            assertTrue(filter.getFramesReceived() >= filter.getFramesForwarded() + filter.getFramesSuppressed()
+                    + filter.getFramesDropped());
+        }
+    }
+
+    @Test
+    public void closeWaitsForTheWorker() throws Exception {
+        CountDownLatch inListener = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicBoolean calledAfterClose = new AtomicBoolean();
+        AtomicBoolean closed = new AtomicBoolean();
+        FrameChangeFilter filter = new FrameChangeFilter(frame -> {
+            if (closed.get()) calledAfterClose.set(true);
+            inListener.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.set(true);
+        }, 8, 16);
+        filter.onFrame(frame(0, still, 0));
+        filter.onFrame(frame(1, moving[1], 0));
+        assertTrue(inListener.await(5, TimeUnit.SECONDS));
+
+        filter.close();
+        closed.set(true);
+        assertTrue("close returned while the listener was running", finished.get());
+
+        // queued frames were discarded and new ones are ignored
+        filter.onFrame(frame(2, moving[2], 0));
+        Thread.sleep(200);
+        assertFalse(calledAfterClose.get());
+        assertEquals(2, filter.getFramesReceived());
+        assertEquals(1, filter.getFramesForwarded());
+    }
+
+    /**
+     * Waits until the worker has forwarded, suppressed or dropped the given number of frames.
+     */
+    private static void awaitScored(FrameChangeFilter filter, long frames) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (filter.getFramesForwarded() + filter.getFramesSuppressed() + filter.getFramesDropped() < frames) {
+            assertTrue("timed out scoring " + frames + " frames", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static Frame frame(long sequence, ByteBuffer bytes, long timestampMillis) {
+        return new Frame(sequence, bytes.duplicate(), timestampMillis, 0);
+    }
+
+    /**
+     * @return the first frames served by the device, in the order it rotates through them
+     */
+    private static ByteBuffer[] capture(MockScanner scanner, int count) throws IOException {
+        try (MockScanner device = scanner; RemoteAPI api = new RemoteAPI()) {
+            device.start();
+            api.setIP(device.baseUrl());
+            assertTrue(api.sendRegister(device.getServerSecret()).isSuccess());
+            ByteBuffer[] frames = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                frames[i] = api.sendCaptureImageFrameBytes();
+            }
+            return frames;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package ninox360.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Records frames with {@link FrameRecorder} and reads them back through {@link FrameArchive}: segment rotation by
+ * size and time, data files larger than one map window, deletion of old segments, a torn index entry and data file
+ * left by a crash, and timestamp order across recorder restarts.
+ */
+public class FrameRecorderTest {
+    private static final int MIB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void framesSpanSegmentsAndMapWindows() throws Exception {
+        // 1 MiB frames in 20 MiB segments: 19 frames per segment, the 17th crosses the first 16 MiB window
+        int frameSize = MIB + 7;
+        int frames = 45;
+        Path directory = folder.getRoot().toPath();
+        try (FrameRecorder recorder = new FrameRecorder(directory, 20L * MIB, 0)) {
+            for (int i = 0; i < frames; i++) {
+                recorder.append(ByteBuffer.wrap(frameBytes(i, frameSize)), timestamp(i));
+            }
+            assertEquals(frames, recorder.getFramesWritten());
+            assertEquals((long) frames * frameSize, recorder.getBytesWritten());
+        }
+        assertTrue(FrameRecorder.MAP_WINDOW_BYTES < 20L * MIB);
+        assertEquals(Arrays.asList(1, 2, 3), FrameRecorder.listSegments(directory));
+        assertEquals(19L * frameSize, Files.size(directory.resolve(FrameRecorder.segmentName(1) + FrameRecorder.DATA_SUFFIX)));
+        assertEquals(FrameRecorder.INDEX_HEADER_SIZE + 19L * FrameRecorder.INDEX_ENTRY_SIZE,
+                Files.size(directory.resolve(FrameRecorder.segmentName(1) + FrameRecorder.INDEX_SUFFIX)));
+
+        try (FrameArchive archive = FrameArchive.open(directory)) {
+            assertEquals(frames, archive.size());
+            assertEquals(timestamp(0), archive.getStartMillis());
+            assertEquals(timestamp(frames - 1), archive.getEndMillis());
+            for (int i = 0; i < frames; i++) {
+                assertFrame(i, frameSize, archive.read(i));
+                assertEquals(timestamp(i), archive.get(i).getTimestampMillis());
+            }
+
+            assertEquals(0, archive.indexOf(0));
+            assertEquals(16, archive.indexOf(timestamp(16)));
+            assertEquals(16, archive.indexOf(timestamp(16) + 9));
+            assertEquals(frames - 1, archive.indexOf(Long.MAX_VALUE));
+
+            List<Long> replayed = new ArrayList<>();
+            archive.replay(15, 21, 0, frame -> {
+                replayed.add(frame.getTimestampMillis());
+                assertFrame((int) frame.getSequence(), frameSize, frame.getBytes());
+            });
+            assertEquals(Arrays.asList(timestamp(15), timestamp(16), timestamp(17), timestamp(18), timestamp(19), timestamp(20)), replayed);
+        }
+    }
+
+    @Test
+    public void segmentsRotateByTimeAndOldOnesAreDeleted() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        // 10 ms apart in 40 ms segments: 4 frames per segment, 5 segments of which the last 2 are kept
+        try (FrameRecorder recorder = new FrameRecorder(directory, MIB, 40).setMaxSegments(2)) {
+            for (int i = 0; i < 20; i++) {
+                recorder.append(ByteBuffer.wrap(frameBytes(i, 100)), timestamp(i));
+            }
+        }
+        assertEquals(Arrays.asList(4, 5), FrameRecorder.listSegments(directory));
+        try (FrameArchive archive = FrameArchive.open(directory)) {
+            assertEquals(8, archive.size());
+            for (int i = 0; i < 8; i++) {
+                assertEquals(timestamp(12 + i), archive.getTimestampMillis(i));
+                assertFrame(12 + i, 100, archive.read(i));
+            }
+            assertEquals(0, archive.indexOf(timestamp(3)));
+        }
+    }
+
+    @Test
+    public void tornTailIsLeftOutAndCutFramesFailToRead() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (FrameRecorder recorder = new FrameRecorder(directory)) {
+            for (int i = 0; i < 5; i++) {
+                recorder.append(ByteBuffer.wrap(frameBytes(i, 100)), timestamp(i));
+            }
+        }
+        // a crash left 13 bytes of the fifth index entry and cut the data file in the middle of the fourth frame
+        truncate(directory.resolve(FrameRecorder.segmentName(1) + FrameRecorder.INDEX_SUFFIX),
+                FrameRecorder.INDEX_HEADER_SIZE + 4 * FrameRecorder.INDEX_ENTRY_SIZE + 13);
+        truncate(directory.resolve(FrameRecorder.segmentName(1) + FrameRecorder.DATA_SUFFIX), 350);
+
+        try (FrameArchive archive = FrameArchive.open(directory)) {
+            assertEquals(4, archive.size());
+            assertEquals(timestamp(3), archive.getEndMillis());
+            assertEquals(3, archive.indexOf(timestamp(4)));
+            for (int i = 0; i < 3; i++) {
+                assertFrame(i, 100, archive.get(i).getBytes());
+            }
+            try {
+                archive.read(3);
+                fail("read a frame beyond the end of the data file");
+            } catch (IOException e) {
+                // expected
+            }
+            List<Long> replayed = new ArrayList<>();
+            archive.replay(0, 3, 0, frame -> replayed.add(frame.getSequence()));
+            assertEquals(Arrays.asList(0L, 1L, 2L), replayed);
+            try {
+                archive.read(4);
+                fail("read past the end of the archive");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+        }
+
+        // a recorder continuing the archive starts a new segment after the last complete frame's timestamp
+        try (FrameRecorder recorder = new FrameRecorder(directory)) {
+            recorder.append(ByteBuffer.wrap(frameBytes(9, 100)), timestamp(9));
+        }
+        assertEquals(Arrays.asList(1, 2), FrameRecorder.listSegments(directory));
+        try (FrameArchive archive = FrameArchive.open(directory)) {
+            assertEquals(5, archive.size());
+            assertFrame(9, 100, archive.read(4));
+        }
+    }
+
+    @Test
+    public void restartAfterClockWentBackKeepsTimestampsOrdered() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FrameRecorder recorder = new FrameRecorder(directory)) {
+            for (int i = 0; i < 3; i++) {
+                recorder.append(ByteBuffer.wrap(frameBytes(i, 100)), timestamp(100 + i));
+            }
+        }
+        try (FrameRecorder recorder = new FrameRecorder(directory)) {
+            recorder.append(ByteBuffer.wrap(frameBytes(3, 100)), timestamp(0));
+            recorder.append(ByteBuffer.wrap(frameBytes(4, 100)), timestamp(1));
+        }
+        assertEquals(Arrays.asList(1, 2), FrameRecorder.listSegments(directory));
+        try (FrameArchive archive = FrameArchive.open(directory)) {
+            assertEquals(5, archive.size());
+            for (int i = 0; i < 5; i++) {
+                assertFrame(i, 100, archive.read(i));
+            }
+            // frames from the set back clock carry the last recorded timestamp
+            assertEquals(timestamp(102), archive.getTimestampMillis(3));
+            assertEquals(timestamp(102), archive.getTimestampMillis(4));
+            assertEquals(4, archive.indexOf(timestamp(102)));
+        }
+    }
+
+    @Test
+    public void archiveSortsSegmentsOutOfTimestampOrder() throws IOException {
+        // an archive continued without the last timestamp, here put together from two recordings
+        Path directory = folder.newFolder("late").toPath();
+        Path earlier = folder.newFolder("early").toPath();
+        try (FrameRecorder recorder = new FrameRecorder(directory)) {
+            for (int i = 0; i < 3; i++) {
+                recorder.append(ByteBuffer.wrap(frameBytes(10 + i, 100)), timestamp(100 + i));
+            }
+        }
+        try (FrameRecorder recorder = new FrameRecorder(earlier)) {
+            for (int i = 0; i < 3; i++) {
+                recorder.append(ByteBuffer.wrap(frameBytes(i, 100)), timestamp(i));
+            }
+        }
+        for (String suffix : new String[]{FrameRecorder.INDEX_SUFFIX, FrameRecorder.DATA_SUFFIX}) {
+            Files.move(earlier.resolve(FrameRecorder.segmentName(1) + suffix), directory.resolve(FrameRecorder.segmentName(2) + suffix));
+        }
+
+        try (FrameArchive archive = FrameArchive.open(directory)) {
+            assertEquals(6, archive.size());
+            long[] expected = {timestamp(0), timestamp(1), timestamp(2), timestamp(100), timestamp(101), timestamp(102)};
+            int[] content = {0, 1, 2, 10, 11, 12};
+            for (int i = 0; i < 6; i++) {
+                assertEquals(expected[i], archive.getTimestampMillis(i));
+                assertFrame(content[i], 100, archive.read(i));
+            }
+            assertEquals(2, archive.indexOf(timestamp(50)));
+        }
+    }
+
+    @Test
+    public void closedArchiveAndRecorderFail() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        FrameRecorder recorder = new FrameRecorder(directory);
+        recorder.append(ByteBuffer.wrap(frameBytes(0, 100)), timestamp(0));
+        recorder.close();
+        try {
+            recorder.append(ByteBuffer.wrap(frameBytes(1, 100)), timestamp(1));
+            fail("appended to a closed recorder");
+        } catch (IOException e) {
+            // expected
+        }
+
+        FrameArchive archive = FrameArchive.open(directory);
+        archive.close();
+        try {
+            archive.read(0);
+            fail("read from a closed archive");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static long timestamp(int i) {
+        return 1_700_000_000_000L + 10L * i;
+    }
+
+    private static byte[] frameBytes(int frame, int size) {
+        byte[] bytes = new byte[size];
+        for (int j = 0; j < size; j++) {
+            bytes[j] = (byte) (frame * 31 + j);
+        }
+        return bytes;
+    }
+
+    private static void assertFrame(int frame, int size, ByteBuffer bytes) {
+        assertEquals("length of frame " + frame, size, bytes.remaining());
+        byte[] actual = new byte[size];
+        bytes.duplicate().get(actual);
+        assertTrue("content of frame " + frame, Arrays.equals(frameBytes(frame, size), actual));
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+}
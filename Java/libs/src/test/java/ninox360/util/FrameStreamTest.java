@@ -0,0 +1,108 @@
+package ninox360.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds a frame stream from a simulated device which answers every capture after a few milliseconds and checks
+ * that a slow listener neither holds up capturing nor sees frames out of order, and that it is not called after
+ * the stream is closed.
+ */
+public class FrameStreamTest {
+    private static final long CAPTURE_MILLIS = 2;
+    private static final long LISTENER_MILLIS = 50;
+
+    private final ScheduledExecutorService device = Executors.newScheduledThreadPool(2);
+    private final AtomicLong captures = new AtomicLong();
+
+    @After
+    public void tearDown() {
+        device.shutdownNow();
+    }
+
+    @Test
+    public void slowListenerDoesNotStallCapturing() throws InterruptedException {
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger concurrentCalls = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        AtomicBoolean outOfOrder = new AtomicBoolean();
+        AtomicBoolean calledAfterClose = new AtomicBoolean();
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicLong lastSequence = new AtomicLong(-1);
+
+        FrameStream stream = new FrameStream(this::capture, 2, 2, frame -> {
+            if (closed.get()) calledAfterClose.set(true);
+            if (concurrentCalls.incrementAndGet() > 1) overlapped.set(true);
+            if (frame.getSequence() <= lastSequence.getAndSet(frame.getSequence())) outOfOrder.set(true);
+            try {
+                Thread.sleep(LISTENER_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+            concurrentCalls.decrementAndGet();
+        });
+        stream.start();
+        Thread.sleep(500);
+        stream.close();
+        closed.set(true);
+        long capturedAtClose = captures.get();
+        Thread.sleep(3 * LISTENER_MILLIS);
+
+        // at 2 ms per capture and 50 ms per frame in the listener, capturing runs far ahead of delivery
+        assertTrue("captures " + capturedAtClose, capturedAtClose > 5L * delivered.get());
+        assertTrue("received " + stream.getFramesReceived(), stream.getFramesReceived() > 5L * delivered.get());
+        assertTrue("dropped " + stream.getFramesDropped(), stream.getFramesDropped() > 0);
+        assertTrue("delivered " + delivered.get(), delivered.get() >= 3);
+        assertFalse("listener called concurrently", overlapped.get());
+        assertFalse("frame delivered out of order", outOfOrder.get());
+        assertFalse("listener called after close", calledAfterClose.get());
+        assertFalse(stream.isRunning());
+    }
+
+    @Test
+    public void queueConsumerReadsFramesWhileStreamRuns() throws InterruptedException {
+        try (FrameStream stream = new FrameStream(this::capture, 2, 4, null)) {
+            stream.start();
+            long previous = -1;
+            for (int i = 0; i < 10; i++) {
+                Frame frame = stream.take();
+                assertTrue(frame.getSequence() > previous);
+                previous = frame.getSequence();
+            }
+            assertEquals(0, stream.getErrorCount());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void takeIsRejectedWhenFramesGoToAListener() throws InterruptedException {
+        try (FrameStream stream = new FrameStream(this::capture, 1, 1, frame -> {
+        })) {
+            stream.start();
+            stream.take();
+        }
+    }
+
+    /**
+     * @return a capture which completes with a small frame after {@link #CAPTURE_MILLIS}
+     */
+    private CompletableFuture<ByteBuffer> capture() {
+        captures.incrementAndGet();
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        device.schedule(() -> future.complete(ByteBuffer.wrap(new byte[16])), CAPTURE_MILLIS, TimeUnit.MILLISECONDS);
+        return future;
+    }
+}
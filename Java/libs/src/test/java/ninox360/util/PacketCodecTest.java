@@ -0,0 +1,179 @@
+package ninox360.util;
+
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the fast response reader and the full SnakeYAML parse on the same packets and checks that they agree, and
+ * that encoded register and command packets read back through SnakeYAML as the values they were built from.
+ */
+public class PacketCodecTest {
+    private static final String HEADER = "PacketRemoteResponse:\n";
+
+    /**
+     * Response packets the fast reader is expected to handle itself.
+     */
+    private static final String[] FAST = {
+            HEADER + "  response: SUCCESS\n  message: IDLE\n",
+            "PacketRemoteResponse:\r\n  response: SUCCESS\r\n  message: IDLE\r\n",
+            "PacketRemoteResponse: \n  response: SUCCESS  \n  message: IDLE \n",
+            HEADER + "  response: SUCCESS\n  message: IDLE",
+            HEADER + "\n  response: SUCCESS\n\n  message: IDLE\n\n",
+            HEADER + "    response: SUCCESS\n    message: IDLE\n",
+            HEADER + "  response: SUCCESS\n  message: 'scan 42 stored'\n",
+            HEADER + "  response: SUCCESS\n  message: \"scan 42 stored\"\n",
+            HEADER + "  response: FAILURE\n  message: Not registered, send REGISTER first\n",
+            HEADER + "  response: SUCCESS\n  message: /data/scans/weld_1.zip\n",
+            HEADER + "  response: SUCCESS\n  message: v1.2.3-rc1\n",
+            HEADER + "  response: SUCCESS\n  message: '10000000'\n",
+            HEADER + "  response: SUCCESS\n  message: \"true\"\n",
+            HEADER + "  response: SUCCESS\n  message: ''\n",
+            HEADER + "  response: SUCCESS\n  message: .\n",
+    };
+
+    /**
+     * Packets outside the fast reader's shape, left to SnakeYAML whether they parse or not.
+     */
+    private static final String[] FALLBACK = {
+            // numbers, booleans and nulls are not strings
+            HEADER + "  response: SUCCESS\n  message: 10000000\n",
+            HEADER + "  response: SUCCESS\n  message: -12\n",
+            HEADER + "  response: SUCCESS\n  message: 1.5e3\n",
+            HEADER + "  response: SUCCESS\n  message: 0x1F\n",
+            HEADER + "  response: SUCCESS\n  message: .inf\n",
+            HEADER + "  response: SUCCESS\n  message: true\n",
+            HEADER + "  response: SUCCESS\n  message: yes\n",
+            HEADER + "  response: SUCCESS\n  message: null\n",
+            HEADER + "  response: SUCCESS\n  message: ~\n",
+            HEADER + "  response: SUCCESS\n  message:\n",
+            HEADER + "  response: SUCCESS\n  message: \n",
+            // escapes and quotes inside quoted strings
+            HEADER + "  response: SUCCESS\n  message: \"line\\nbreak\"\n",
+            HEADER + "  response: SUCCESS\n  message: \"say \\\"hi\\\"\"\n",
+            HEADER + "  response: SUCCESS\n  message: \"tab\\there \\x41\\u00e9\"\n",
+            HEADER + "  response: SUCCESS\n  message: 'it''s done'\n",
+            HEADER + "  response: SUCCESS\n  message: \"caf\u00e9\"\n",
+            // duplicate keys
+            HEADER + "  response: SUCCESS\n  response: FAILURE\n",
+            // plain scalars starting with an indicator
+            HEADER + "  response: SUCCESS\n  message: ,foo\n",
+            HEADER + "  response: SUCCESS\n  message: -foo\n",
+            HEADER + "  response: SUCCESS\n  message: - foo\n",
+            HEADER + "  response: SUCCESS\n  message: [a, b]\n",
+            HEADER + "  response: SUCCESS\n  message: {a: b}\n",
+            HEADER + "  response: SUCCESS\n  message: &anchor foo\n",
+            HEADER + "  response: SUCCESS\n  message: *alias\n",
+            HEADER + "  response: SUCCESS\n  message: !!str 12\n",
+            HEADER + "  response: SUCCESS\n  message: |\n    block\n",
+            HEADER + "  response: SUCCESS\n  message: >\n    folded\n",
+            HEADER + "  response: SUCCESS\n  message: @reserved\n",
+            HEADER + "  response: SUCCESS\n  message: `reserved\n",
+            HEADER + "  response: SUCCESS\n  message: %directive\n",
+            HEADER + "  response: SUCCESS\n  message: ? complex\n",
+            HEADER + "  response: SUCCESS\n  message: 'unterminated\n",
+            // comments, colons and unusual layout
+            HEADER + "  response: SUCCESS\n  message: IDLE # state\n",
+            HEADER + "  response: SUCCESS\n  message: a: b\n",
+            HEADER + "  response: SUCCESS\n    message: IDLE\n",
+            HEADER + "  response: SUCCESS\n  Message: IDLE\n",
+            HEADER + "  response: SUCCESS\n  message:IDLE\n",
+            HEADER + "  response: SUCCESS\nother: value\n",
+            // wrong or missing header
+            "PacketRemoteCommand:\n  response: SUCCESS\n  message: IDLE\n",
+            "packetremoteresponse:\n  response: SUCCESS\n",
+            "---\n" + HEADER + "  response: SUCCESS\n",
+            "  response: SUCCESS\n  message: IDLE\n",
+            HEADER,
+            "PacketRemoteResponse: SUCCESS\n",
+            "",
+            "just text",
+    };
+
+    @Test
+    public void fastReaderHandlesCommonResponses() throws IOException {
+        for (String text : FAST) {
+            Map<String, Object> fast = PacketCodec.decodeResponseFast(text);
+            assertNotNull("fast reader declined " + quote(text), fast);
+            assertEquals(quote(text), PacketCodec.decodeResponseYaml(text), fast);
+            assertEquals(quote(text), fast, PacketCodec.decodeResponse(text));
+        }
+    }
+
+    @Test
+    public void fastReaderAgreesWithYamlOrDeclines() {
+        for (String text : FALLBACK) {
+            Map<String, Object> fast = PacketCodec.decodeResponseFast(text);
+            Map<String, Object> yaml;
+            try {
+                yaml = PacketCodec.decodeResponseYaml(text);
+            } catch (Exception e) {
+                assertNull("fast reader accepted " + quote(text) + " which YAML rejects with " + e, fast);
+                continue;
+            }
+            if (fast != null) assertEquals(quote(text), yaml, fast);
+        }
+    }
+
+    @Test
+    public void leadingIndicatorIsLeftToYaml() {
+        String text = HEADER + "  response: SUCCESS\n  message: ,foo\n";
+        assertNull(PacketCodec.decodeResponseFast(text));
+        try {
+            PacketCodec.decodeResponse(text);
+            throw new AssertionError("decoded " + quote(text));
+        } catch (Exception e) {
+            // SnakeYAML rejects the flow indicator, so does the codec
+        }
+    }
+
+    @Test
+    public void encodedCommandReadsBackThroughYaml() {
+        String[] values = {"", "10000000", "-1", "1.5", "true", "no", "null", "~", "IDLE", "weld_1", "two words",
+                "key: value", "#comment", ",flow", "[list]", "quote \" and \\ backslash", "line\nbreak\r\n",
+                "tab\there", "bell\u0007", "del\u007f", "c1\u0080\u0085\u009f", "caf\u00e9 \u6f22", "bom\ufeff",
+                "nonchar\ufffe\uffff", "'single'", " padded "};
+        for (String value : values) {
+            String packet = PacketCodec.encodeCommand("BLZ1x", "EXPOSURE", value);
+            Map<String, Object> fields = load(packet, "PacketRemoteCommand");
+            assertEquals(quote(packet), value, fields.get("value"));
+            assertEquals("BLZ1x", fields.get("secret"));
+            assertEquals("EXPOSURE", fields.get("command"));
+
+            packet = PacketCodec.encodeCommand(value, value, value);
+            fields = load(packet, "PacketRemoteCommand");
+            assertEquals(quote(packet), value, fields.get("secret"));
+            assertEquals(quote(packet), value, fields.get("command"));
+        }
+    }
+
+    @Test
+    public void encodedRegisterReadsBackThroughYaml() {
+        for (String secret : new String[]{"BLZ1x", "12345", "true", "a:b", "", "s\u00e9cret\n"}) {
+            String packet = PacketCodec.encodeRegister(secret, 3);
+            Map<String, Object> fields = load(packet, "PacketRemoteRegister");
+            assertEquals(quote(packet), secret, fields.get("scanner_secret"));
+            assertEquals(3, fields.get("version"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> load(String packet, String name) {
+        Object root = new Yaml().load(packet);
+        assertTrue(quote(packet), root instanceof Map);
+        Object inner = ((Map<String, Object>) root).get(name);
+        assertTrue(quote(packet), inner instanceof Map);
+        return (Map<String, Object>) inner;
+    }
+
+    private static String quote(String text) {
+        return "'" + text.replace("\r", "\\r").replace("\n", "\\n") + "'";
+    }
+}
@@ -0,0 +1,114 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives several mock devices from many threads at once and checks that every command reaches, and every answer
+ * comes from, the device of the RemoteAPI instance that sent it. Every other device is scanning, so a GET_STATE
+ * answer shows which device produced it.
+ */
+public class RemoteAPIConcurrencyTest {
+    private static final int DEVICES = 4;
+    private static final int THREADS = 16;
+    private static final int COMMANDS_PER_THREAD = 200;
+
+    private final List<MockScanner> scanners = new ArrayList<>();
+    private final List<RemoteAPI> devices = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < DEVICES; i++) {
+            MockScanner scanner = new MockScanner("device" + i).setServerSecret("SECRET" + i).setFrames(64, 48, 1);
+            scanner.start();
+            scanners.add(scanner);
+
+            RemoteAPI api = new RemoteAPI();
+            api.setIP(scanner.baseUrl());
+            assertTrue(api.sendRegister(scanner.getServerSecret()).isSuccess());
+            if (i % 2 == 0) assertTrue(api.sendStartScan().isSuccess());
+            devices.add(api);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (RemoteAPI api : devices) {
+            api.close();
+        }
+        for (MockScanner scanner : scanners) {
+            scanner.close();
+        }
+    }
+
+    @Test
+    public void concurrentCommandsStayWithTheirDevice() throws Exception {
+        AtomicInteger wrongState = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t;
+                workers.add(pool.submit(() -> {
+                    for (int n = 0; n < COMMANDS_PER_THREAD; n++) {
+                        int index = (offset + n) % DEVICES;
+                        RemoteResponse state = devices.get(index).sendGetState();
+                        String expected = index % 2 == 0 ? MockScanner.SCANNING : MockScanner.IDLE;
+                        if (!state.isSuccess() || !expected.equals(state.getMessage())) wrongState.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals("answers from the wrong device", 0, wrongState.get());
+        long commands = 0;
+        for (int i = 0; i < DEVICES; i++) {
+            MockScanner scanner = scanners.get(i);
+            assertEquals(scanner.getName() + " misrouted", 0, scanner.getMisroutedCount());
+            assertEquals(scanner.getName() + " rejected secrets", 0, scanner.getRejectedSecretCount());
+            assertEquals(scanner.getName() + " registrations", 1, scanner.getRegisterCount());
+            assertEquals(scanner.baseUrl(), devices.get(i).getIP());
+            commands += scanner.getCommandCount();
+        }
+        assertEquals(THREADS * COMMANDS_PER_THREAD + DEVICES / 2, commands);
+    }
+
+    @Test
+    public void concurrentAsyncCommandsStayWithTheirDevice() {
+        List<CompletableFuture<RemoteResponse>> states = new ArrayList<>();
+        for (int n = 0; n < COMMANDS_PER_THREAD; n++) {
+            for (RemoteAPI api : devices) {
+                states.add(api.sendGetStateAsync());
+            }
+        }
+        for (int n = 0; n < states.size(); n++) {
+            int index = n % DEVICES;
+            String expected = index % 2 == 0 ? MockScanner.SCANNING : MockScanner.IDLE;
+            assertEquals(expected, states.get(n).join().getMessage());
+        }
+        for (MockScanner scanner : scanners) {
+            assertEquals(scanner.getName() + " misrouted", 0, scanner.getMisroutedCount());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks protocol negotiation and response compression against the mock device: HTTP/2 is chosen through ALPN when
+ * both sides offer it, HTTP/1.1 otherwise; gzip compressed YAML answers decode, and frame captures ask for the
+ * uncompressed body.
+ */
+public class RemoteAPIProtocolTest {
+
+    @Test
+    public void negotiatesHttp2WhenTheDeviceOffersIt() throws IOException {
+        checkProtocol(true, true, "h2");
+    }
+
+    @Test
+    public void fallsBackToHttp11WhenTheDeviceOnlyOffersHttp11() throws IOException {
+        checkProtocol(false, true, "http/1.1");
+    }
+
+    @Test
+    public void usesHttp11WhenHttp2IsDisabledOnTheClient() throws IOException {
+        checkProtocol(true, false, "http/1.1");
+    }
+
+    private static void checkProtocol(boolean serverHttp2, boolean clientHttp2, String expected) throws IOException {
+        try (MockScanner scanner = new MockScanner().setFrames(64, 48, 1).setHttp2Enabled(serverHttp2);
+             RemoteAPI api = new RemoteAPI(new HttpClientConfig().setHttp2Enabled(clientHttp2))) {
+            scanner.start();
+            api.setIP(scanner.baseUrl());
+            assertTrue(api.sendRegister(scanner.getServerSecret()).isSuccess());
+
+            RemoteResponse state = api.sendGetState();
+            assertEquals(ResponseStatus.SUCCESS, state.getStatus());
+            assertEquals(MockScanner.IDLE, state.getMessage());
+            assertEquals(expected, api.getProtocol());
+            assertEquals(expected, api.getConnectionStats().getProtocol());
+
+            // YAML answers are compressed and still decode
+            assertEquals("gzip", scanner.getAcceptEncoding("GET_STATE"));
+            assertTrue(scanner.getGzippedResponseCount() > 0);
+
+            // JPEG frames are requested uncompressed and arrive byte for byte
+            ByteBuffer frame = api.sendCaptureImageFrameBytes();
+            assertEquals("identity", scanner.getAcceptEncoding("CAPTURE_VIDEO_FRAME"));
+            assertEquals(scanner.frameSize(), frame.remaining());
+            assertEquals(64, RemoteAPI.decodeImage(frame).getWidth());
+            assertEquals(0, scanner.getMalformedCount());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs short scan plans against a mock device with network latency and checks step order, pass numbering,
+ * timing accuracy, triggers, failure handling and background uploads.
+ */
+public class ScanSessionTest {
+    private static final long LATENCY_MILLIS = 20;
+
+    private MockScanner scanner;
+    private RemoteAPI api;
+    private final List<String> steps = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> nicknames = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        scanner = new MockScanner();
+        scanner.start();
+        api = new RemoteAPI();
+        api.setIP(scanner.baseUrl());
+        assertTrue(api.sendRegister(scanner.getServerSecret()).isSuccess());
+        scanner.setLatencyMillis(LATENCY_MILLIS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        scanner.close();
+    }
+
+    @Test
+    public void repeatedPlanRunsStepsInOrderOnTime() throws Exception {
+        for (int n = 1; n <= 3; n++) scanner.addFile("weld-" + n, 1024);
+        ScanPlan plan = new ScanPlan()
+                .setNickname("weld-{n}")
+                .startScan()
+                .delay(100)
+                .stopScan()
+                .uploadScan("weld-{n}")
+                .at(250)
+                .repeat(3);
+
+        long start = System.nanoTime();
+        ScanSession session = api.runScanPlan(plan, listener());
+        session.getCompletion().get(10, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        List<String> expected = new ArrayList<>();
+        for (int n = 1; n <= 3; n++) {
+            expected.addAll(Arrays.asList(n + " SET_NICKNAME(weld-{n})", n + " START_SCAN", n + " DELAY(100 ms)",
+                    n + " STOP_SCAN", n + " AT(250 ms)"));
+        }
+        assertEquals(expected, commandAndTimerSteps());
+        assertEquals(Arrays.asList("weld-1", "weld-2", "weld-3"), nicknames);
+        assertEquals(3, steps.stream().filter(step -> step.contains("UPLOAD_SCAN")).count());
+        assertEquals(0, session.getPendingUploadCount());
+        assertEquals(0, session.getUploadFailureCount());
+        assertEquals(MockScanner.IDLE, scanner.getState());
+
+        // the passes are never shorter than their period; how much longer depends on the command round-trips
+        assertTrue("elapsed " + elapsedMillis + " ms", elapsedMillis >= 750);
+    }
+
+    @Test
+    public void timerOnlyPlanRepeatsAtAnExactPeriod() throws Exception {
+        ScanPlan plan = new ScanPlan()
+                .delay(100)
+                .at(250)
+                .repeat(3);
+
+        long start = System.nanoTime();
+        ScanSession session = api.runScanPlan(plan, listener());
+        session.getCompletion().get(10, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(6, steps.size());
+        // deadlines are absolute, so scheduling delays do not add up over the passes
+        assertTrue("elapsed " + elapsedMillis + " ms", elapsedMillis >= 750 && elapsedMillis < 750 + 200);
+        assertTrue("lateness " + session.getMaxLatenessMillis() + " ms", session.getMaxLatenessMillis() < 50);
+        assertEquals(0, session.getOverrunCount());
+    }
+
+    @Test
+    public void timerReachedAfterItsDeadlineIsAnOverrunNotLateness() throws Exception {
+        // the nickname round-trip alone takes longer than the delay measured from the start of the pass
+        scanner.setLatencyMillis(200);
+        ScanPlan plan = new ScanPlan()
+                .setNickname("weld")
+                .delay(50)
+                .delay(500);
+
+        ScanSession session = api.runScanPlan(plan, listener());
+        session.getCompletion().get(10, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("1 SET_NICKNAME(weld)", "1 DELAY(50 ms)", "1 DELAY(500 ms)"), steps);
+        assertEquals(1, session.getOverrunCount());
+        assertTrue("lateness " + session.getMaxLatenessMillis() + " ms", session.getMaxLatenessMillis() < 50);
+    }
+
+    @Test
+    public void triggerFiredBeforeItIsAwaitedIsKept() throws Exception {
+        ScanPlan plan = new ScanPlan()
+                .setNickname("position-{n}")
+                .awaitTrigger("position")
+                .repeat(2);
+
+        ScanSession session = api.runScanPlan(plan, listener());
+        // both triggers arrive while the first SET_NICKNAME is still waiting for its response
+        session.trigger("position");
+        session.trigger("position");
+        session.getCompletion().get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("1 SET_NICKNAME(position-{n})", "1 AWAIT_TRIGGER(position)",
+                "2 SET_NICKNAME(position-{n})", "2 AWAIT_TRIGGER(position)"), steps);
+        assertEquals(Arrays.asList("position-1", "position-2"), nicknames);
+    }
+
+    @Test
+    public void failedStartScanStopsTheSessionAndLeavesTheDeviceIdle() throws Exception {
+        // the device starts scanning but its response arrives after the deadline
+        api.setCommandPolicy("START_SCAN", new CommandPolicy().withDeadlineMillis(100));
+        scanner.setLatencyMillis(500);
+        ScanPlan plan = new ScanPlan()
+                .startScan()
+                .delay(5_000)
+                .stopScan();
+
+        ScanSession session = api.runScanPlan(plan, listener());
+        try {
+            session.getCompletion().get(5, TimeUnit.SECONDS);
+            fail("Expected the session to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        assertEquals(Collections.singletonList("1 START_SCAN"), failures);
+        assertTrue(steps.isEmpty());
+        assertTrue("device still " + scanner.getState(), awaitState(MockScanner.IDLE));
+    }
+
+    @Test
+    public void uploadsStillRunningAfterCancelAreCounted() throws Exception {
+        scanner.setLatencyMillis(300);
+        ScanPlan plan = new ScanPlan()
+                .uploadScan("missing")
+                .delay(5_000);
+
+        ScanSession session = api.runScanPlan(plan, listener());
+        Thread.sleep(50);
+        assertEquals(1, session.getPendingUploadCount());
+        session.cancel();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (session.getPendingUploadCount() > 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(session.getCompletion().isCancelled());
+        assertEquals(0, session.getPendingUploadCount());
+        assertEquals(1, session.getUploadFailureCount());
+    }
+
+    private ScanSession.SessionListener listener() {
+        return new ScanSession.SessionListener() {
+            @Override
+            public void onStep(int pass, ScanPlan.Step step, RemoteResponse response) {
+                steps.add(pass + " " + step);
+                // the response has arrived, so the device holds the expanded nickname
+                if (step.getType() == ScanPlan.StepType.SET_NICKNAME) nicknames.add(scanner.getSetting("SET_NICKNAME"));
+            }
+
+            @Override
+            public void onStepFailed(int pass, ScanPlan.Step step, Throwable error) {
+                failures.add(pass + " " + step);
+            }
+        };
+    }
+
+    private List<String> commandAndTimerSteps() {
+        List<String> result = new ArrayList<>();
+        synchronized (steps) {
+            for (String step : steps) {
+                if (!step.contains("UPLOAD_SCAN")) result.add(step);
+            }
+        }
+        return result;
+    }
+
+    private boolean awaitState(String state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!state.equals(scanner.getState())) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
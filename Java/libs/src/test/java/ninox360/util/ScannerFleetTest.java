@@ -0,0 +1,140 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a fleet of mock devices: registration runs on all devices at once with a client secret per device, a device
+ * which does not answer in time is cancelled without holding up the others, and devices which reject a command or
+ * answer with a failure status are reported as failed while the rest succeed.
+ */
+public class ScannerFleetTest {
+    private static final int DEVICES = 4;
+    private static final long LATENCY_MILLIS = 300;
+
+    private final List<MockScanner> scanners = new ArrayList<>();
+    private ScannerFleet fleet;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < DEVICES; i++) {
+            MockScanner scanner = new MockScanner();
+            scanner.start();
+            scanners.add(scanner);
+        }
+        fleet = new ScannerFleet(new HttpClientConfig(), DEVICES, 1_000L);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fleet.close();
+        for (MockScanner scanner : scanners) {
+            scanner.close();
+        }
+    }
+
+    @Test
+    public void devicesRegisterInParallel() {
+        for (MockScanner scanner : scanners) {
+            scanner.setLatencyMillis(LATENCY_MILLIS);
+            fleet.addDevice(scanner.baseUrl(), scanner.getServerSecret());
+        }
+
+        long start = System.nanoTime();
+        Map<String, DeviceResult<RemoteResponse>> results = fleet.registerAll();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < DEVICES * LATENCY_MILLIS);
+
+        Set<String> secrets = new HashSet<>();
+        for (MockScanner scanner : scanners) {
+            DeviceResult<RemoteResponse> result = results.get(scanner.baseUrl());
+            assertTrue(String.valueOf(result), result.isSuccess());
+            assertEquals(1, scanner.getRegisterCount());
+            secrets.add(fleet.getDevice(scanner.baseUrl()).clientSecret);
+        }
+        assertEquals(DEVICES, secrets.size());
+        assertEquals(fleet.getDevices(), new ArrayList<>(results.keySet()));
+    }
+
+    @Test
+    public void slowDeviceTimesOutWithoutHoldingUpTheOthers() {
+        registerAll();
+        MockScanner slow = scanners.get(1);
+        slow.setLatencyMillis(5_000);
+
+        long start = System.nanoTime();
+        Map<String, DeviceResult<RemoteResponse>> states = fleet.getState();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 3_000);
+
+        for (MockScanner scanner : scanners) {
+            DeviceResult<RemoteResponse> state = states.get(scanner.baseUrl());
+            if (scanner == slow) {
+                assertFalse(state.isSuccess());
+                assertTrue(state.isTimedOut());
+                assertNotNull(state.getError());
+                assertNull(state.getValue());
+                assertTrue(state.getElapsedMillis() >= 1_000);
+            } else {
+                assertTrue(String.valueOf(state), state.isSuccess());
+                assertFalse(state.isTimedOut());
+                assertEquals(MockScanner.IDLE, state.getValue().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void partialFailuresAreReportedPerDevice() {
+        MockScanner wrongSecret = scanners.get(0);
+        for (MockScanner scanner : scanners) {
+            fleet.addDevice(scanner.baseUrl(), scanner == wrongSecret ? "WRONG" : scanner.getServerSecret());
+        }
+        Map<String, DeviceResult<RemoteResponse>> registered = fleet.registerAll();
+
+        // the device answered, but with a failure status
+        DeviceResult<RemoteResponse> rejected = registered.get(wrongSecret.baseUrl());
+        assertNull(rejected.getError());
+        assertEquals(ResponseStatus.FAILURE, rejected.getValue().getStatus());
+        assertFalse(rejected.isSuccess());
+        assertTrue(registered.get(scanners.get(1).baseUrl()).isSuccess());
+
+        MockScanner failing = scanners.get(2);
+        failing.setErrorRate(1).setErrorStatus(400);
+        Map<String, DeviceResult<RemoteResponse>> started = fleet.broadcast(RemoteAPI::sendStartScanAsync,
+                scanners.get(1).baseUrl(), failing.baseUrl(), scanners.get(3).baseUrl());
+        assertEquals(3, started.size());
+
+        DeviceResult<RemoteResponse> failed = started.get(failing.baseUrl());
+        assertFalse(failed.isSuccess());
+        assertFalse(failed.isTimedOut());
+        assertEquals(400, RejectedRequestException.statusCodeOf(failed.getError()));
+        assertTrue(started.get(scanners.get(1).baseUrl()).isSuccess());
+        assertTrue(started.get(scanners.get(3).baseUrl()).isSuccess());
+        assertEquals(MockScanner.SCANNING, scanners.get(3).getState());
+    }
+
+    private void registerAll() {
+        for (MockScanner scanner : scanners) {
+            fleet.addDevice(scanner.baseUrl(), scanner.getServerSecret());
+        }
+        for (DeviceResult<RemoteResponse> result : fleet.registerAll().values()) {
+            assertTrue(String.valueOf(result), result.isSuccess());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ninox360.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds GET_STATE responses straight into a state cache and checks that answers overtaken by a later request are
+ * ignored, that listeners fire only on a real change and in request order, and that they run without holding up
+ * further updates.
+ */
+public class StateCacheTest {
+    private final List<String> changes = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void staleResponsesAreIgnoredAndListenersFireOnlyOnChange() {
+        StateCache cache = newCache();
+        cache.addListener((previous, current) -> changes.add(describe(previous) + " -> " + describe(current)));
+
+        cache.update(new RemoteResponse("SUCCESS", "IDLE"), 100);
+        cache.update(new RemoteResponse("SUCCESS", "SCANNING"), 300);
+        // sent before the SCANNING request, answered after it
+        cache.update(new RemoteResponse("SUCCESS", "IDLE"), 200);
+        assertEquals("SCANNING", cache.get().getMessage());
+        assertEquals(1, cache.getStaleResponseCount());
+
+        // same state again, only the cache entry is refreshed
+        cache.update(new RemoteResponse("SUCCESS", "SCANNING"), 400);
+        cache.update(new RemoteResponse("SUCCESS", "IDLE"), 500);
+        cache.update(new RemoteResponse("FAILURE", "IDLE"), 600);
+        // equal send times are not stale
+        cache.update(new RemoteResponse("FAILURE", "IDLE"), 600);
+
+        assertEquals(Arrays.asList("null -> SUCCESS IDLE", "SUCCESS IDLE -> SUCCESS SCANNING",
+                "SUCCESS SCANNING -> SUCCESS IDLE", "SUCCESS IDLE -> FAILURE IDLE"), changes);
+        assertEquals(1, cache.getStaleResponseCount());
+    }
+
+    @Test
+    public void slowListenerDoesNotHoldUpUpdates() throws Exception {
+        StateCache cache = newCache();
+        CountDownLatch inListener = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger concurrentCalls = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        cache.addListener((previous, current) -> {
+            if (concurrentCalls.incrementAndGet() > 1) overlapped.set(true);
+            changes.add(describe(current));
+            if ("SCANNING".equals(current.getMessage())) {
+                inListener.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            concurrentCalls.decrementAndGet();
+        });
+        cache.update(new RemoteResponse("SUCCESS", "IDLE"), 100);
+
+        Thread receiver = new Thread(() -> cache.update(new RemoteResponse("SUCCESS", "SCANNING"), 200));
+        receiver.start();
+        assertTrue(inListener.await(5, TimeUnit.SECONDS));
+
+        // the listener is busy with SCANNING on the receiver thread, updates still go through right away
+        CompletableFuture<Void> later = CompletableFuture.runAsync(() -> {
+            cache.update(new RemoteResponse("SUCCESS", "STOPPING"), 300);
+            cache.update(new RemoteResponse("SUCCESS", "IDLE"), 400);
+        });
+        later.get(1, TimeUnit.SECONDS);
+        assertEquals("IDLE", cache.get().getMessage());
+        assertEquals(Arrays.asList("SUCCESS IDLE", "SUCCESS SCANNING"), changes);
+
+        release.countDown();
+        receiver.join(5_000);
+        assertFalse(receiver.isAlive());
+        // the busy thread delivered the queued changes in request order, one call at a time
+        assertEquals(Arrays.asList("SUCCESS IDLE", "SUCCESS SCANNING", "SUCCESS STOPPING", "SUCCESS IDLE"), changes);
+        assertFalse(overlapped.get());
+    }
+
+    @Test
+    public void listenerMayUpdateTheCache() {
+        StateCache cache = newCache();
+        cache.addListener((previous, current) -> {
+            changes.add(describe(current));
+            if ("SCANNING".equals(current.getMessage())) {
+                cache.update(new RemoteResponse("SUCCESS", "IDLE"), 300);
+            }
+        });
+        cache.update(new RemoteResponse("SUCCESS", "IDLE"), 100);
+        cache.update(new RemoteResponse("SUCCESS", "SCANNING"), 200);
+
+        assertEquals(Arrays.asList("SUCCESS IDLE", "SUCCESS SCANNING", "SUCCESS IDLE"), changes);
+        assertEquals("IDLE", cache.get().getMessage());
+    }
+
+    private static StateCache newCache() {
+        return new StateCache(() -> {
+            CompletableFuture<RemoteResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("no device"));
+            return failed;
+        });
+    }
+
+    private static String describe(ScannerState state) {
+        return state == null ? "null" : state.getStatus() + " " + state.getMessage();
+    }
+}
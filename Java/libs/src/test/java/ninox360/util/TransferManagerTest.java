@@ -0,0 +1,156 @@
+package ninox360.util;
+
+import ninox360.mock.MockScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs transfers against a mock device: resumed downloads only count the bytes received again, only one run at a
+ * time is allowed and the journal is compacted when it is opened.
+ */
+public class TransferManagerTest {
+    private static final int FILE_SIZE = 200_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] content = new byte[FILE_SIZE];
+    private MockScanner scanner;
+    private RemoteAPI api;
+    private Path journal;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(content);
+        scanner = new MockScanner().addFile("scan-1.zip", content).addFile("scan-2.zip", 1_000);
+        scanner.start();
+        api = new RemoteAPI();
+        api.setIP(scanner.baseUrl());
+        assertTrue(api.sendRegister(scanner.getServerSecret()).isSuccess());
+        journal = folder.getRoot().toPath().resolve("transfers.journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        scanner.close();
+    }
+
+    @Test
+    public void resumedDownloadCountsOnlyTheRemainder() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("scan-1.zip");
+        Files.write(target.resolveSibling("scan-1.zip.part"), Arrays.copyOf(content, 50_000));
+
+        long[] lastProgress = {-1};
+        try (TransferManager transfers = new TransferManager(journal, 2, 1)) {
+            transfers.setTransferListener((transferred, total, bytesPerSecond) -> lastProgress[0] = transferred);
+            assertTrue(transfers.addDownload(api, "scan-1.zip", FILE_SIZE, target));
+            TransferReport report = transfers.run();
+
+            assertEquals(1, report.getCompleted());
+            assertEquals(FILE_SIZE - 50_000, report.getBytesTransferred());
+            assertEquals(FILE_SIZE - 50_000, transfers.getBytesTransferred());
+            assertEquals(FILE_SIZE - 50_000, lastProgress[0]);
+        }
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void resumedDownloadAsksForAnUncompressedBody() throws Exception {
+        scanner.setGzipEnabled(true);
+        Path target = folder.getRoot().toPath().resolve("scan-1.zip");
+        Files.write(target.resolveSibling("scan-1.zip.part"), Arrays.copyOf(content, 50_000));
+        long gzipped = scanner.getGzippedResponseCount();
+
+        DownloadResult result = api.downloadFile("scan-1.zip", target);
+        assertTrue(result.isResumed());
+        assertEquals(FILE_SIZE - 50_000, result.getBytesTransferred());
+        // the range counts file bytes, so the body must not be compressed
+        assertEquals("identity", scanner.getAcceptEncoding("GET_FILE"));
+        assertEquals(gzipped, scanner.getGzippedResponseCount());
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void restartedDownloadCountsTheWholeFileOnce() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("scan-1.zip");
+        // longer than the file, the device answers 416 and the download starts over
+        Files.write(target.resolveSibling("scan-1.zip.part"), new byte[FILE_SIZE + 10]);
+
+        try (TransferManager transfers = new TransferManager(journal, 2, 1)) {
+            transfers.addDownload(api, "scan-1.zip", FILE_SIZE, target);
+            TransferReport report = transfers.run();
+
+            assertEquals(1, report.getCompleted());
+            assertEquals(FILE_SIZE, report.getBytesTransferred());
+        }
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void onlyOneRunAtATime() throws Exception {
+        scanner.setLatencyMillis(500);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (TransferManager transfers = new TransferManager(journal, 2, 1)) {
+            transfers.addDownload(api, "scan-2.zip", 1_000, folder.getRoot().toPath().resolve("scan-2.zip"));
+            Future<TransferReport> first = executor.submit(transfers::run);
+            Thread.sleep(200);
+            try {
+                transfers.run();
+                fail("a second concurrent run was allowed");
+            } catch (IllegalStateException expected) {
+                // the first run is still waiting for the device
+            }
+            assertEquals(1, first.get().getCompleted());
+            // finished runs do not block the next one
+            assertEquals(0, transfers.run().getCompleted());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void journalKeepsFinishedTransfersOnlyWhileTheBatchIsUnfinished() throws Exception {
+        Path root = folder.getRoot().toPath();
+        try (TransferManager transfers = new TransferManager(journal, 2, 1)) {
+            transfers.addDownload(api, "scan-2.zip", 1_000, root.resolve("scan-2.zip"));
+            transfers.addDownload(api, "missing.zip", 1_000, root.resolve("missing.zip"));
+            TransferReport report = transfers.run();
+            assertEquals(1, report.getCompleted());
+            assertEquals(1, report.getFailed());
+        }
+        long appendedLines = Files.readAllLines(journal).size();
+
+        try (TransferManager transfers = new TransferManager(journal, 2, 1)) {
+            assertTrue(Files.readAllLines(journal).size() < appendedLines);
+            assertFalse(transfers.addDownload(api, "scan-2.zip", 1_000, root.resolve("scan-2.zip")));
+            assertEquals(1, transfers.loadPending(address -> api));
+            scanner.addFile("missing.zip", 1_000);
+            assertEquals(1, transfers.run().getCompleted());
+        }
+
+        try (TransferManager transfers = new TransferManager(journal, 2, 1)) {
+            // everything finished, the journal starts empty
+            assertEquals(0, Files.size(journal));
+            assertEquals(0, transfers.loadPending(address -> api));
+        }
+    }
+}
@@ -0,0 +1,653 @@
+package ninox360.mock;
+
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import okio.Buffer;
+import org.junit.rules.ExternalResource;
+import org.yaml.snakeyaml.Yaml;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local mock of a Surface Inspector device for load and soak tests. It serves /register and /command over HTTPS
+ * with a self-signed certificate and checks that every packet has exactly the PacketRemoteRegister or
+ * PacketRemoteCommand shape; answers are PacketRemoteResponse packets. CAPTURE_VIDEO_FRAME returns synthetic JPEG
+ * frames, GET_FILE returns the body of a registered file and honours Range requests, and the remaining commands
+ * update a small device state. Latency, jitter, error rate and bandwidth can be changed while the server runs, and
+ * single commands can be failed or slowed down.
+ * <pre>
+ *     Usage Example (JUnit 4):
+ *     &#64;Rule
+ *     public MockScanner scanner = new MockScanner()
+ *             .setLatencyMillis(20)
+ *             .setJitterMillis(10)
+ *             .setErrorRate(0.01)
+ *             .addFile("scan-1.zip", 5_000_000);
+ *
+ *     &#64;Test
+ *     public void getState() throws IOException {
+ *         RemoteAPI api = new RemoteAPI();
+ *         api.setIP(scanner.baseUrl());
+ *         api.sendRegister(scanner.getServerSecret());
+ *         assertEquals("IDLE", api.sendGetState().getMessage());
+ *     }
+ * </pre>
+ * Outside of JUnit call {@link #start()} and {@link #close()}.
+ */
+public class MockScanner extends ExternalResource implements Closeable {
+    public static final String IDLE = "IDLE";
+    public static final String SCANNING = "SCANNING";
+
+    private static final AtomicLong SECRETS = new AtomicLong();
+    private static final Map<String, String> ISSUED_SECRETS = new ConcurrentHashMap<>();
+    private static final Set<String> REGISTER_FIELDS = new HashSet<>(Arrays.asList("scanner_secret", "version"));
+    private static final Set<String> COMMAND_FIELDS = new HashSet<>(Arrays.asList("secret", "value", "command"));
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(Yaml::new);
+
+    private final String name;
+    private final MockWebServer server = new MockWebServer();
+    private final Set<String> clientSecrets = ConcurrentHashMap.newKeySet();
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, String> settings = new ConcurrentHashMap<>();
+    private final Map<String, String> acceptEncodings = new ConcurrentHashMap<>();
+    private final Map<String, Integer> commandErrors = new ConcurrentHashMap<>();
+    private final Map<String, Long> commandLatencies = new ConcurrentHashMap<>();
+    private final AtomicLong frameCounter = new AtomicLong();
+    private final AtomicLong registerCount = new AtomicLong();
+    private final AtomicLong commandCount = new AtomicLong();
+    private final AtomicLong injectedErrorCount = new AtomicLong();
+    private final AtomicLong rejectedSecretCount = new AtomicLong();
+    private final AtomicLong misroutedCount = new AtomicLong();
+    private final AtomicLong malformedCount = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong gzippedResponseCount = new AtomicLong();
+
+    private volatile String serverSecret = "MOCK";
+    private volatile String state = IDLE;
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile long bandwidthBytesPerSecond;
+    private volatile boolean gzipEnabled = true;
+    private boolean http2Enabled = true;
+    private int frameWidth = 640;
+    private int frameHeight = 480;
+    private int frameCount = 8;
+    private byte[][] frames;
+    private boolean started;
+
+    /**
+     * Creates a mock device named "mock".
+     */
+    public MockScanner() {
+        this("mock");
+    }
+
+    /**
+     * @param name device name, issued client secrets start with it
+     */
+    public MockScanner(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param serverSecret secret expected by /register, "MOCK" by default
+     * @return this scanner for chaining
+     */
+    public MockScanner setServerSecret(String serverSecret) {
+        this.serverSecret = serverSecret;
+        return this;
+    }
+
+    /**
+     * @param latencyMillis base delay before each response is sent
+     * @return this scanner for chaining
+     */
+    public MockScanner setLatencyMillis(long latencyMillis) {
+        if (latencyMillis < 0) throw new IllegalArgumentException("latencyMillis < 0");
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * @param jitterMillis random extra delay of 0 to jitterMillis added to the latency of each response
+     * @return this scanner for chaining
+     */
+    public MockScanner setJitterMillis(long jitterMillis) {
+        if (jitterMillis < 0) throw new IllegalArgumentException("jitterMillis < 0");
+        this.jitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * @param errorRate fraction of requests, from 0 to 1, answered with the error status instead of being processed
+     * @return this scanner for chaining
+     */
+    public MockScanner setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) throw new IllegalArgumentException("errorRate must be between 0 and 1");
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param errorStatus HTTP status of the injected failures, default 503
+     * @return this scanner for chaining
+     */
+    public MockScanner setErrorStatus(int errorStatus) {
+        if (errorStatus < 400 || errorStatus > 599) throw new IllegalArgumentException("errorStatus must be between 400 and 599");
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * Answers every request for one command with an HTTP error instead of processing it, the other commands are
+     * unaffected. The failures count as injected errors.
+     *
+     * @param command     command to fail, e.g. "EXPOSURE"
+     * @param errorStatus HTTP status of the failures, 0 to process the command again
+     * @return this scanner for chaining
+     */
+    public MockScanner setCommandError(String command, int errorStatus) {
+        if (errorStatus == 0) {
+            commandErrors.remove(command);
+            return this;
+        }
+        if (errorStatus < 400 || errorStatus > 599) throw new IllegalArgumentException("errorStatus must be between 400 and 599");
+        commandErrors.put(command, errorStatus);
+        return this;
+    }
+
+    /**
+     * @param command       command to slow down, e.g. "SET_NICKNAME"
+     * @param latencyMillis delay added to the latency of this command's responses, 0 for none
+     * @return this scanner for chaining
+     */
+    public MockScanner setCommandLatencyMillis(String command, long latencyMillis) {
+        if (latencyMillis < 0) throw new IllegalArgumentException("latencyMillis < 0");
+        commandLatencies.put(command, latencyMillis);
+        return this;
+    }
+
+    /**
+     * @param bandwidthBytesPerSecond response body throughput per request, 0 for unlimited
+     * @return this scanner for chaining
+     */
+    public MockScanner setBandwidthBytesPerSecond(long bandwidthBytesPerSecond) {
+        if (bandwidthBytesPerSecond < 0) throw new IllegalArgumentException("bandwidthBytesPerSecond < 0");
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param gzipEnabled true to gzip YAML responses and file bodies for clients which accept it
+     * @return this scanner for chaining
+     */
+    public MockScanner setGzipEnabled(boolean gzipEnabled) {
+        this.gzipEnabled = gzipEnabled;
+        return this;
+    }
+
+    /**
+     * @param http2Enabled true to offer HTTP/2 and HTTP/1.1, false for HTTP/1.1 only; applies when the server starts
+     * @return this scanner for chaining
+     */
+    public synchronized MockScanner setHttp2Enabled(boolean http2Enabled) {
+        checkNotStarted();
+        this.http2Enabled = http2Enabled;
+        return this;
+    }
+
+    /**
+     * @param width  width of the synthetic frames in pixels
+     * @param height height of the synthetic frames in pixels
+     * @param count  number of different frames served in rotation
+     * @return this scanner for chaining
+     */
+    public synchronized MockScanner setFrames(int width, int height, int count) {
+        checkNotStarted();
+        if (width <= 0 || height <= 0 || count <= 0) throw new IllegalArgumentException("width, height and count must be positive");
+        this.frameWidth = width;
+        this.frameHeight = height;
+        this.frameCount = count;
+        return this;
+    }
+
+    /**
+     * Makes a file available to GET_FILE and UPLOAD_REMOTE.
+     *
+     * @param fileName name requested by the client
+     * @param content  file body
+     * @return this scanner for chaining
+     */
+    public MockScanner addFile(String fileName, byte[] content) {
+        files.put(fileName, content.clone());
+        return this;
+    }
+
+    /**
+     * Makes a file of pseudo-random bytes available to GET_FILE and UPLOAD_REMOTE, the content only depends on the
+     * name and size so downloads can be verified.
+     *
+     * @param fileName name requested by the client
+     * @param size     file size in bytes
+     * @return this scanner for chaining
+     */
+    public MockScanner addFile(String fileName, int size) {
+        byte[] content = new byte[size];
+        new Random(fileName.hashCode()).nextBytes(content);
+        files.put(fileName, content);
+        return this;
+    }
+
+    /**
+     * Starts the server on a free port.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public synchronized void start() throws IOException {
+        checkNotStarted();
+        frames = new byte[frameCount][];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = syntheticJpeg(frameWidth, frameHeight, i);
+        }
+
+        HeldCertificate localhost = new HeldCertificate.Builder().addSubjectAlternativeName("localhost").build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder().heldCertificate(localhost).build();
+        server.useHttps(serverCertificates.sslSocketFactory(), false);
+        server.setProtocols(http2Enabled ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) : Collections.singletonList(Protocol.HTTP_1_1));
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request);
+            }
+        });
+        server.start();
+        started = true;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        start();
+    }
+
+    @Override
+    protected void after() {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Mock scanner shutdown FAILED Hit Exception: '" + e + "'");
+        }
+    }
+
+    /**
+     * @return base address to pass to RemoteAPI.setIP
+     */
+    public String baseUrl() {
+        return "https://localhost:" + server.getPort();
+    }
+
+    /**
+     * @return device name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return secret expected by /register
+     */
+    public String getServerSecret() {
+        return serverSecret;
+    }
+
+    /**
+     * Issues a client secret as a registration would, without a request, e.g. to pre-populate a secret store.
+     *
+     * @return the new client secret, accepted by this device until it is closed
+     */
+    public String issueClientSecret() {
+        String clientSecret = name + "-" + SECRETS.incrementAndGet();
+        clientSecrets.add(clientSecret);
+        ISSUED_SECRETS.put(clientSecret, name);
+        return clientSecret;
+    }
+
+    /**
+     * Forgets every client secret issued so far, as a restarted device would; the clients get HTTP 401 until they
+     * register again.
+     */
+    public void revokeClientSecrets() {
+        clientSecrets.clear();
+    }
+
+    /**
+     * @return IDLE or SCANNING, as reported by GET_STATE
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * @param command setting command, e.g. "EXPOSURE" or "SET_NICKNAME"
+     * @return last value received for the setting, or null
+     */
+    public String getSetting(String command) {
+        return settings.get(command);
+    }
+
+    /**
+     * @return size in bytes of the first synthetic frame, 0 before the server starts
+     */
+    public synchronized int frameSize() {
+        return frames == null ? 0 : frames[0].length;
+    }
+
+    /**
+     * @return number of /register requests
+     */
+    public long getRegisterCount() {
+        return registerCount.get();
+    }
+
+    /**
+     * @return number of /command requests
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * @return number of requests answered with an injected HTTP 503
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrorCount.get();
+    }
+
+    /**
+     * @return number of commands rejected because their secret was not issued by this device
+     */
+    public long getRejectedSecretCount() {
+        return rejectedSecretCount.get();
+    }
+
+    /**
+     * @return number of commands carrying a client secret issued by another mock device, i.e. sent to the wrong device
+     */
+    public long getMisroutedCount() {
+        return misroutedCount.get();
+    }
+
+    /**
+     * @return number of requests which were not a valid register or command packet
+     */
+    public long getMalformedCount() {
+        return malformedCount.get();
+    }
+
+    /**
+     * @param command command name, e.g. "CAPTURE_VIDEO_FRAME"
+     * @return Accept-Encoding header of the last such command, "" if it had none, null if none was received
+     */
+    public String getAcceptEncoding(String command) {
+        return acceptEncodings.get(command);
+    }
+
+    /**
+     * @return number of YAML responses and file bodies sent gzip compressed
+     */
+    public long getGzippedResponseCount() {
+        return gzippedResponseCount.get();
+    }
+
+    /**
+     * @return response body bytes handed to the server, before compression
+     */
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        MockResponse response;
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrorCount.incrementAndGet();
+            response = new MockResponse().setResponseCode(errorStatus).setBody("Injected failure");
+        } else if ("/register".equals(request.getPath())) {
+            response = register(request);
+        } else if ("/command".equals(request.getPath())) {
+            response = command(request);
+        } else {
+            response = new MockResponse().setResponseCode(404);
+        }
+
+        long delay = response.getHeadersDelay(TimeUnit.MILLISECONDS) + latencyMillis
+                + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) response.setHeadersDelay(delay, TimeUnit.MILLISECONDS);
+        long bandwidth = bandwidthBytesPerSecond;
+        if (bandwidth > 0) response.throttleBody(Math.max(1, bandwidth / 10), 100, TimeUnit.MILLISECONDS);
+        return response;
+    }
+
+    private MockResponse register(RecordedRequest request) {
+        registerCount.incrementAndGet();
+        Map<String, Object> packet = readPacket(request, "PacketRemoteRegister", REGISTER_FIELDS);
+        if (packet == null) return malformed();
+        if (!serverSecret.equals(String.valueOf(packet.get("scanner_secret")))) {
+            return yamlResponse(request, "BAD_SECRET", "Unknown server secret");
+        }
+        return yamlResponse(request, "SUCCESS", issueClientSecret());
+    }
+
+    private MockResponse command(RecordedRequest request) {
+        commandCount.incrementAndGet();
+        Map<String, Object> packet = readPacket(request, "PacketRemoteCommand", COMMAND_FIELDS);
+        if (packet == null) return malformed();
+        String secret = String.valueOf(packet.get("secret"));
+        String command = String.valueOf(packet.get("command"));
+        String value = packet.get("value") == null ? "" : String.valueOf(packet.get("value"));
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        acceptEncodings.put(command, acceptEncoding == null ? "" : acceptEncoding);
+
+        if (!clientSecrets.contains(secret)) {
+            rejectedSecretCount.incrementAndGet();
+            String owner = ISSUED_SECRETS.get(secret);
+            if (owner != null && !owner.equals(name)) misroutedCount.incrementAndGet();
+            return new MockResponse().setResponseCode(401).setBody("Unknown client secret");
+        }
+
+        MockResponse response;
+        Integer injected = commandErrors.get(command);
+        if (injected != null) {
+            injectedErrorCount.incrementAndGet();
+            response = new MockResponse().setResponseCode(injected).setBody("Injected failure");
+        } else {
+            response = process(request, command, value);
+        }
+        long commandLatency = commandLatencies.getOrDefault(command, 0L);
+        if (commandLatency > 0) response.setHeadersDelay(commandLatency, TimeUnit.MILLISECONDS);
+        return response;
+    }
+
+    private MockResponse process(RecordedRequest request, String command, String value) {
+        switch (command) {
+            case "GET_STATE":
+                return yamlResponse(request, "SUCCESS", state);
+            case "START_SCAN":
+                state = SCANNING;
+                return yamlResponse(request, "SUCCESS", "Scan started");
+            case "STOP_SCAN":
+                state = IDLE;
+                return yamlResponse(request, "SUCCESS", "Scan stopped");
+            case "REQUIRE_STILL":
+            case "REQUIRE_MARKER":
+            case "EXPOSURE":
+            case "SENSITIVITY":
+            case "SET_NICKNAME":
+                settings.put(command, value);
+                return yamlResponse(request, "SUCCESS", value);
+            case "CAPTURE_VIDEO_FRAME":
+                byte[] frame = frames[(int) (frameCounter.getAndIncrement() % frames.length)];
+                bytesServed.addAndGet(frame.length);
+                return new MockResponse().setHeader("Content-Type", "image/jpeg").setBody(new Buffer().write(frame));
+            case "UPLOAD_REMOTE":
+                return files.containsKey(value)
+                        ? yamlResponse(request, "SUCCESS", "Upload started")
+                        : yamlResponse(request, "ERROR", "No such file: " + value);
+            case "GET_FILE":
+                return file(request, value);
+            default:
+                return yamlResponse(request, "ERROR", "Unknown command: " + command);
+        }
+    }
+
+    /**
+     * Serves a file body, a "bytes=start-" or "bytes=start-end" Range header gets the partial content.
+     */
+    private MockResponse file(RecordedRequest request, String fileName) {
+        byte[] content = files.get(fileName);
+        if (content == null) return new MockResponse().setResponseCode(404).setBody("No such file: " + fileName);
+
+        String range = request.getHeader("Range");
+        if (range == null || !range.startsWith("bytes=")) {
+            bytesServed.addAndGet(content.length);
+            return encode(request, new MockResponse().setHeader("Content-Type", "application/octet-stream"), content, 0, content.length);
+        }
+        long start;
+        long end;
+        try {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Long.parseLong(bounds[0].trim());
+            end = bounds[1].trim().isEmpty() ? content.length - 1 : Math.min(Long.parseLong(bounds[1].trim()), content.length - 1);
+        } catch (RuntimeException e) {
+            return new MockResponse().setResponseCode(400).setBody("Invalid range: " + range);
+        }
+        if (start >= content.length || start > end) {
+            return new MockResponse().setResponseCode(416).setHeader("Content-Range", "bytes */" + content.length);
+        }
+        int length = (int) (end - start + 1);
+        bytesServed.addAndGet(length);
+        MockResponse response = new MockResponse().setResponseCode(206)
+                .setHeader("Content-Type", "application/octet-stream")
+                .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        return encode(request, response, content, (int) start, length);
+    }
+
+    /**
+     * Parses the request body and checks that it is a single packet with exactly the expected fields.
+     *
+     * @return the inner packet map, or null when the body has a different shape
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readPacket(RecordedRequest request, String packetName, Set<String> fields) {
+        Object document;
+        try {
+            document = YAML.get().load(request.getBody().readUtf8());
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (!(document instanceof Map) || ((Map<?, ?>) document).size() != 1) return null;
+        Object inner = ((Map<?, ?>) document).get(packetName);
+        if (!(inner instanceof Map)) return null;
+        Map<String, Object> packet = (Map<String, Object>) inner;
+        if (!packet.keySet().equals(fields)) return null;
+        return packet;
+    }
+
+    private MockResponse malformed() {
+        malformedCount.incrementAndGet();
+        return new MockResponse().setResponseCode(400).setBody("Malformed packet");
+    }
+
+    private MockResponse yamlResponse(RecordedRequest request, String response, String message) {
+        String body = "PacketRemoteResponse:\n  response: " + response + "\n  message: " + quote(message) + "\n";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        bytesServed.addAndGet(bytes.length);
+        return encode(request, new MockResponse().setHeader("Content-Type", "application/x-yaml"), bytes, 0, bytes.length);
+    }
+
+    /**
+     * Sets the body, gzip compressed when enabled and the client accepts it. Like many servers, a partial body is
+     * compressed after the range was cut from the file.
+     */
+    private MockResponse encode(RecordedRequest request, MockResponse mockResponse, byte[] bytes, int offset, int length) {
+        String accepted = request.getHeader("Accept-Encoding");
+        if (!gzipEnabled || accepted == null || !accepted.contains("gzip")) {
+            return mockResponse.setBody(new Buffer().write(bytes, offset, length));
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        gzippedResponseCount.incrementAndGet();
+        return mockResponse.setHeader("Content-Encoding", "gzip").setBody(new Buffer().write(compressed.toByteArray()));
+    }
+
+    /**
+     * @return the message as a double quoted YAML scalar
+     */
+    private static String quote(String message) {
+        return "\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Renders a gradient with noise so the JPEG size is close to a real camera frame of the same resolution.
+     * Each variant shifts the gradient, so consecutive frames differ like a moving camera.
+     */
+    private static byte[] syntheticJpeg(int width, int height, int variant) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42 + variant);
+        int shift = variant * width / 16;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (((x + shift) % width) * 255 / width + random.nextInt(32)) & 0xff;
+                int g = (y * 255 / height + random.nextInt(32)) & 0xff;
+                int b = random.nextInt(256);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private void checkNotStarted() {
+        if (started) throw new IllegalStateException("The mock scanner is already started");
+    }
+
+    /**
+     * Stops the server.
+     *
+     * @throws IOException if the server cannot be stopped
+     */
+    @Override
+    public void close() throws IOException {
+        for (String secret : clientSecrets) {
+            ISSUED_SECRETS.remove(secret);
+        }
+        server.shutdown();
+    }
+}
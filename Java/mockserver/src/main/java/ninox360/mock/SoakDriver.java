@@ -0,0 +1,204 @@
+package ninox360.mock;
+
+import ninox360.util.RemoteAPI;
+import ninox360.util.RemoteResponse;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Soak test driver: runs several {@link MockScanner} devices and hammers them from many threads for hours, printing
+ * sustained commands per second and heap growth at a fixed interval.
+ * Every other device is put into SCANNING, so each GET_STATE answer shows which device produced it; an answer
+ * from the wrong device, or a command arriving with another device's client secret, is counted as misrouted and
+ * makes the driver exit with status 1.
+ * <pre>
+ *     Usage Example:
+ *     ./gradlew :mockserver:run --args="4 16 120"   // 4 devices, 16 threads, 120 minutes
+ * </pre>
+ * The mock devices run in the same JVM, so the reported heap covers the client and the servers.
+ */
+public class SoakDriver {
+    private static final long LATENCY_MILLIS = 2;
+    private static final long JITTER_MILLIS = 3;
+    private static final double ERROR_RATE = 0.001;
+    private static final int FRAME_EVERY = 20;
+
+    private final List<MockScanner> scanners = new ArrayList<>();
+    private final List<RemoteAPI> devices = new ArrayList<>();
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder misroutedResponses = new LongAdder();
+    private final AtomicReference<String> lastError = new AtomicReference<>();
+    private volatile boolean running = true;
+
+    /**
+     * @param args [devices] [threads] [minutes] [report interval in seconds], defaults 4 16 60 60
+     * @throws Exception if the mock devices cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        int deviceCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        long minutes = args.length > 2 ? Long.parseLong(args[2]) : 60;
+        long reportSeconds = args.length > 3 ? Long.parseLong(args[3]) : 60;
+
+        SoakDriver driver = new SoakDriver();
+        boolean clean;
+        try {
+            driver.startDevices(deviceCount);
+            clean = driver.run(threads, TimeUnit.MINUTES.toMillis(minutes), TimeUnit.SECONDS.toMillis(reportSeconds));
+        } finally {
+            driver.close();
+        }
+        System.exit(clean ? 0 : 1);
+    }
+
+    /**
+     * Starts the mock devices, registers one client per device and puts every other device into SCANNING.
+     *
+     * @param count number of devices
+     * @throws IOException if a device cannot be started or registered
+     */
+    void startDevices(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            MockScanner scanner = new MockScanner("device" + i)
+                    .setLatencyMillis(LATENCY_MILLIS)
+                    .setJitterMillis(JITTER_MILLIS)
+                    .setErrorRate(ERROR_RATE);
+            scanner.start();
+            scanners.add(scanner);
+
+            RemoteAPI api = new RemoteAPI();
+            api.setIP(scanner.baseUrl());
+            RemoteResponse registered = api.sendRegister(scanner.getServerSecret());
+            if (!registered.isSuccess()) throw new IOException("Registration failed: " + registered.getMessage());
+            if (i % 2 == 0) api.sendStartScan();
+            devices.add(api);
+        }
+    }
+
+    /**
+     * Runs the load until the duration has passed, printing a report at every interval.
+     *
+     * @param threads        number of threads sending commands
+     * @param durationMillis length of the run
+     * @param reportMillis   interval between reports
+     * @return true when no command was misrouted
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean run(int threads, long durationMillis, long reportMillis) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    work(offset);
+                } finally {
+                    finished.countDown();
+                }
+            }, "soak-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long baselineHeap = -1;
+        long lastCommands = 0;
+        long lastNanos = startNanos;
+        while (System.nanoTime() < endNanos) {
+            long waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(reportMillis), endNanos - System.nanoTime());
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, waitNanos));
+
+            long now = System.nanoTime();
+            long total = commands.sum();
+            System.gc();
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            if (baselineHeap < 0) baselineHeap = heap; // the first interval serves as warm-up
+            System.out.println(String.format("[%6.1f min] commands/s=%.0f total=%d errors=%d misrouted=%d heapMiB=%.1f growthMiB=%+.1f",
+                    (now - startNanos) / 60e9, (total - lastCommands) * 1e9 / (now - lastNanos), total, errors.sum(),
+                    getMisroutedCount(), heap / 1048576.0, (heap - baselineHeap) / 1048576.0));
+            String error = lastError.getAndSet(null);
+            if (error != null) System.out.println("    last error: " + error);
+            lastCommands = total;
+            lastNanos = now;
+        }
+        running = false;
+        finished.await(30, TimeUnit.SECONDS);
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.println(String.format("Finished: %d commands, %.0f commands/s, %d errors, %d misrouted",
+                commands.sum(), commands.sum() * 1e9 / elapsedNanos, errors.sum(), getMisroutedCount()));
+        System.out.println("GET_STATE on device0: " + devices.get(0).getCommandMetrics().getStats("GET_STATE"));
+        return getMisroutedCount() == 0;
+    }
+
+    /**
+     * Sends GET_STATE to the devices in turn, with a frame capture every few commands, and checks each state
+     * against the device it was sent to.
+     *
+     * @param offset starting device of this thread
+     */
+    private void work(int offset) {
+        long iteration = 0;
+        while (running) {
+            int index = (int) ((offset + iteration) % devices.size());
+            RemoteAPI api = devices.get(index);
+            try {
+                if (iteration % FRAME_EVERY == 0) {
+                    api.sendCaptureImageFrameBytes();
+                } else {
+                    RemoteResponse state = api.sendGetState();
+                    String expected = index % 2 == 0 ? MockScanner.SCANNING : MockScanner.IDLE;
+                    if (!state.isSuccess()) {
+                        errors.increment();
+                        lastError.set(scanners.get(index).getName() + ": " + state);
+                    } else if (!expected.equals(state.getMessage())) {
+                        misroutedResponses.increment();
+                        lastError.set(scanners.get(index).getName() + " answered " + state.getMessage() + ", expected " + expected);
+                    }
+                }
+                commands.increment();
+            } catch (IOException e) {
+                errors.increment();
+                lastError.set(scanners.get(index).getName() + ": " + e);
+            }
+            iteration++;
+        }
+    }
+
+    /**
+     * @return responses read from the wrong device plus commands which reached a device with another device's secret
+     */
+    long getMisroutedCount() {
+        long misrouted = misroutedResponses.sum();
+        for (MockScanner scanner : scanners) {
+            misrouted += scanner.getMisroutedCount();
+        }
+        return misrouted;
+    }
+
+    /**
+     * Closes the clients and stops the mock devices.
+     */
+    void close() {
+        for (RemoteAPI api : devices) {
+            api.close();
+        }
+        for (MockScanner scanner : scanners) {
+            try {
+                scanner.close();
+            } catch (IOException e) {
+                System.err.println("Mock scanner shutdown FAILED Hit Exception: '" + e + "'");
+            }
+        }
+    }
+}